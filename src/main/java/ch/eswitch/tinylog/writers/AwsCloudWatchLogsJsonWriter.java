@@ -6,20 +6,11 @@ import org.tinylog.core.LogEntry;
 import org.tinylog.pattern.FormatPatternParser;
 import org.tinylog.pattern.Token;
 import org.tinylog.writers.JsonWriter;
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
-import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
-import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsRequest;
 import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
-import software.amazon.awssdk.services.cloudwatchlogs.paginators.GetLogEventsIterable;
 
 import javax.servlet.http.HttpServletRequest;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -100,6 +91,28 @@ public class AwsCloudWatchLogsJsonWriter extends AwsCloudWatchLogsWriter
         String[] fields = this.fields.keySet()
                 .toArray(new String[0]);
 
+        // message id and part of split log entries, always first attribute (see MessagePart)
+        String messagePart = logEntry.getContext().get(CONTEXT_KEY_MESSAGE_PART);
+        if (messagePart != null)
+        {
+            if (!lineDelimitedJson)
+            {
+                builder.append("\t\t");
+            }
+
+            builder.append('\"')
+                   .append(CONTEXT_KEY_MESSAGE_PART)
+                   .append("\": \"")
+                   .append(messagePart)
+                   .append('"');
+
+            if (tokenEntries.length > 0)
+            {
+                builder.append(",");
+                builder.append(lineDelimitedJson ? " " : NEW_LINE);
+            }
+        }
+
         for (int i = 0; i < tokenEntries.length; i++)
         {
             if (!lineDelimitedJson)
@@ -327,141 +340,22 @@ public class AwsCloudWatchLogsJsonWriter extends AwsCloudWatchLogsWriter
     }
 
     /**
-     * get all combined Output Log Events from AWS CloudWatch for a specific writer name
+     * get all combined Output Log Events from AWS CloudWatch for a specific writer name<br/>
+     * all log events are kept in memory, use {@link #processCombinedOutputLogEvents(String, HttpServletRequest, Consumer)}
+     * to process large time ranges
      *
      * @param writer tinylog writer name
      * @param request (optional) search parameters to filer for Log Events
-     * @return combined Output Log Events
+     * @return combined Output Log Events, newest first
      */
     public static List<OutputLogEvent> getCombinedOutputLogEvents(String writer, HttpServletRequest request)
     {
-        setAwsSystemProperties(writer);
-
-        CloudWatchLogsClient logsClient = CloudWatchLogsClient.builder()
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
-
-        LogGroupAndStreamName logGroupAndStreamName = AwsCloudWatchLogsJsonWriter.getLogGroupAndStreamName(
-                writer);
+        LogEventsQuery query = LogEventsQuery.of(writer, request);
 
-        if (logGroupAndStreamName != null)
+        if (query != null)
         {
-            GetLogEventsRequest.Builder builder = GetLogEventsRequest.builder()
-                    .logGroupName(logGroupAndStreamName.logGroupName)
-                    .logStreamName(logGroupAndStreamName.streamName).startFromHead(true)
-                    .limit(1000);
-
-            // set start and end date/time and other search parameters
-            String startDateTime = null;
-            String endDateTime = null;
-            String searchTerm = null;
-            String useRegExp = null;
-            if (request != null)
-            {
-                String timeRadios = request.getParameter("timeRadios");
-                if (timeRadios != null)
-                {
-                    if (timeRadios.equals("absoluteRadio"))
-                    {
-                        startDateTime = request.getParameter("startDateTime");
-                        endDateTime = request.getParameter("endDateTime");
-                    }
-                    else if (timeRadios.equals("relativeRadio"))
-                    {
-                        String relativeTime = request.getParameter("relativeTime");
-                        String relativeUnit = request.getParameter("relativeUnit");
-
-                        if (relativeTime != null && relativeTime.length() > 0 && relativeUnit != null && relativeUnit.length() > 0)
-                        {
-                            int min = Integer.parseInt(relativeTime);
-                            switch (relativeUnit)
-                            {
-                                case "min":
-                                    // nothing to do
-                                    break;
-                                case "h":
-                                    min = min * 60;
-                                    break;
-                                case "d":
-                                    min = min * 60 * 24;
-                                    break;
-                            }
-
-                            ZonedDateTime zdt = ZonedDateTime.ofInstant(Instant.now(),
-                                                                        ZoneId.systemDefault());
-
-                            zdt = zdt.plusMinutes(-1 * min);
-                            startDateTime = zdt.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-                        }
-                    }
-                }
-
-                request.getParameterMap();
-
-                searchTerm = request.getParameter("searchTerm");
-                useRegExp = request.getParameter("useRegExp");
-            }
-
-            if (startDateTime == null)
-            {
-                ZonedDateTime zdt = ZonedDateTime.ofInstant(Instant.now(),
-                                                            ZoneId.systemDefault());
-                startDateTime = zdt.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-            }
-
-            setTime(builder, startDateTime, true);
-            setTime(builder, endDateTime, false);
-
-            GetLogEventsRequest logEventsRequest = builder.build();
-
-            GetLogEventsIterable responses = logsClient.getLogEventsPaginator(logEventsRequest);
-            final List<OutputLogEvent> outputLogEvents = new ArrayList<>();
-            responses.stream()
-                    .forEach(responsePage -> {
-                        if (responsePage.hasEvents())
-                        {
-                            outputLogEvents.addAll(responsePage.events());
-                            int logEvents = responsePage.events().size();
-
-                            Util.log(Level.DEBUG, "log events: %d", logEvents);
-                        }
-                    });
-
-            DateTimeFormatter.ISO_DATE_TIME.format(LocalDateTime.now());
-
-            Util.log(Level.DEBUG, "outputLogEvents: %d", outputLogEvents.size());
-
-            List<OutputLogEvent> combinedOutputLogEvents = Util.combineOutputLogEvents(
-                    outputLogEvents);
-
-            Util.log(Level.DEBUG, "combinedOutputLogEvents: %d", combinedOutputLogEvents.size());
-
-            // filter log events by search term
-            if (searchTerm != null && !searchTerm.isEmpty())
-            {
-                final String searchTermFinal = searchTerm.toUpperCase();
-
-                final boolean regExp = Boolean.parseBoolean(useRegExp);
-                Util.log(Level.DEBUG, "filter with regExp: %b, searchTerm: %s", regExp, searchTerm);
-
-                final Pattern pattern;
-                if (regExp)
-                {
-                    pattern = Pattern.compile(searchTerm);
-                }
-                else
-                {
-                    pattern = null;
-                }
-
-                combinedOutputLogEvents = combinedOutputLogEvents.stream()
-                        .filter(e -> (!regExp && e.message().toUpperCase()
-                                                  .contains(searchTermFinal)) || (regExp && pattern.matcher(
-                                e.message()).matches()))
-                        .collect(Collectors.toList());
-
-                Util.log(Level.DEBUG, "filtered combinedOutputLogEvents: %d", combinedOutputLogEvents.size());
-            }
+            final List<OutputLogEvent> combinedOutputLogEvents = new ArrayList<>();
+            LogEventsReader.read(query, combinedOutputLogEvents::add);
 
             return combinedOutputLogEvents;
         }
@@ -469,23 +363,26 @@ public class AwsCloudWatchLogsJsonWriter extends AwsCloudWatchLogsWriter
         return null;
     }
 
-    private static void setTime(GetLogEventsRequest.Builder builder, String dateTime,
-                                boolean startTime)
+    /**
+     * read combined Output Log Events from AWS CloudWatch for a specific writer name page by page<br/>
+     * log events are passed to consumer as soon as a page is read, memory usage does not depend on time range<br/>
+     * if request contains parameter {@value LogEventsQuery#PARAMETER_PAGE_SIZE}, only one page is read
+     *
+     * @param writer tinylog writer name
+     * @param request (optional) search parameters to filer for Log Events
+     * @param consumer receives combined Output Log Events, newest first
+     * @return number of log events passed to consumer and cursor of next page or <code>null</code> if log group and
+     * stream name of writer are not configured
+     */
+    public static LogEventsResult processCombinedOutputLogEvents(String writer, HttpServletRequest request, Consumer<OutputLogEvent> consumer)
     {
-        if (dateTime != null && !dateTime.isEmpty())
+        LogEventsQuery query = LogEventsQuery.of(writer, request);
+
+        if (query != null)
         {
-            LocalDateTime ldt = LocalDateTime.parse(dateTime,
-                                                    DateTimeFormatter.ISO_DATE_TIME);
-            long millis = ldt.atZone(ZoneId.systemDefault()).toInstant()
-                             .toEpochMilli();
-            if (startTime)
-            {
-                builder.startTime(millis);
-            }
-            else
-            {
-                builder.endTime(millis);
-            }
+            return LogEventsReader.read(query, consumer);
         }
+
+        return null;
     }
 }
@@ -0,0 +1,293 @@
+package ch.eswitch.tinylog.writers;
+
+import com.google.gson.JsonObject;
+import org.tinylog.Level;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * live tail of AWS Log Viewer<br/>
+ * new log events of the selected writers are pushed as Server-Sent Events (content type {@code text/event-stream}),
+ * each event contains a JSON object with {@code source}, {@code timestamp} and {@code message}. Search term
+ * parameters are applied, time range parameters are ignored.<br/>
+ * <br/>
+ * Log streams are polled by {@link LogStreamTailer}, which is shared by all clients tailing the same writer log stream.
+ * Log events are queued per client and written by a container thread of the async context, so a slow client does not
+ * block the polling threads. Log events are dropped if more than {@value #MAX_QUEUED_EVENTS} are queued.
+ */
+@WebServlet(
+        urlPatterns = { "/awslogviewer/tail" },
+        asyncSupported = true
+)
+public class AwsCloudWatchLogsTailServlet extends HttpServlet
+{
+    /**
+     * a comment is sent after this time, to detect closed connections
+     */
+    static final long HEARTBEAT_MILLIS = 15 * 1000;
+    /**
+     * reconnect time of browser
+     */
+    static final long RETRY_MILLIS = 3000;
+    /**
+     * maximum number of log events queued per client
+     */
+    static final int MAX_QUEUED_EVENTS = 1000;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
+    {
+        List<String> writers = AwsCloudWatchLogsJsonWriter.getAllWriterNames();
+        List<String> selectedWriters = new ArrayList<>(AwsCloudWatchLogsViewerServlet.getSelectedWriters(req.getParameterMap()));
+        selectedWriters.removeIf(w -> writers == null || !writers.contains(w));
+
+        if (selectedWriters.isEmpty())
+        {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "no writer selected");
+            return;
+        }
+
+        resp.setContentType("text/event-stream");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+
+        // live tail has no time budget, regular expressions are bounded anyway
+        req.setAttribute(QueryBudget.ATTRIBUTE, QueryBudget.UNLIMITED);
+
+        AsyncContext asyncContext = req.startAsync();
+        asyncContext.setTimeout(0);
+
+        TailClient client = new TailClient(asyncContext, resp.getWriter());
+        asyncContext.addListener(client);
+
+        for (String writerName : selectedWriters)
+        {
+            LogEventsQuery query = LogEventsQuery.of(writerName, req);
+            if (query == null)
+            {
+                continue;
+            }
+
+            final String source = writerName.substring(writerName.indexOf('_') + 1);
+            client.subscribe(writerName, e -> {
+                if (query.matches(e))
+                {
+                    client.send(source, e);
+                }
+            });
+        }
+
+        client.start();
+    }
+
+    /**
+     * one connected browser
+     */
+    private static class TailClient implements AsyncListener
+    {
+        private final AsyncContext asyncContext;
+        private final PrintWriter out;
+        private final List<LogStreamTailer> tailers = new ArrayList<>();
+        private final List<Consumer<OutputLogEvent>> listeners = new ArrayList<>();
+        /**
+         * server-sent events not yet written
+         */
+        private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(MAX_QUEUED_EVENTS);
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private final AtomicInteger dropped = new AtomicInteger();
+        private ScheduledFuture<?> heartbeat;
+        private volatile boolean closed;
+
+        TailClient(AsyncContext asyncContext, PrintWriter out)
+        {
+            this.asyncContext = asyncContext;
+            this.out = out;
+        }
+
+        synchronized void subscribe(String writerName, Consumer<OutputLogEvent> listener)
+        {
+            LogStreamTailer tailer = LogStreamTailer.subscribe(writerName, listener);
+            if (tailer != null)
+            {
+                tailers.add(tailer);
+                listeners.add(listener);
+            }
+        }
+
+        synchronized void start()
+        {
+            enqueue("retry: " + RETRY_MILLIS + "\n\n");
+
+            heartbeat = LogStreamTailer.SCHEDULER.scheduleWithFixedDelay(this::ping, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * queue log event, called by polling thread
+         */
+        void send(String source, OutputLogEvent event)
+        {
+            if (closed)
+            {
+                return;
+            }
+
+            JsonObject data = new JsonObject();
+            data.addProperty("source", source);
+            data.addProperty("timestamp", event.timestamp());
+            data.addProperty("time", Util.getFormattedTimestamp(event.timestamp()).trim());
+            data.addProperty("message", event.message());
+
+            // JSON contains no line breaks
+            enqueue("data: " + data + "\n\n");
+        }
+
+        private void ping()
+        {
+            int droppedEvents = dropped.getAndSet(0);
+            if (droppedEvents > 0)
+            {
+                Util.log(Level.DEBUG, "live tail: %d log events dropped for slow client", droppedEvents);
+            }
+
+            enqueue(droppedEvents > 0 ? ": " + droppedEvents + " dropped\n\n" : ": ping\n\n");
+        }
+
+        private void enqueue(String serverSentEvent)
+        {
+            if (closed)
+            {
+                return;
+            }
+
+            if (!queue.offer(serverSentEvent))
+            {
+                dropped.incrementAndGet();
+                return;
+            }
+
+            if (writing.compareAndSet(false, true))
+            {
+                try
+                {
+                    asyncContext.start(this::write);
+                }
+                catch (IllegalStateException e)
+                {
+                    // async context completed
+                    close();
+                }
+            }
+        }
+
+        /**
+         * write queued events, executed by container thread
+         */
+        private void write()
+        {
+            while (true)
+            {
+                String serverSentEvent;
+                while (!closed && (serverSentEvent = queue.poll()) != null)
+                {
+                    out.print(serverSentEvent);
+                    if (queue.isEmpty())
+                    {
+                        flush();
+                    }
+                }
+
+                writing.set(false);
+                // event queued after last poll, but before writing flag is reset
+                if (closed || queue.isEmpty() || !writing.compareAndSet(false, true))
+                {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * close connection if client disconnected
+         */
+        private void flush()
+        {
+            out.flush();
+
+            if (out.checkError())
+            {
+                Util.log(Level.DEBUG, "live tail: client disconnected");
+                close();
+            }
+        }
+
+        synchronized void close()
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+            queue.clear();
+
+            if (heartbeat != null)
+            {
+                heartbeat.cancel(false);
+            }
+
+            for (int i = 0; i < tailers.size(); i++)
+            {
+                LogStreamTailer.unsubscribe(tailers.get(i), listeners.get(i));
+            }
+
+            try
+            {
+                asyncContext.complete();
+            }
+            catch (IllegalStateException ignored)
+            {
+                // already completed
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event)
+        {
+            close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event)
+        {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event)
+        {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event)
+        {
+        }
+    }
+}
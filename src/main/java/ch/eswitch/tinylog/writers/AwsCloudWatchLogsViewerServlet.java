@@ -1,10 +1,12 @@
 package ch.eswitch.tinylog.writers;
 
-import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+import org.tinylog.Level;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
-import javax.servlet.ServletOutputStream;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -12,13 +14,130 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+/**
+ * AWS Log Viewer<br/>
+ * pages with log events (including "load more"), exports, NDJSON and Insights requests are processed asynchronously:
+ * the container thread is released after the request is started and the log events are read from AWS CloudWatch by a
+ * bounded pool of the viewer ({@value #INIT_PARAMETER_REQUEST_THREADS}), so long queries can not exhaust the threads
+ * of the application server. If all threads are busy and the queue is full, the request is rejected with
+ * <code>503 Service Unavailable</code>.
+ */
 @WebServlet(
-        urlPatterns = { "/awslogviewer" }
+        urlPatterns = { "/awslogviewer" },
+        asyncSupported = true
 )
 public class AwsCloudWatchLogsViewerServlet extends HttpServlet
 {
+    /**
+     * output is flushed after this number of log events
+     */
+    static final int FLUSH_ROWS = 100;
+    /**
+     * request parameter with writer name, only log events of this writer are rendered as HTML fragment
+     */
+    static final String PARAMETER_FRAGMENT = "fragment";
+
+    /**
+     * servlet init parameter for number of time slices read concurrently, see
+     * {@link LogEventsReader#setFetchConcurrency(int)}
+     */
+    public static final String INIT_PARAMETER_FETCH_CONCURRENCY = "fetchConcurrency";
+    /**
+     * servlet init parameter for memory budget of log events cache in MB, 0 disables cache, see
+     * {@link LogEventsReader#setCacheSize(long)}
+     */
+    public static final String INIT_PARAMETER_CACHE_SIZE_MB = "cacheSizeMB";
+    /**
+     * servlet init parameter for number of threads reading log events of asynchronous requests
+     */
+    public static final String INIT_PARAMETER_REQUEST_THREADS = "requestThreads";
+    /**
+     * servlet init parameter for time budget of viewer requests in seconds, 0 for unlimited, exports are only stopped
+     * if the client disconnects
+     */
+    public static final String INIT_PARAMETER_QUERY_BUDGET_SECONDS = "queryBudgetSeconds";
+    /**
+     * default number of threads reading log events of asynchronous requests
+     */
+    static final int DEFAULT_REQUEST_THREADS = 8;
+    /**
+     * waiting asynchronous requests per thread
+     */
+    static final int QUEUED_REQUESTS_PER_THREAD = 2;
+    /**
+     * seconds sent in header <code>Retry-After</code> of rejected requests
+     */
+    static final int RETRY_AFTER_SECONDS = 5;
+
+    private ThreadPoolExecutor requestExecutor;
+
+    @Override
+    public void init() throws ServletException
+    {
+        super.init();
+
+        String fetchConcurrency = getInitParameter(INIT_PARAMETER_FETCH_CONCURRENCY);
+        if (fetchConcurrency != null && !fetchConcurrency.isEmpty())
+        {
+            LogEventsReader.setFetchConcurrency(Integer.parseInt(fetchConcurrency));
+        }
+
+        String cacheSizeMB = getInitParameter(INIT_PARAMETER_CACHE_SIZE_MB);
+        if (cacheSizeMB != null && !cacheSizeMB.isEmpty())
+        {
+            LogEventsReader.setCacheSize(Long.parseLong(cacheSizeMB) * 1024 * 1024);
+        }
+
+        String queryBudgetSeconds = getInitParameter(INIT_PARAMETER_QUERY_BUDGET_SECONDS);
+        if (queryBudgetSeconds != null && !queryBudgetSeconds.isEmpty())
+        {
+            QueryBudget.setDefaultMillis(Long.parseLong(queryBudgetSeconds) * 1000);
+        }
+
+        int requestThreads = DEFAULT_REQUEST_THREADS;
+        String requestThreadsParameter = getInitParameter(INIT_PARAMETER_REQUEST_THREADS);
+        if (requestThreadsParameter != null && !requestThreadsParameter.isEmpty())
+        {
+            requestThreads = Math.max(1, Integer.parseInt(requestThreadsParameter));
+        }
+        requestExecutor = createRequestExecutor(requestThreads);
+    }
+
+    @Override
+    public void destroy()
+    {
+        if (requestExecutor != null)
+        {
+            requestExecutor.shutdownNow();
+        }
+
+        super.destroy();
+    }
+
+    /**
+     * @return bounded pool with daemon threads, idle threads are stopped
+     */
+    private static ThreadPoolExecutor createRequestExecutor(int threads)
+    {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                                             new ArrayBlockingQueue<>(threads * QUEUED_REQUESTS_PER_THREAD), r -> {
+            Thread thread = new Thread(r, AwsCloudWatchLogsViewerServlet.class.getSimpleName() + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException
     {
@@ -36,53 +155,182 @@ public class AwsCloudWatchLogsViewerServlet extends HttpServlet
         List<String> selectedWriters = getSelectedWriters(req.getParameterMap());
 
         String outputType = req.getParameter("outputType");
-        if (outputType != null && outputType.equals("file") && selectedWriters != null && selectedWriters.size() > 0)
+        if (LogEventsExport.isExport(outputType))
         {
-            resp.setContentType("text/plain");
-            final ServletOutputStream out = resp.getOutputStream();
+            // all log events of time range
+            req.setAttribute(QueryBudget.ATTRIBUTE, new QueryBudget(0));
+        }
 
-            selectedWriters.forEach(writerName -> {
-                List<OutputLogEvent> combinedOutputLogEvents = AwsCloudWatchLogsJsonWriter.getCombinedOutputLogEvents(
-                        writerName,
-                        req
-                );
+        final RequestTiming timing = RequestTiming.of(req);
+        if (RequestTiming.OUTPUT_TYPE.equals(outputType))
+        {
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            resp.setHeader("Cache-Control", "no-cache");
+            resp.getWriter().print(RequestTiming.getTotals());
+        }
+        else if (WriterMetrics.OUTPUT_TYPE.equals(outputType))
+        {
+            resp.setContentType("application/json");
+            resp.setCharacterEncoding("UTF-8");
+            resp.setHeader("Cache-Control", "no-cache");
+            resp.getWriter().print(WriterMetrics.getAll());
+        }
+        else if (LogEventsExport.isExport(outputType) && selectedWriters != null && selectedWriters.size() > 0)
+        {
+            startAsync(req, resp, () -> LogEventsExport.write(req, resp, selectedWriters, outputType));
+        }
+        else if (LogsInsightsQuery.isInsightsRequest(outputType))
+        {
+            startAsync(req, resp, () -> LogsInsightsQuery.handle(req, resp, selectedWriters));
+        }
+        else if (LogEventsNdjsonOutput.OUTPUT_TYPE.equals(outputType) && selectedWriters != null && selectedWriters.size() > 0)
+        {
+            startAsync(req, resp, () -> LogEventsNdjsonOutput.write(req, resp, selectedWriters));
+        }
+        else
+        {
+            req.setAttribute("selectedWriters", selectedWriters);
+
+            // next page of one writer ("load more")
+            String fragmentWriter = req.getParameter(PARAMETER_FRAGMENT);
+            if (fragmentWriter != null && ((writers != null && writers.contains(fragmentWriter)) || MergedLogEventsTimeline.TIMELINE.equals(fragmentWriter)))
+            {
+                req.setAttribute("fragmentWriter", fragmentWriter);
+            }
+
+            if (selectedWriters != null && selectedWriters.size() > 0)
+            {
+                // log events are read while the page is rendered
+                startAsync(req, resp, () -> dispatcher.forward(req, resp));
+                return;
+            }
+
+            timing.setTrailer(resp);
+            try
+            {
+                dispatcher.forward(req, resp);
+            }
+            finally
+            {
+                timing.finish(resp);
+            }
+        }
+    }
+
+    /**
+     * process request by a thread of {@link #requestExecutor}, the container thread returns immediately
+     */
+    private void startAsync(HttpServletRequest req, HttpServletResponse resp, AsyncRequest process) throws IOException, ServletException
+    {
+        final RequestTiming timing = RequestTiming.of(req);
+        final AsyncRequest request = () -> {
+            timing.setTrailer(resp);
+            try
+            {
+                process.process();
+            }
+            finally
+            {
+                timing.finish(resp);
+            }
+        };
+
+        if (requestExecutor == null || !req.isAsyncSupported())
+        {
+            // e.g. filter without async support
+            request.process();
+            return;
+        }
+
+        final QueryBudget budget = QueryBudget.of(req);
+        final AsyncContext asyncContext = req.startAsync();
+        // exports of large time ranges may take long, a disconnected client fails on next write
+        asyncContext.setTimeout(0);
+        asyncContext.addListener(new AsyncListener()
+        {
+            @Override
+            public void onComplete(AsyncEvent event)
+            {
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event)
+            {
+                budget.cancel();
+            }
+
+            @Override
+            public void onError(AsyncEvent event)
+            {
+                // client disconnected, stop reading
+                budget.cancel();
+            }
 
+            @Override
+            public void onStartAsync(AsyncEvent event)
+            {
+            }
+        });
+
+        try
+        {
+            requestExecutor.execute(() -> {
                 try
                 {
-                    out.println(String.format("%s (%d log events found)", writerName, combinedOutputLogEvents != null ? combinedOutputLogEvents.size() : 0));
-                    if (combinedOutputLogEvents != null && combinedOutputLogEvents.size() > 0)
-                    {
-                        combinedOutputLogEvents.forEach(
-                                e -> {
-                                    try
-                                    {
-                                        out.print(Util.getFormattedTimestamp(e.timestamp()));
-                                        out.print(" ");
-                                        out.println(e.message());
-                                    }
-                                    catch (IOException ex)
-                                    {
-                                        ex.printStackTrace();
-                                    }
-                                }
-                        );
-                    }
+                    request.process();
                 }
-                catch (IOException e)
+                catch (IOException | ServletException | RuntimeException e)
                 {
-                    e.printStackTrace();
+                    Util.log(Level.ERROR, "viewer request failed: %s", e);
+                    sendError(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                }
+                finally
+                {
+                    asyncContext.complete();
                 }
             });
         }
-        else
+        catch (RejectedExecutionException e)
         {
-            req.setAttribute("selectedWriters", selectedWriters);
+            Util.log(Level.DEBUG, "viewer request rejected, %d requests running", requestExecutor.getActiveCount());
 
-            dispatcher.forward(req, resp);
+            resp.setHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+            sendError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            asyncContext.complete();
         }
     }
 
-    private List<String> getSelectedWriters(Map<String, String[]> parameterMap)
+    private static void sendError(HttpServletResponse resp, int status)
+    {
+        if (resp.isCommitted())
+        {
+            return;
+        }
+
+        try
+        {
+            resp.sendError(status);
+        }
+        catch (IOException | IllegalStateException e)
+        {
+            Util.log(Level.WARN, "error %d not sent: %s", status, e);
+        }
+    }
+
+    /**
+     * request processed asynchronously
+     */
+    @FunctionalInterface
+    private interface AsyncRequest
+    {
+        void process() throws IOException, ServletException;
+    }
+
+    /**
+     * @return names of writers selected in form (parameter writer name with value <code>true</code>)
+     */
+    static List<String> getSelectedWriters(Map<String, String[]> parameterMap)
     {
         return parameterMap.entrySet()
                 .stream()
@@ -1,18 +1,32 @@
 package ch.eswitch.tinylog.writers;
 
+import org.tinylog.Level;
+import org.tinylog.configuration.Configuration;
 import org.tinylog.core.LogEntry;
+import org.tinylog.core.LogEntryValue;
 import org.tinylog.writers.AbstractFormatPatternWriter;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.services.cloudwatch.model.CloudWatchException;
 import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
 import software.amazon.awssdk.services.cloudwatchlogs.model.*;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -46,6 +60,14 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
      * writer property prefix for {@link software.amazon.awssdk.auth.credentials.SystemPropertyCredentialsProvider}<br/>
      */
     public static final String PROPERTY_AWS = "aws.";
+    /**
+     * property name in tinylog configuration for {@link #optimisticStartup}
+     */
+    public static final String PROPERTY_OPTIMISTIC_STARTUP = "optimisticStartup";
+    /**
+     * property name in tinylog configuration for rollover policies of a rolling {@link #streamName}
+     */
+    public static final String PROPERTY_POLICIES = RollingStreamName.PROPERTY_POLICIES;
     /**
      * maximum message size<br/>
      * Log event size: 256 KB (maximum). This quota can't be changed.<br/>
@@ -73,15 +95,111 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
      * format for value of {@value #CONTEXT_KEY_PART}
      */
     static final String CONTEXT_PART_FORMAT = "[%d/%d]";
+    /**
+     * key in log entry context for message id, part and total parts of partial messages, see {@link MessagePart}<br/>
+     * {@link AwsCloudWatchLogsJsonWriter} renders it as first JSON attribute
+     */
+    static final String CONTEXT_KEY_MESSAGE_PART = "messagePart";
+    /**
+     * maximum size of a {@link PutLogEventsRequest} in bytes<br/>
+     * The maximum batch size is 1,048,576 bytes. This size is calculated as the sum of all event messages in UTF-8,
+     * plus 26 bytes for each log event.
+     */
+    static final int MAX_BATCH_SIZE = 1048576;
+    /**
+     * additional size of each log event in a {@link PutLogEventsRequest}
+     */
+    static final int BATCH_EVENT_OVERHEAD = 26;
+    /**
+     * maximum number of log events in a {@link PutLogEventsRequest}
+     */
+    static final int MAX_BATCH_EVENTS = 10000;
+    /**
+     * property name in tinylog configuration for {@link #maxDestinations}
+     */
+    public static final String PROPERTY_MAX_DESTINATIONS = "maxDestinations";
+    /**
+     * default of {@link #maxDestinations}
+     */
+    static final int DEFAULT_MAX_DESTINATIONS = 1000;
+    /**
+     * property name in tinylog configuration for {@link #outagePolicy}
+     */
+    public static final String PROPERTY_OUTAGE_POLICY = "outagePolicy";
+    /**
+     * property name in tinylog configuration for {@link #outageBufferSize}
+     */
+    public static final String PROPERTY_OUTAGE_BUFFER_SIZE = "outageBufferSize";
+    /**
+     * property name in tinylog configuration for number of consecutive failures which open the circuit breaker
+     */
+    public static final String PROPERTY_CIRCUIT_BREAKER_FAILURES = "circuitBreakerFailures";
+    /**
+     * property name in tinylog configuration for seconds until the open circuit breaker sends a probe
+     */
+    public static final String PROPERTY_CIRCUIT_BREAKER_SECONDS = "circuitBreakerSeconds";
+    /**
+     * {@link #outagePolicy}: log entries are kept in memory and sent when AWS CloudWatch is available again
+     */
+    public static final String OUTAGE_POLICY_BUFFER = "buffer";
+    /**
+     * {@link #outagePolicy}: log entries are dropped and counted, see {@link WriterMetrics}
+     */
+    public static final String OUTAGE_POLICY_DROP = "drop";
+    /**
+     * default of {@link #outageBufferSize}
+     */
+    static final int DEFAULT_OUTAGE_BUFFER_SIZE = 10000;
+    /**
+     * property name in tinylog configuration for {@link #offHeapBufferMB}
+     */
+    public static final String PROPERTY_OFF_HEAP_BUFFER_MB = "offHeapBufferMB";
+    /**
+     * property name in tinylog configuration for {@link #writingThread}
+     */
+    public static final String PROPERTY_WRITING_THREAD = "writingThread";
+    /**
+     * global tinylog property to enable the writing thread
+     */
+    static final String TINYLOG_WRITING_THREAD = "writingthread";
+    /**
+     * log entries queued for {@link #flush()} of the writing thread are sent after this time at the latest
+     */
+    static final long FLUSH_FALLBACK_MILLIS = 1000;
+    /**
+     * maximum time {@link #close()} waits for queued log entries to be rendered and sent
+     */
+    static final long CLOSE_TIMEOUT_SECONDS = 10;
     private static long lastTimestamp = 0;
+    /**
+     * maximum number of {@link #KNOWN_DESTINATIONS}
+     */
+    static final int MAX_KNOWN_DESTINATIONS = 10000;
+    /**
+     * log group and stream names (separated by new line) which log events have been put to, no describe calls are
+     * needed for these destinations, e.g. if writer is created again<br/>
+     * the least recently added names are removed, so routed and rolled destinations do not grow the set without limit
+     */
+    private static final Set<String> KNOWN_DESTINATIONS = Collections.newSetFromMap(Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest)
+        {
+            return size() > MAX_KNOWN_DESTINATIONS;
+        }
+    }));
     /**
      * The name of the log group<br/>
-     * see {@link PutLogEventsRequest#logGroupName()}
+     * see {@link PutLogEventsRequest#logGroupName()}<br/>
+     * The name may contain routing placeholders, e.g. <code>app-{context:tenant}</code>, see {@link DestinationRouter}
      */
     public String logGroupName;
     /**
      * The name of the log stream<br/>
-     * see {@link PutLogEventsRequest#logStreamName()}
+     * see {@link PutLogEventsRequest#logStreamName()}<br/>
+     * The name may contain placeholders, e.g. <code>app-{date}-{count}</code>, the log stream is rolled over by
+     * the policies of property {@value #PROPERTY_POLICIES}, see {@link RollingStreamName}. Routing placeholders, e.g.
+     * <code>{level}</code>, are supported as well, see {@link DestinationRouter}
      */
     public String streamName;
     /**
@@ -90,10 +208,69 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
      * If this property is not set, large messages are truncated to allowed size (256kB)
      */
     public boolean splitLargeMessages;
+    /**
+     * Boolean property to skip control-plane calls at startup<br/>
+     * If this property is set, log events are put without checking log group and stream
+     * ({@code DescribeLogGroups}, {@code DescribeLogStreams}). Log stream, and log group if necessary, are only created
+     * if {@code PutLogEvents} fails with {@link ResourceNotFoundException}.
+     */
+    public boolean optimisticStartup;
+    /**
+     * Maximum number of active destinations (log group and stream) of routing placeholders<br/>
+     * The least recently used destination is removed if there are more destinations, all destinations are served by
+     * the same sender thread.
+     */
+    public int maxDestinations;
+    /**
+     * Handling of log entries while AWS CloudWatch is not available (circuit breaker is open):
+     * {@value #OUTAGE_POLICY_BUFFER} (default) or {@value #OUTAGE_POLICY_DROP}
+     */
+    public String outagePolicy;
+    /**
+     * Maximum number of buffered log entries per destination while AWS CloudWatch is not available, the oldest log
+     * entries are dropped
+     */
+    public int outageBufferSize;
+    /**
+     * Byte budget in MB of queued log events in off-heap memory, 0 (default) to keep queued log events on the heap<br/>
+     * Messages are serialized to direct buffers when they are queued, log entries (incl. exceptions and context) are
+     * not referenced any longer. Log events are dropped if the budget is exhausted.
+     */
+    public int offHeapBufferMB;
+    /**
+     * off-heap memory of queued log events, <code>null</code> if {@link #offHeapBufferMB} is 0
+     */
+    private OffHeapArena offHeapArena;
+    /**
+     * Boolean property, <code>true</code> if {@link #write(LogEntry)} is called by tinylog's writing thread
+     * (default: tinylog property {@value #TINYLOG_WRITING_THREAD})<br/>
+     * Log entries are rendered and queued on the writing thread, the queued log entries are handed to the sender
+     * thread as a whole on {@link #flush()} (called by the writing thread after each batch) or when a batch is full,
+     * at the latest after {@value #FLUSH_FALLBACK_MILLIS} ms.
+     */
+    public boolean writingThread;
+    private CircuitBreaker circuitBreaker;
+    private WriterMetrics metrics;
+    private ScheduledExecutorService probeExecutor;
     private ExecutorService cachedExecutor;
     private ExecutorService singleExecutor;
     private CloudWatchLogsClient logsClient;
-    private String sequenceToken;
+    /**
+     * routing of log entries, <code>null</code> if log group and stream name have no routing placeholders
+     */
+    private DestinationRouter router;
+    /**
+     * destination of all log entries if there is no {@link #router}
+     */
+    private Destination destination;
+    /**
+     * active destinations of {@link #router} with log group and stream name as key, least recently used first
+     */
+    private Map<String, Destination> destinations;
+    /**
+     * rollover policies of a rolling stream name, see {@link RollingStreamName}
+     */
+    private String policies;
     private AtomicBoolean initLogsClient = new AtomicBoolean(false);
     private AtomicBoolean initDone = new AtomicBoolean(false);
 
@@ -121,6 +298,65 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
         }
 
         splitLargeMessages = getBooleanValue("splitLargeMessages");
+        optimisticStartup = getBooleanValue(PROPERTY_OPTIMISTIC_STARTUP);
+
+        policies = getStringValue(PROPERTY_POLICIES);
+        if (RollingStreamName.isPattern(streamName))
+        {
+            // check placeholders and policies
+            new RollingStreamName(streamName, policies);
+        }
+
+        maxDestinations = getIntValue(PROPERTY_MAX_DESTINATIONS, DEFAULT_MAX_DESTINATIONS);
+
+        outagePolicy = getStringValue(PROPERTY_OUTAGE_POLICY);
+        if (outagePolicy == null || outagePolicy.isEmpty())
+        {
+            outagePolicy = OUTAGE_POLICY_BUFFER;
+        }
+        else if (!OUTAGE_POLICY_BUFFER.equals(outagePolicy) && !OUTAGE_POLICY_DROP.equals(outagePolicy))
+        {
+            throw new Exception("parameter '" + PROPERTY_OUTAGE_POLICY + "' must be '" + OUTAGE_POLICY_BUFFER + "' or '" + OUTAGE_POLICY_DROP + "'");
+        }
+        outageBufferSize = getIntValue(PROPERTY_OUTAGE_BUFFER_SIZE, DEFAULT_OUTAGE_BUFFER_SIZE);
+
+        String writingThreadValue = getStringValue(PROPERTY_WRITING_THREAD);
+        writingThread = Boolean.parseBoolean(writingThreadValue != null ? writingThreadValue.trim() : Configuration.get(TINYLOG_WRITING_THREAD));
+
+        offHeapBufferMB = getIntValue(PROPERTY_OFF_HEAP_BUFFER_MB, 0);
+        if (offHeapBufferMB > 0)
+        {
+            offHeapArena = new OffHeapArena(offHeapBufferMB * 1024L * 1024L);
+        }
+
+        metrics = WriterMetrics.of(logGroupName, streamName);
+        circuitBreaker = new CircuitBreaker(getIntValue(PROPERTY_CIRCUIT_BREAKER_FAILURES, CircuitBreaker.DEFAULT_FAILURE_THRESHOLD),
+                                            getIntValue(PROPERTY_CIRCUIT_BREAKER_SECONDS, (int) (CircuitBreaker.DEFAULT_OPEN_MILLIS / 1000)) * 1000L,
+                                            metrics);
+
+        if (DestinationRouter.isRouted(logGroupName) || DestinationRouter.isRouted(streamName))
+        {
+            router = new DestinationRouter(logGroupName, streamName);
+            destinations = new LinkedHashMap<String, Destination>(16, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Destination> eldest)
+                {
+                    if (size() > maxDestinations)
+                    {
+                        // log entries queued for next flush
+                        eldest.getValue().schedule();
+                        return true;
+                    }
+
+                    return false;
+                }
+            };
+        }
+        else
+        {
+            destination = new Destination(logGroupName, streamName);
+        }
 
         properties.forEach((key, value) -> {
             if (key.startsWith(PROPERTY_AWS))
@@ -130,6 +366,26 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
         });
     }
 
+    /**
+     * @param properties Configuration for writer
+     * @param logsClient client to use instead of a client with {@link DefaultCredentialsProvider}, e.g. in tests
+     */
+    AwsCloudWatchLogsWriter(Map<String, String> properties, CloudWatchLogsClient logsClient) throws Exception
+    {
+        this(properties);
+        this.logsClient = logsClient;
+    }
+
+    /**
+     * @return integer property of writer or default value if property is not set
+     */
+    private int getIntValue(String key, int defaultValue)
+    {
+        String value = getStringValue(key);
+
+        return value != null && !value.trim().isEmpty() ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
     private synchronized static long getTimestamp()
     {
         long ts = System.currentTimeMillis();
@@ -147,13 +403,24 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
     {
         // example
         // https://docs.aws.amazon.com/code-samples/latest/catalog/javav2-cloudwatch-src-main-java-com-example-cloudwatch-PutLogEvents.java.html
-        try
+        if (logsClient == null)
         {
-            logsClient = CloudWatchLogsClient.builder().credentialsProvider(DefaultCredentialsProvider.create()).build();
+            try
+            {
+                logsClient = CloudWatchLogsClient.builder().credentialsProvider(DefaultCredentialsProvider.create()).build();
+            }
+            catch (Throwable e)
+            {
+                Util.log(Level.ERROR, "create CloudWatch Logs client failed: %s", e);
+            }
         }
-        catch (Throwable e)
+
+        if (optimisticStartup || router != null || KNOWN_DESTINATIONS.contains(destination.getKey(destination.currentStreamName)))
         {
-            e.printStackTrace();
+            // log group and stream are created on first PutLogEvents, if necessary (also for routed destinations)
+            createExecutors();
+            initDone.set(true);
+            return;
         }
 
         try
@@ -168,22 +435,22 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
                     // log stream does not exist
                     // try to create it
 
-                    CreateLogStreamRequest createLogStreamRequest = CreateLogStreamRequest.builder().logGroupName(logGroupName).logStreamName(streamName).build();
+                    CreateLogStreamRequest createLogStreamRequest = CreateLogStreamRequest.builder().logGroupName(logGroupName).logStreamName(destination.currentStreamName).build();
                     CreateLogStreamResponse createLogStreamResponse = logsClient.createLogStream(createLogStreamRequest);
 
                     if (createLogStreamResponse.sdkHttpResponse().isSuccessful())
                     {
                         if (!setSequenceToken())
                         {
-                            String msg = String.format("log stream '%s' not found in log group name '%s'", streamName, logGroupName);
-                            System.err.println(AwsCloudWatchLogsWriter.class.getSimpleName() + ": " + msg);
+                            String msg = String.format("log stream '%s' not found in log group name '%s'", destination.currentStreamName, logGroupName);
+                            Util.log(Level.ERROR, "%s", msg);
                             throw new Exception(msg);
                         }
                     }
                     else
                     {
-                        String msg = String.format("log stream '%s' could not be created in log group name '%s'", streamName, logGroupName);
-                        System.err.println(AwsCloudWatchLogsWriter.class.getSimpleName() + ": " + msg);
+                        String msg = String.format("log stream '%s' could not be created in log group name '%s'", destination.currentStreamName, logGroupName);
+                        Util.log(Level.ERROR, "%s", msg);
                         throw new Exception(msg);
                     }
                 }
@@ -192,26 +459,33 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
             {
                 // log group does not exist
                 String msg = String.format("log group '%s' not found", logGroupName);
-                System.err.println(AwsCloudWatchLogsWriter.class.getSimpleName() + ": " + msg);
+                Util.log(Level.ERROR, "%s", msg);
                 throw new Exception(msg);
             }
         }
         catch (CloudWatchException e)
         {
-            System.err.println(AwsCloudWatchLogsWriter.class.getSimpleName() + ": " + e + " - " + e.awsErrorDetails().errorMessage());
+            Util.log(Level.ERROR, "%s - %s", e, getErrorMessage(e));
             throw e;
         }
 
-        cachedExecutor = Executors.newCachedThreadPool();
-        singleExecutor = Executors.newSingleThreadExecutor();
-
+        createExecutors();
         initDone.set(true);
     }
 
+    private void createExecutors()
+    {
+        // non-daemon platform threads, queued log events are put before the JVM exits (also on Java 21 and newer)
+        cachedExecutor = Threads.newTaskExecutor(AwsCloudWatchLogsWriter.class.getSimpleName(), false);
+        singleExecutor = Executors.newSingleThreadExecutor(Threads.factory(AwsCloudWatchLogsWriter.class.getSimpleName() + "-sender", false));
+        // retry of buffered log entries while circuit breaker is open, fallback of flush()
+        probeExecutor = Executors.newSingleThreadScheduledExecutor(Threads.factory(AwsCloudWatchLogsWriter.class.getSimpleName() + "-probe", true));
+    }
+
     private boolean setSequenceToken() throws Exception
     {
         DescribeLogStreamsRequest logStreamRequest = DescribeLogStreamsRequest.builder().logGroupName(logGroupName)
-                                                                                        .logStreamNamePrefix(streamName).build();
+                                                                                        .logStreamNamePrefix(destination.currentStreamName).build();
         DescribeLogStreamsResponse describeLogStreamsResponse = logsClient.describeLogStreams(logStreamRequest);
 
         if (describeLogStreamsResponse.logStreams() != null && describeLogStreamsResponse.logStreams().size() > 0)
@@ -219,7 +493,7 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
             // Assume that a single stream is returned since a specific stream name was specified in the previous request.
             LogStream logStream = describeLogStreamsResponse.logStreams().get(0);
 
-            sequenceToken = logStream.uploadSequenceToken();
+            destination.sequenceToken = logStream.uploadSequenceToken();
 
             return true;
         }
@@ -257,7 +531,7 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
                             }
                             catch (Exception ex)
                             {
-                                ex.printStackTrace();
+                                Util.log(Level.ERROR, "write initial log entry failed: %s", ex);
                             }
                         });
                         intialLogMessages = null;
@@ -271,32 +545,48 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
 
     public void writeLogEntry(final LogEntry logEntry) throws Exception
     {
-        cachedExecutor.execute(() -> {
-            try
-            {
-                if (splitLargeMessages && logEntry.getMessage() != null && logEntry.getMessage().length() > MAX_MESSAGE_SIZE)
-                {
-                    List<LogEntry> logEntries = Util.splitLogEntries(logEntry);
-                    final long ts = getTimestamp();
+        if (writingThread)
+        {
+            // already on tinylog's writing thread, batches are sent on flush
+            renderLogEntry(logEntry);
+        }
+        else
+        {
+            cachedExecutor.execute(() -> renderLogEntry(logEntry));
+        }
+    }
 
-                    logEntries.forEach(e -> putLogEntry(e, ts));
-                }
-                else
-                {
-                    putLogEntry(logEntry, System.currentTimeMillis());
-                }
-            }
-            catch (InvalidParameterException e)
+    /**
+     * render log entry (split large messages) and queue it for sender thread
+     */
+    private void renderLogEntry(final LogEntry logEntry)
+    {
+        try
+        {
+            if (splitLargeMessages && logEntry.getMessage() != null && logEntry.getMessage().length() > MAX_MESSAGE_SIZE)
             {
-                System.out.println(AwsCloudWatchLogsWriter.class.getSimpleName() + ".writeLogEntry: " + e + ", message size: " + logEntry.getMessage().length() + ", message: " + logEntry.getMessage());
-                System.err.println(e.awsErrorDetails().errorMessage());
+                List<LogEntry> logEntries = Util.splitLogEntries(logEntry);
+                final long ts = getTimestamp();
+
+                // all parts in one request, as far as batch size allows
+                List<InputLogEvent> inputLogEvents = new ArrayList<>(logEntries.size());
+                logEntries.forEach(e -> inputLogEvents.add(InputLogEvent.builder().message(renderMessage(e)).timestamp(ts).build()));
+
+                getDestination(logEntry).add(inputLogEvents, logEntry);
             }
-            catch (CloudWatchException e)
+            else
             {
-                System.err.println(e.awsErrorDetails().errorMessage());
+                putLogEntry(logEntry, System.currentTimeMillis());
             }
-        });
-
+        }
+        catch (InvalidParameterException e)
+        {
+            Util.log(Level.ERROR, "writeLogEntry: %s - %s, message size: %d, message: %s", e, getErrorMessage(e), logEntry.getMessage().length(), logEntry.getMessage());
+        }
+        catch (CloudWatchException e)
+        {
+            Util.log(Level.ERROR, "writeLogEntry: %s - %s", e, getErrorMessage(e));
+        }
     }
 
     private void putLogEntry(LogEntry logEntry, long timestamp)
@@ -312,29 +602,674 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
         // Build an input log message to put to CloudWatch.
         InputLogEvent inputLogEvent = InputLogEvent.builder().message(msg).timestamp(timestamp).build();
 
-        singleExecutor.execute(() -> {
+        getDestination(logEntry).add(Collections.singletonList(inputLogEvent), logEntry);
+    }
+
+    /**
+     * @return destination of log entry, a destination of {@link #router} is created on first use
+     */
+    private Destination getDestination(LogEntry logEntry)
+    {
+        if (router == null)
+        {
+            return destination;
+        }
+
+        LogGroupAndStreamName logGroupAndStreamName = router.resolve(logEntry);
+        String key = logGroupAndStreamName.logGroupName + '\n' + logGroupAndStreamName.streamName;
+        synchronized (destinations)
+        {
+            return destinations.computeIfAbsent(key, k -> new Destination(logGroupAndStreamName.logGroupName, logGroupAndStreamName.streamName));
+        }
+    }
+
+    /**
+     * log group and stream of log events, with rollover and batching of log events<br/>
+     * log entries are queued until the sender thread puts them, all queued log entries of the same log stream are put
+     * in as few requests as possible
+     */
+    private class Destination
+    {
+        private final String logGroupName;
+        /**
+         * rollover of log streams, <code>null</code> if stream name has no placeholders
+         */
+        private final RollingStreamName rollingStreamName;
+        /**
+         * log stream log events are put to
+         */
+        private volatile String currentStreamName;
+        /**
+         * next log stream which has been created in advance
+         */
+        private volatile String nextStreamName;
+        private String sequenceToken;
+        /**
+         * log entries waiting for sender thread
+         */
+        private final List<PendingLogEntry> pending = new ArrayList<>();
+        /**
+         * size of queued log entries in a {@link PutLogEventsRequest}
+         */
+        private long pendingSize;
+        private boolean scheduled;
+
+        Destination(String logGroupName, String streamName)
+        {
+            this.logGroupName = logGroupName;
+            if (RollingStreamName.isPattern(streamName))
+            {
+                rollingStreamName = new RollingStreamName(streamName, policies);
+                currentStreamName = rollingStreamName.getStreamName(System.currentTimeMillis(), 0, 0);
+            }
+            else
+            {
+                rollingStreamName = null;
+                currentStreamName = streamName;
+            }
+        }
+
+        /**
+         * @return key of log group and stream in {@link #KNOWN_DESTINATIONS}
+         */
+        String getKey(String streamName)
+        {
+            return logGroupName + '\n' + streamName;
+        }
+
+        /**
+         * queue log events of a log entry for sender thread<br/>
+         * while the circuit is open, log events are buffered (at most {@link #outageBufferSize} log entries) or
+         * dropped without waking up the sender thread
+         *
+         * @param inputLogEvents log events in chronological order, they are put to the same log stream
+         * @param logEntry original log entry (for error messages)
+         */
+        void add(List<InputLogEvent> inputLogEvents, LogEntry logEntry)
+        {
+            PendingLogEntry pendingLogEntry;
+            if (offHeapArena != null)
+            {
+                pendingLogEntry = PendingLogEntry.offHeap(offHeapArena, inputLogEvents);
+                if (pendingLogEntry == null)
+                {
+                    // byte budget exhausted
+                    metrics.droppedEvents.addAndGet(inputLogEvents.size());
+                    return;
+                }
+            }
+            else
+            {
+                pendingLogEntry = new PendingLogEntry(inputLogEvents, logEntry);
+            }
+
+            synchronized (pending)
+            {
+                if (circuitBreaker.isOpen())
+                {
+                    degrade(pending.size(), Collections.singletonList(pendingLogEntry));
+                    return;
+                }
+
+                pending.add(pendingLogEntry);
+                pendingSize += pendingLogEntry.size;
+                if (scheduled || (writingThread && pendingSize < MAX_BATCH_SIZE && pending.size() < MAX_BATCH_EVENTS))
+                {
+                    // sent by flush of writing thread or when a batch is full
+                    if (writingThread && !scheduled && pending.size() == 1)
+                    {
+                        // in case flush() is not called, e.g. without tinylog's writing thread
+                        probeExecutor.schedule(this::schedule, FLUSH_FALLBACK_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                    return;
+                }
+                scheduled = true;
+            }
+
+            execute();
+        }
+
+        /**
+         * send queued log entries, e.g. on flush of tinylog's writing thread
+         */
+        void schedule()
+        {
+            synchronized (pending)
+            {
+                if (scheduled || pending.isEmpty() || circuitBreaker.isOpen())
+                {
+                    return;
+                }
+                scheduled = true;
+            }
+
+            execute();
+        }
+
+        /**
+         * queue {@link #send()} for sender thread
+         */
+        private void execute()
+        {
             try
             {
-                // Specify the request parameters.
-                // Sequence token is required so that the log can be written to the
-                // latest location in the stream.
-                PutLogEventsRequest putLogEventsRequest = PutLogEventsRequest.builder().logEvents(Collections.singletonList(inputLogEvent))
-                                                                                       .logGroupName(logGroupName).logStreamName(streamName)
-                                                                                       .sequenceToken(sequenceToken).build();
+                singleExecutor.execute(this::send);
+            }
+            catch (RejectedExecutionException e)
+            {
+                // writer is closed, queued log entries are dropped by close()
+            }
+        }
 
-                PutLogEventsResponse putLogEventsResponse = logsClient.putLogEvents(putLogEventsRequest);
-                sequenceToken = putLogEventsResponse.nextSequenceToken();
+        /**
+         * last send on {@link #close()}, also of log entries buffered for retry, if the circuit breaker allows it
+         */
+        void sendRemaining()
+        {
+            synchronized (pending)
+            {
+                if (pending.isEmpty() || circuitBreaker.isOpen())
+                {
+                    return;
+                }
+                scheduled = true;
+            }
+
+            execute();
+        }
+
+        /**
+         * drop log entries which could not be sent until {@link #close()}, they are counted and their off-heap memory
+         * is released
+         *
+         * @return number of dropped log events
+         */
+        int dropPending()
+        {
+            synchronized (pending)
+            {
+                int events = 0;
+                for (PendingLogEntry logEntry : pending)
+                {
+                    events += logEntry.eventCount - logEntry.sentEvents;
+                    logEntry.release();
+                }
+                metrics.droppedEvents.addAndGet(events);
+                pending.clear();
+                pendingSize = 0;
+
+                return events;
+            }
+        }
+
+        /**
+         * put queued log entries, executed by sender thread
+         */
+        private void send()
+        {
+            List<PendingLogEntry> logEntries;
+            synchronized (pending)
+            {
+                logEntries = new ArrayList<>(pending);
+                pending.clear();
+                pendingSize = 0;
+                scheduled = false;
+            }
+
+            // consecutive log entries of the same log stream are put together
+            int start = 0;
+            String batchStreamName = null;
+            for (int i = 0; i <= logEntries.size(); i++)
+            {
+                String streamName = null;
+                if (i < logEntries.size())
+                {
+                    PendingLogEntry logEntry = logEntries.get(i);
+                    streamName = rollingStreamName != null ? rollOver(logEntry) : currentStreamName;
+                }
+
+                if (i > start && (streamName == null || !streamName.equals(batchStreamName)))
+                {
+                    List<PendingLogEntry> batch = logEntries.subList(start, i);
+                    int handled = put(batchStreamName, batch);
+                    if (handled < batch.size())
+                    {
+                        degrade(0, new ArrayList<>(logEntries.subList(start + handled, logEntries.size())));
+                        return;
+                    }
+                    start = i;
+                }
+                batchStreamName = streamName;
+            }
+        }
+
+        /**
+         * log entries which could not be sent because of an outage are buffered for retry or dropped, see
+         * {@link #outagePolicy}<br/>
+         * the oldest log entries are dropped if the buffer is full
+         *
+         * @param index position in queue, 0 for log entries of a failed request, size of queue for new log entries
+         */
+        private void degrade(int index, List<PendingLogEntry> logEntries)
+        {
+            synchronized (pending)
+            {
+                if (OUTAGE_POLICY_DROP.equals(outagePolicy))
+                {
+                    logEntries.forEach(e -> {
+                        metrics.droppedEvents.addAndGet(e.eventCount);
+                        e.release();
+                    });
+                    return;
+                }
+
+                // keep order, log entries of failed request are older than queued ones
+                pending.addAll(index, logEntries);
+                logEntries.forEach(e -> {
+                    pendingSize += e.size;
+                    if (!e.buffered)
+                    {
+                        // counted once, not on every failed retry
+                        e.buffered = true;
+                        metrics.bufferedEvents.addAndGet(e.eventCount);
+                    }
+                });
+
+                while (pending.size() > outageBufferSize)
+                {
+                    PendingLogEntry dropped = pending.remove(0);
+                    pendingSize -= dropped.size;
+                    metrics.droppedEvents.addAndGet(dropped.eventCount);
+                    dropped.release();
+                }
+
+                if (!scheduled)
+                {
+                    // probe, even if no new log entries are written
+                    scheduled = true;
+                    probeExecutor.schedule(this::execute, circuitBreaker.getRetryDelayMillis(), TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        /**
+         * put log events to CloudWatch, log events are split into batches of at most {@value #MAX_BATCH_SIZE} bytes
+         * and {@value #MAX_BATCH_EVENTS} log events<br/>
+         * batches are built in queue order, the log events of a large log entry may be put in several requests. Sent
+         * log events are counted per log entry ({@link PendingLogEntry#sentEvents}), so a log entry is never put
+         * twice.<br/>
+         * if a batch of several log entries is rejected, the log entries from this batch on are put one by one
+         *
+         * @return number of log entries which have been sent or rejected (and released), the remaining log entries
+         * could not be sent because of an outage or open circuit and should be degraded
+         */
+        private int put(String streamName, List<PendingLogEntry> logEntries)
+        {
+            if (!circuitBreaker.allowRequest())
+            {
+                return 0;
+            }
+
+            // first log entry which has not been sent completely
+            int start = 0;
+            try
+            {
+                while (start < logEntries.size())
+                {
+                    List<InputLogEvent> inputLogEvents = new ArrayList<>();
+                    int batchSize = 0;
+                    int end = start;
+                    int endEvent = logEntries.get(start).sentEvents;
+                    List<InputLogEvent> events = logEntries.get(start).getInputLogEvents();
+                    while (inputLogEvents.size() < MAX_BATCH_EVENTS)
+                    {
+                        InputLogEvent inputLogEvent = events.get(endEvent);
+                        int eventSize = inputLogEvent.message().getBytes(StandardCharsets.UTF_8).length + BATCH_EVENT_OVERHEAD;
+                        if (!inputLogEvents.isEmpty() && batchSize + eventSize > MAX_BATCH_SIZE)
+                        {
+                            break;
+                        }
+                        inputLogEvents.add(inputLogEvent);
+                        batchSize += eventSize;
+
+                        if (++endEvent == events.size())
+                        {
+                            if (++end == logEntries.size())
+                            {
+                                break;
+                            }
+                            endEvent = logEntries.get(end).sentEvents;
+                            events = logEntries.get(end).getInputLogEvents();
+                        }
+                    }
+                    // stable sort within the request, parts of split log events have the same timestamp
+                    inputLogEvents.sort(Comparator.comparingLong(InputLogEvent::timestamp));
+
+                    // Specify the request parameters.
+                    // Sequence token is required so that the log can be written to the
+                    // latest location in the stream.
+                    PutLogEventsRequest putLogEventsRequest = PutLogEventsRequest.builder().logEvents(inputLogEvents)
+                                                                                           .logGroupName(logGroupName).logStreamName(streamName)
+                                                                                           .sequenceToken(sequenceToken).build();
+
+                    PutLogEventsResponse putLogEventsResponse = putLogEvents(putLogEventsRequest);
+                    sequenceToken = putLogEventsResponse.nextSequenceToken();
+                    circuitBreaker.onSuccess();
+                    metrics.sentRequests.incrementAndGet();
+                    metrics.sentEvents.addAndGet(inputLogEvents.size());
+
+                    for (int i = start; i < end; i++)
+                    {
+                        logEntries.get(i).sentEvents = logEntries.get(i).eventCount;
+                        logEntries.get(i).release();
+                    }
+                    if (end < logEntries.size())
+                    {
+                        logEntries.get(end).sentEvents = endEvent;
+                    }
+                    start = end;
+                }
             }
             catch (InvalidParameterException e)
             {
-                System.out.println(AwsCloudWatchLogsWriter.class.getSimpleName() + ".putLogEntry: " + e + ", message size: " + logEntry.getMessage().length() + ", message: " + logEntry.getMessage());
-                System.err.println(e.awsErrorDetails().errorMessage());
+                circuitBreaker.onSuccess();
+                if (logEntries.size() - start > 1)
+                {
+                    // only reject invalid log entry, log entries of previous requests have been sent
+                    for (int i = start; i < logEntries.size(); i++)
+                    {
+                        if (put(streamName, Collections.singletonList(logEntries.get(i))) == 0)
+                        {
+                            return i;
+                        }
+                    }
+                    return logEntries.size();
+                }
+
+                String message = logEntries.get(start).getMessage();
+                Util.log(Level.ERROR, "%s.putLogEntry: %s - %s, message size: %d, message: %s", AwsCloudWatchLogsWriter.class.getSimpleName(), e,
+                         getErrorMessage(e), message.length(), message);
+            }
+            catch (SdkException e)
+            {
+                if (CircuitBreaker.isOutage(e))
+                {
+                    circuitBreaker.onFailure();
+                    metrics.failedRequests.incrementAndGet();
+
+                    // log entries of previous requests have been sent, the rest is degraded
+                    return start;
+                }
+
+                circuitBreaker.onSuccess();
+                Util.log(Level.ERROR, "%s: %s", AwsCloudWatchLogsWriter.class.getSimpleName(), getErrorMessage(e));
             }
-            catch (CloudWatchException e)
+
+            // rejected
+            logEntries.subList(start, logEntries.size()).forEach(PendingLogEntry::release);
+
+            return logEntries.size();
+        }
+
+        /**
+         * put log events, if log group or stream does not exist, they are created (optimistic startup, routed or
+         * rolled log stream) and log events are put again
+         */
+        private PutLogEventsResponse putLogEvents(PutLogEventsRequest putLogEventsRequest)
+        {
+            PutLogEventsResponse response;
+            try
             {
-                System.err.println(e.awsErrorDetails().errorMessage());
+                response = logsClient.putLogEvents(putLogEventsRequest);
             }
-        });
+            catch (ResourceNotFoundException e)
+            {
+                if (!optimisticStartup && router == null && rollingStreamName == null)
+                {
+                    throw e;
+                }
+
+                createLogStream(putLogEventsRequest.logStreamName());
+                response = logsClient.putLogEvents(putLogEventsRequest.toBuilder().sequenceToken(null).build());
+            }
+
+            KNOWN_DESTINATIONS.add(getKey(putLogEventsRequest.logStreamName()));
+
+            return response;
+        }
+
+        /**
+         * roll over log stream if a policy of {@link #rollingStreamName} is reached, all log events of a log entry
+         * are put to the same log stream<br/>
+         * the next log stream is created in advance when the rollover is near
+         *
+         * @return log stream of log entry
+         */
+        private String rollOver(PendingLogEntry logEntry)
+        {
+            String streamName = rollingStreamName.getStreamName(logEntry.timestamp, logEntry.size, logEntry.eventCount);
+            if (!streamName.equals(currentStreamName))
+            {
+                currentStreamName = streamName;
+                sequenceToken = null;
+            }
+
+            String aheadStreamName = rollingStreamName.getStreamNameAhead();
+            if (aheadStreamName != null && !aheadStreamName.equals(nextStreamName) && !KNOWN_DESTINATIONS.contains(getKey(aheadStreamName))
+                    && !cachedExecutor.isShutdown())
+            {
+                nextStreamName = aheadStreamName;
+                cachedExecutor.execute(() -> {
+                    try
+                    {
+                        createLogStream(aheadStreamName);
+                        KNOWN_DESTINATIONS.add(getKey(aheadStreamName));
+                    }
+                    catch (CloudWatchLogsException e)
+                    {
+                        // created on first PutLogEvents
+                        Util.log(Level.WARN, "%s: log stream '%s' not created in advance: %s", AwsCloudWatchLogsWriter.class.getSimpleName(), aheadStreamName,
+                                 getErrorMessage(e));
+                    }
+                });
+            }
+
+            return streamName;
+        }
+
+        /**
+         * create log stream, and log group if it does not exist<br/>
+         * destinations created concurrently by other processes are accepted
+         */
+        private void createLogStream(String streamName)
+        {
+            try
+            {
+                logsClient.createLogStream(b -> b.logGroupName(logGroupName).logStreamName(streamName));
+            }
+            catch (ResourceAlreadyExistsException e)
+            {
+                // created by other process
+            }
+            catch (ResourceNotFoundException e)
+            {
+                // log group does not exist
+                Util.log(Level.INFO, "%s: create log group '%s'", AwsCloudWatchLogsWriter.class.getSimpleName(), logGroupName);
+                try
+                {
+                    logsClient.createLogGroup(b -> b.logGroupName(logGroupName));
+                }
+                catch (ResourceAlreadyExistsException ignored)
+                {
+                    // created by other process
+                }
+
+                try
+                {
+                    logsClient.createLogStream(b -> b.logGroupName(logGroupName).logStreamName(streamName));
+                }
+                catch (ResourceAlreadyExistsException ignored)
+                {
+                    // created by other process
+                }
+            }
+        }
+    }
+
+    /**
+     * log events of a log entry waiting for sender thread<br/>
+     * with {@link #offHeapArena} only the messages in off-heap memory are kept, not the log entry
+     */
+    private static class PendingLogEntry
+    {
+        /**
+         * log events, <code>null</code> if messages are off-heap
+         */
+        private final List<InputLogEvent> inputLogEvents;
+        /**
+         * log entry for error messages, <code>null</code> if messages are off-heap
+         */
+        private final LogEntry logEntry;
+        private final OffHeapArena arena;
+        private List<OffHeapArena.Slice> slices;
+        /**
+         * timestamp of first log event
+         */
+        private final long timestamp;
+        private final int eventCount;
+        /**
+         * size of log events in a {@link PutLogEventsRequest}
+         */
+        private final long size;
+        /**
+         * number of log events which have been put, e.g. parts of a large log entry before an outage
+         */
+        private int sentEvents;
+        /**
+         * <code>true</code> if log entry has been buffered because of an outage, see {@link WriterMetrics#bufferedEvents}
+         */
+        private boolean buffered;
+
+        PendingLogEntry(List<InputLogEvent> inputLogEvents, LogEntry logEntry)
+        {
+            this.inputLogEvents = inputLogEvents;
+            this.logEntry = logEntry;
+            this.arena = null;
+            this.timestamp = inputLogEvents.get(0).timestamp();
+            this.eventCount = inputLogEvents.size();
+
+            long size = 0;
+            for (InputLogEvent inputLogEvent : inputLogEvents)
+            {
+                size += inputLogEvent.message().getBytes(StandardCharsets.UTF_8).length + BATCH_EVENT_OVERHEAD;
+            }
+            this.size = size;
+        }
+
+        private PendingLogEntry(OffHeapArena arena, List<OffHeapArena.Slice> slices)
+        {
+            this.inputLogEvents = null;
+            this.logEntry = null;
+            this.arena = arena;
+            this.slices = slices;
+            this.timestamp = slices.get(0).timestamp;
+            this.eventCount = slices.size();
+
+            long size = 0;
+            for (OffHeapArena.Slice slice : slices)
+            {
+                size += slice.getLength() + BATCH_EVENT_OVERHEAD;
+            }
+            this.size = size;
+        }
+
+        /**
+         * copy messages of log events to off-heap memory
+         *
+         * @return log entry or <code>null</code> if byte budget of arena is exhausted
+         */
+        static PendingLogEntry offHeap(OffHeapArena arena, List<InputLogEvent> inputLogEvents)
+        {
+            List<OffHeapArena.Slice> slices = new ArrayList<>(inputLogEvents.size());
+            for (InputLogEvent inputLogEvent : inputLogEvents)
+            {
+                OffHeapArena.Slice slice = arena.allocate(inputLogEvent.timestamp(), inputLogEvent.message());
+                if (slice == null)
+                {
+                    slices.forEach(arena::release);
+                    return null;
+                }
+                slices.add(slice);
+            }
+
+            return new PendingLogEntry(arena, slices);
+        }
+
+        /**
+         * @return log events, messages are read from off-heap memory
+         */
+        List<InputLogEvent> getInputLogEvents()
+        {
+            if (inputLogEvents != null)
+            {
+                return inputLogEvents;
+            }
+
+            List<InputLogEvent> events = new ArrayList<>(slices.size());
+            slices.forEach(slice -> events.add(InputLogEvent.builder().message(arena.read(slice)).timestamp(slice.timestamp).build()));
+
+            return events;
+        }
+
+        /**
+         * @return message for error messages
+         */
+        String getMessage()
+        {
+            return logEntry != null ? logEntry.getMessage() : getInputLogEvents().get(0).message();
+        }
+
+        /**
+         * log events have been sent or dropped, off-heap memory is released
+         */
+        void release()
+        {
+            if (slices != null)
+            {
+                slices.forEach(arena::release);
+                slices = null;
+            }
+        }
+    }
+
+    /**
+     * @return error message of AWS, or message of exception if there are no error details
+     */
+    static String getErrorMessage(SdkException e)
+    {
+        if (e instanceof AwsServiceException && ((AwsServiceException) e).awsErrorDetails() != null)
+        {
+            return ((AwsServiceException) e).awsErrorDetails().errorMessage();
+        }
+
+        return e.getMessage();
+    }
+
+    @Override
+    public Collection<LogEntryValue> getRequiredLogEntryValues()
+    {
+        Collection<LogEntryValue> values = super.getRequiredLogEntryValues();
+        if (router != null)
+        {
+            // values of routing placeholders
+            values = EnumSet.noneOf(LogEntryValue.class);
+            values.addAll(super.getRequiredLogEntryValues());
+            values.add(LogEntryValue.TAG);
+            values.add(LogEntryValue.LEVEL);
+            values.add(LogEntryValue.CONTEXT);
+        }
+
+        return values;
     }
 
     protected String renderMessage(LogEntry logEntry)
@@ -345,14 +1280,59 @@ public class AwsCloudWatchLogsWriter extends AbstractFormatPatternWriter
     @Override
     public void flush() throws Exception
     {
+        if (!writingThread || !initDone.get())
+        {
+            return;
+        }
+
+        // send log entries written since last flush
+        getDestinations().forEach(Destination::schedule);
+    }
+
+    /**
+     * @return destination or active destinations of {@link #router}
+     */
+    private List<Destination> getDestinations()
+    {
+        if (router == null)
+        {
+            return Collections.singletonList(destination);
+        }
 
+        synchronized (destinations)
+        {
+            return new ArrayList<>(destinations.values());
+        }
     }
 
     @Override
     public void close() throws Exception
     {
-        singleExecutor.shutdown();
-        cachedExecutor.shutdown();
-        logsClient.close();
+        if (cachedExecutor != null)
+        {
+            // log entries which are still rendered are queued before the last send
+            cachedExecutor.shutdown();
+            cachedExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            // log entries written since last flush of writing thread and log entries buffered for retry
+            getDestinations().forEach(Destination::sendRemaining);
+            singleExecutor.shutdown();
+            if (!singleExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            {
+                Util.log(Level.WARN, "%s: log events not sent within %d seconds", AwsCloudWatchLogsWriter.class.getSimpleName(), CLOSE_TIMEOUT_SECONDS);
+            }
+            probeExecutor.shutdownNow();
+
+            int dropped = getDestinations().stream().mapToInt(Destination::dropPending).sum();
+            if (dropped > 0)
+            {
+                Util.log(Level.WARN, "%s: %d log events dropped on close, AWS CloudWatch not available", AwsCloudWatchLogsWriter.class.getSimpleName(), dropped);
+            }
+        }
+
+        if (logsClient != null)
+        {
+            logsClient.close();
+        }
     }
 }
@@ -0,0 +1,144 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+
+/**
+ * circuit breaker of the sender of a writer<br/>
+ * after {@code failureThreshold} consecutive outage failures (see {@link #isOutage(SdkException)}) the circuit is
+ * {@link #OPEN}, log events are not sent to AWS CloudWatch but buffered or dropped by the writer. After
+ * {@code openMillis} one request is let through as probe ({@link #HALF_OPEN}), the circuit is closed if it succeeds and
+ * opened again if it fails.<br/>
+ * Transitions are counted in {@link WriterMetrics}.
+ */
+class CircuitBreaker
+{
+    static final int CLOSED = 0;
+    static final int OPEN = 1;
+    static final int HALF_OPEN = 2;
+
+    static final String[] STATES = { "closed", "open", "half-open" };
+
+    /**
+     * default number of consecutive failures which open the circuit
+     */
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    /**
+     * default time until a probe is sent
+     */
+    static final long DEFAULT_OPEN_MILLIS = 30 * 1000;
+    /**
+     * minimum delay of retries of buffered log events
+     */
+    static final long MIN_RETRY_MILLIS = 1000;
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final WriterMetrics metrics;
+
+    private int state = CLOSED;
+    private int failures;
+    private long openedAt;
+
+    /**
+     * @param failureThreshold consecutive failures which open the circuit
+     * @param openMillis time until a probe is sent
+     * @param metrics metrics of writer
+     */
+    CircuitBreaker(int failureThreshold, long openMillis, WriterMetrics metrics)
+    {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(0, openMillis);
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return <code>true</code> if a request may be sent, in state {@link #OPEN} the first request after
+     * {@code openMillis} is the probe
+     */
+    synchronized boolean allowRequest()
+    {
+        switch (state)
+        {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() >= openedAt + openMillis)
+                {
+                    transition(HALF_OPEN);
+                    return true;
+                }
+                return false;
+            default:
+                // probe is running
+                return false;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if requests are not sent, log events should be buffered or dropped without calling
+     * the sender
+     */
+    synchronized boolean isOpen()
+    {
+        return state == HALF_OPEN || (state == OPEN && System.currentTimeMillis() < openedAt + openMillis);
+    }
+
+    /**
+     * @return time until the next probe may be sent, at least {@value #MIN_RETRY_MILLIS} ms (e.g. while a probe is
+     * running)
+     */
+    synchronized long getRetryDelayMillis()
+    {
+        long delay = state == OPEN ? openedAt + openMillis - System.currentTimeMillis() : 0;
+
+        return Math.max(MIN_RETRY_MILLIS, delay);
+    }
+
+    synchronized void onSuccess()
+    {
+        failures = 0;
+        if (state != CLOSED)
+        {
+            transition(CLOSED);
+        }
+    }
+
+    synchronized void onFailure()
+    {
+        failures++;
+        if (state == HALF_OPEN || (state == CLOSED && failures >= failureThreshold))
+        {
+            openedAt = System.currentTimeMillis();
+            transition(OPEN);
+        }
+    }
+
+    private void transition(int newState)
+    {
+        // report outage and recovery, probes only on debug level
+        Level level = state == CLOSED && newState == OPEN ? Level.WARN : newState == CLOSED ? Level.INFO : Level.DEBUG;
+        Util.log(level, "%s: circuit breaker %s -> %s", AwsCloudWatchLogsWriter.class.getSimpleName(), STATES[state], STATES[newState]);
+
+        state = newState;
+        metrics.circuitTransition(newState);
+    }
+
+    /**
+     * @return <code>true</code> if AWS CloudWatch is not reachable or not available (network errors, timeouts, server
+     * errors, throttling), <code>false</code> if the request is rejected, e.g. invalid parameters
+     */
+    static boolean isOutage(SdkException e)
+    {
+        if (e instanceof AwsServiceException)
+        {
+            AwsServiceException serviceException = (AwsServiceException) e;
+
+            return serviceException.statusCode() >= 500 || serviceException.isThrottlingException();
+        }
+
+        return e instanceof SdkClientException;
+    }
+}
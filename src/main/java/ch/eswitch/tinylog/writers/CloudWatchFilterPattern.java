@@ -0,0 +1,170 @@
+package ch.eswitch.tinylog.writers;
+
+/**
+ * translates search terms of AWS Log Viewer into AWS CloudWatch filter pattern syntax<br/>
+ * see <a href="https://docs.aws.amazon.com/AmazonCloudWatch/latest/logs/FilterAndPatternSyntax.html" target="_blank">Filter
+ * pattern syntax</a><br/>
+ * <br/>
+ * The filter pattern selects a superset of the matching log events (AWS CloudWatch regular expressions are
+ * case-sensitive and support only a subset of Java regular expressions), therefore the search term must still be
+ * applied to the returned log events ({@link LogEventsQuery#matches}).
+ */
+public class CloudWatchFilterPattern
+{
+    /**
+     * maximum length of filter pattern
+     */
+    static final int MAX_PATTERN_LENGTH = 1024;
+    /**
+     * symbols which are supported as literal characters in AWS CloudWatch regular expressions
+     */
+    private static final String LITERAL_SYMBOLS = "_#=@/;,!`~-";
+    /**
+     * regular expression operators supported by AWS CloudWatch
+     */
+    private static final String OPERATORS = ".*+?|{}()[]^$\\";
+    /**
+     * escaped character classes supported by AWS CloudWatch
+     */
+    private static final String CHARACTER_CLASSES = "dDwWsS";
+
+    private CloudWatchFilterPattern()
+    {
+    }
+
+    /**
+     * @param searchTerm search term
+     * @param regExp <code>true</code> if search term is a Java regular expression
+     * @return filter pattern or <code>null</code> if search term can not be expressed as filter pattern
+     */
+    public static String of(String searchTerm, boolean regExp)
+    {
+        if (searchTerm == null || searchTerm.isEmpty())
+        {
+            return null;
+        }
+
+        String regex = regExp ? translateRegExp(searchTerm) : translateText(searchTerm);
+
+        if (regex == null || regex.length() + 2 > MAX_PATTERN_LENGTH)
+        {
+            return null;
+        }
+
+        return "%" + regex + "%";
+    }
+
+    /**
+     * case-insensitive regular expression for a text, e.g. <code>Error:</code> becomes <code>[eE][rR][rR][oO][rR].</code>
+     */
+    static String translateText(String text)
+    {
+        StringBuilder regex = new StringBuilder(text.length() * 4);
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+
+            if (isAsciiLetter(c))
+            {
+                regex.append('[')
+                     .append(Character.toLowerCase(c))
+                     .append(Character.toUpperCase(c))
+                     .append(']');
+            }
+            else if (isAsciiDigit(c) || LITERAL_SYMBOLS.indexOf(c) >= 0)
+            {
+                regex.append(c);
+            }
+            else if (OPERATORS.indexOf(c) >= 0)
+            {
+                regex.append('\\').append(c);
+            }
+            else if (c == ' ')
+            {
+                regex.append("\\s");
+            }
+            else
+            {
+                // not supported by AWS CloudWatch, match any character
+                regex.append('.');
+            }
+        }
+
+        return regex.toString();
+    }
+
+    /**
+     * check if Java regular expression uses only constructs supported by AWS CloudWatch<br/>
+     * lookarounds, flags, back references, named groups, possessive and reluctant quantifiers are not supported
+     *
+     * @return regular expression or <code>null</code> if not supported
+     */
+    static String translateRegExp(String regExp)
+    {
+        StringBuilder regex = new StringBuilder(regExp.length());
+
+        for (int i = 0; i < regExp.length(); i++)
+        {
+            char c = regExp.charAt(i);
+
+            if (c == '\\')
+            {
+                if (i + 1 >= regExp.length())
+                {
+                    return null;
+                }
+
+                char escaped = regExp.charAt(++i);
+                if (CHARACTER_CLASSES.indexOf(escaped) >= 0 || OPERATORS.indexOf(escaped) >= 0 || LITERAL_SYMBOLS.indexOf(escaped) >= 0)
+                {
+                    regex.append(c).append(escaped);
+                }
+                else
+                {
+                    // \p{..}, \Q..\E, \b, back references etc.
+                    return null;
+                }
+            }
+            else if (c == '(' && i + 1 < regExp.length() && regExp.charAt(i + 1) == '?')
+            {
+                // lookaround, flags, non-capturing or named group
+                return null;
+            }
+            else if ((c == '?' || c == '+') && i > 0 && isQuantifier(regExp.charAt(i - 1)) && !(i > 1 && regExp.charAt(i - 2) == '\\'))
+            {
+                // reluctant or possessive quantifier
+                return null;
+            }
+            else if (isAsciiLetter(c) || isAsciiDigit(c) || LITERAL_SYMBOLS.indexOf(c) >= 0 || OPERATORS.indexOf(c) >= 0)
+            {
+                regex.append(c);
+            }
+            else if (c == ' ')
+            {
+                regex.append("\\s");
+            }
+            else
+            {
+                return null;
+            }
+        }
+
+        return regex.toString();
+    }
+
+    private static boolean isQuantifier(char c)
+    {
+        return c == '*' || c == '+' || c == '?' || c == '}';
+    }
+
+    private static boolean isAsciiLetter(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,178 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.core.LogEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * routing of log entries to log groups and streams by placeholders in {@code logGroupName} and {@code streamName}:
+ * <ul>
+ *     <li><code>{tag}</code>: tag of logger</li>
+ *     <li><code>{level}</code>: severity level, lower case</li>
+ *     <li><code>{context:key}</code>: value of thread context ({@code ThreadContext.put(key, value)})</li>
+ * </ul>
+ * Missing values are replaced by {@value #DEFAULT_VALUE}, characters which are not allowed in log group names are
+ * replaced by <code>_</code>. Other placeholders, e.g. of {@link RollingStreamName}, are kept.
+ */
+class DestinationRouter
+{
+    /**
+     * value of placeholder if log entry has no tag or context value
+     */
+    static final String DEFAULT_VALUE = "default";
+
+    private static final String[] NAMES = { "tag", "level", "context" };
+    /**
+     * characters which are not allowed in log group names
+     */
+    private static final Pattern INVALID_CHARS = Pattern.compile("[^A-Za-z0-9._/#-]");
+
+    private final List<Object> logGroupSegments = new ArrayList<>();
+    private final List<Object> streamSegments = new ArrayList<>();
+
+    /**
+     * @param logGroupName log group name with placeholders
+     * @param streamName stream name with placeholders
+     */
+    DestinationRouter(String logGroupName, String streamName)
+    {
+        parse(logGroupName, logGroupSegments);
+        parse(streamName, streamSegments);
+    }
+
+    /**
+     * @return <code>true</code> if name contains a routing placeholder
+     */
+    static boolean isRouted(String name)
+    {
+        List<Object> segments = new ArrayList<>();
+        parse(name, segments);
+
+        return segments.stream().anyMatch(s -> s instanceof Placeholder);
+    }
+
+    /**
+     * @return log group and stream name of log entry, stream name may contain placeholders of {@link RollingStreamName}
+     */
+    LogGroupAndStreamName resolve(LogEntry logEntry)
+    {
+        return new LogGroupAndStreamName(format(logGroupSegments, logEntry), format(streamSegments, logEntry));
+    }
+
+    private static String format(List<Object> segments, LogEntry logEntry)
+    {
+        StringBuilder name = new StringBuilder();
+        for (Object segment : segments)
+        {
+            if (segment instanceof Placeholder)
+            {
+                String value = ((Placeholder) segment).getValue(logEntry);
+                name.append(value != null && !value.isEmpty() ? INVALID_CHARS.matcher(value).replaceAll("_") : DEFAULT_VALUE);
+            }
+            else
+            {
+                name.append(segment);
+            }
+        }
+
+        return name.toString();
+    }
+
+    private static void parse(String name, List<Object> segments)
+    {
+        if (name == null)
+        {
+            return;
+        }
+
+        int pos = 0;
+        StringBuilder literal = new StringBuilder();
+        while (pos < name.length())
+        {
+            int start = name.indexOf('{', pos);
+            int end = start >= 0 ? name.indexOf('}', start) : -1;
+            if (end < 0)
+            {
+                literal.append(name, pos, name.length());
+                break;
+            }
+
+            Placeholder placeholder = Placeholder.of(name.substring(start + 1, end));
+            if (placeholder != null)
+            {
+                literal.append(name, pos, start);
+                if (literal.length() > 0)
+                {
+                    segments.add(literal.toString());
+                    literal.setLength(0);
+                }
+                segments.add(placeholder);
+            }
+            else
+            {
+                // e.g. placeholder of rolling stream name
+                literal.append(name, pos, end + 1);
+            }
+            pos = end + 1;
+        }
+
+        if (literal.length() > 0)
+        {
+            segments.add(literal.toString());
+        }
+    }
+
+    /**
+     * @return <code>true</code> if placeholder (without braces) is a routing placeholder
+     */
+    static boolean isRoutingPlaceholder(String placeholder)
+    {
+        return Placeholder.of(placeholder) != null;
+    }
+
+    private static class Placeholder
+    {
+        private final String name;
+        private final String key;
+
+        private Placeholder(String name, String key)
+        {
+            this.name = name;
+            this.key = key;
+        }
+
+        /**
+         * @return placeholder or <code>null</code> if it is not a routing placeholder
+         */
+        static Placeholder of(String placeholder)
+        {
+            String[] nameAndKey = placeholder.split(":", 2);
+            String name = nameAndKey[0].trim();
+            for (String n : NAMES)
+            {
+                if (n.equals(name))
+                {
+                    return new Placeholder(name, nameAndKey.length > 1 ? nameAndKey[1].trim() : null);
+                }
+            }
+
+            return null;
+        }
+
+        String getValue(LogEntry logEntry)
+        {
+            switch (name)
+            {
+                case "tag":
+                    return logEntry.getTag();
+                case "level":
+                    return logEntry.getLevel() != null ? logEntry.getLevel().name().toLowerCase(Locale.ROOT) : null;
+                default:
+                    return key != null && logEntry.getContext() != null ? logEntry.getContext().get(key) : null;
+            }
+        }
+    }
+}
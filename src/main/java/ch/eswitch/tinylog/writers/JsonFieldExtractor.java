@@ -0,0 +1,332 @@
+package ch.eswitch.tinylog.writers;
+
+import java.util.Arrays;
+
+/**
+ * lightweight streaming extractor for string attributes of a JSON object<br/>
+ * the JSON object is scanned once without building a tree, only the position of the raw (still escaped) value of
+ * top-level string attributes is returned. Values of other attributes, nested objects and arrays are skipped.
+ */
+class JsonFieldExtractor
+{
+    private final String json;
+    private int pos;
+
+    private JsonFieldExtractor(String json)
+    {
+        this.json = json;
+    }
+
+    /**
+     * find raw values of top-level string attributes
+     *
+     * @param json JSON object
+     * @param names attribute names
+     * @return for each attribute name start (inclusive) and end (exclusive) position of the escaped value between
+     * the quotes at index <code>2 * i</code> and <code>2 * i + 1</code>, -1 if attribute is missing or not a string;
+     * <code>null</code> if json is not a JSON object
+     */
+    static int[] findStringValues(String json, String... names)
+    {
+        int[] positions = new int[names.length * 2];
+        Arrays.fill(positions, -1);
+
+        return new JsonFieldExtractor(json).scanObject(names, positions, null) ? positions : null;
+    }
+
+    /**
+     * pass all top-level string attributes to consumer
+     *
+     * @param json JSON object
+     * @return <code>false</code> if json is not a JSON object
+     */
+    static boolean forEachStringValue(String json, StringValueConsumer consumer)
+    {
+        return new JsonFieldExtractor(json).scanObject(new String[0], null, consumer);
+    }
+
+    /**
+     * consumer of a string attribute
+     */
+    interface StringValueConsumer
+    {
+        /**
+         * @param name attribute name
+         * @param start start (inclusive) of escaped value
+         * @param end end (exclusive) of escaped value
+         */
+        void accept(String name, int start, int end);
+    }
+
+    /**
+     * @return decoded value of JSON string between start and end (escaped value without quotes)
+     */
+    static String unescape(String json, int start, int end)
+    {
+        if (!hasEscape(json, start, end))
+        {
+            return json.substring(start, end);
+        }
+
+        StringBuilder value = new StringBuilder(end - start);
+        for (int i = start; i < end; i++)
+        {
+            char c = json.charAt(i);
+            if (c != '\\' || i + 1 >= end)
+            {
+                value.append(c);
+                continue;
+            }
+
+            char escaped = json.charAt(++i);
+            switch (escaped)
+            {
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    int codePoint = i + 4 < end ? parseHex(json, i + 1, i + 5) : -1;
+                    if (codePoint >= 0)
+                    {
+                        value.append((char) codePoint);
+                        i += 4;
+                    }
+                    else
+                    {
+                        // malformed escape is copied literally
+                        value.append('\\').append(escaped);
+                    }
+                    break;
+                default:
+                    value.append(escaped);
+            }
+        }
+
+        return value.toString();
+    }
+
+    /**
+     * @return value of hexadecimal digits between start and end or -1 if not a hexadecimal number
+     */
+    private static int parseHex(String json, int start, int end)
+    {
+        int value = 0;
+        for (int i = start; i < end; i++)
+        {
+            int digit = Character.digit(json.charAt(i), 16);
+            if (digit < 0)
+            {
+                return -1;
+            }
+            value = value * 16 + digit;
+        }
+
+        return value;
+    }
+
+    private static boolean hasEscape(String json, int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            if (json.charAt(i) == '\\')
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean scanObject(String[] names, int[] positions, StringValueConsumer consumer)
+    {
+        skipWhitespace();
+        if (!consume('{'))
+        {
+            return false;
+        }
+
+        skipWhitespace();
+        if (consume('}'))
+        {
+            return true;
+        }
+
+        while (true)
+        {
+            skipWhitespace();
+            int keyStart = pos + 1;
+            if (!skipString())
+            {
+                return false;
+            }
+            int keyEnd = pos - 1;
+
+            skipWhitespace();
+            if (!consume(':'))
+            {
+                return false;
+            }
+            skipWhitespace();
+
+            int index = indexOf(names, keyStart, keyEnd);
+            if (consumer != null && pos < json.length() && json.charAt(pos) == '"')
+            {
+                int valueStart = pos + 1;
+                if (!skipString())
+                {
+                    return false;
+                }
+                consumer.accept(unescape(json, keyStart, keyEnd), valueStart, pos - 1);
+            }
+            else if (index >= 0 && pos < json.length() && json.charAt(pos) == '"')
+            {
+                positions[2 * index] = pos + 1;
+                if (!skipString())
+                {
+                    return false;
+                }
+                positions[2 * index + 1] = pos - 1;
+            }
+            else if (!skipValue())
+            {
+                return false;
+            }
+
+            skipWhitespace();
+            if (consume('}'))
+            {
+                return true;
+            }
+            if (!consume(','))
+            {
+                return false;
+            }
+        }
+    }
+
+    private int indexOf(String[] names, int keyStart, int keyEnd)
+    {
+        String key = hasEscape(json, keyStart, keyEnd) ? unescape(json, keyStart, keyEnd) : null;
+        for (int i = 0; i < names.length; i++)
+        {
+            if (key != null ? names[i].equals(key) : names[i].length() == keyEnd - keyStart && json.startsWith(names[i], keyStart))
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * skip string including quotes
+     */
+    private boolean skipString()
+    {
+        if (!consume('"'))
+        {
+            return false;
+        }
+
+        while (pos < json.length())
+        {
+            char c = json.charAt(pos++);
+            if (c == '\\')
+            {
+                pos++;
+            }
+            else if (c == '"')
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * skip any JSON value, nested objects and arrays are skipped by counting brackets
+     */
+    private boolean skipValue()
+    {
+        if (pos >= json.length())
+        {
+            return false;
+        }
+
+        char c = json.charAt(pos);
+        if (c == '"')
+        {
+            return skipString();
+        }
+
+        if (c == '{' || c == '[')
+        {
+            int depth = 0;
+            while (pos < json.length())
+            {
+                c = json.charAt(pos);
+                if (c == '"')
+                {
+                    if (!skipString())
+                    {
+                        return false;
+                    }
+                    continue;
+                }
+
+                pos++;
+                if (c == '{' || c == '[')
+                {
+                    depth++;
+                }
+                else if ((c == '}' || c == ']') && --depth == 0)
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        // number, true, false, null
+        int start = pos;
+        while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0)
+        {
+            pos++;
+        }
+
+        return pos > start;
+    }
+
+    private void skipWhitespace()
+    {
+        while (pos < json.length() && " \t\r\n".indexOf(json.charAt(pos)) >= 0)
+        {
+            pos++;
+        }
+    }
+
+    private boolean consume(char c)
+    {
+        if (pos < json.length() && json.charAt(pos) == c)
+        {
+            pos++;
+            return true;
+        }
+
+        return false;
+    }
+}
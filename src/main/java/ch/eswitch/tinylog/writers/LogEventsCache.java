@@ -0,0 +1,440 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * cache of combined log events of AWS Log Viewer<br/>
+ * log events are cached per log group, log stream and time bucket ({@value #BUCKET_MILLIS} ms). Buckets are evicted
+ * in LRU order as soon as the estimated size of all buckets exceeds the memory budget.<br/>
+ * <br/>
+ * Buckets which may still get log events (end time less than {@value #LATE_ARRIVAL_MILLIS} ms ago) are refreshed
+ * incrementally: only log events from the newest cached timestamp on are read again. Concurrent requests for the same
+ * bucket are collapsed into one read.<br/>
+ * <br/>
+ * Partial messages of a split log event have the same timestamp, therefore a split log event is never spread over two
+ * buckets.<br/>
+ * <br/>
+ * Runs of buckets without log events are found with one backward read and cached as empty buckets, see
+ * {@link #skipEmpty}.<br/>
+ * <br/>
+ * Searched buckets get an inverted token index ({@link LogEventsIndex}), which is part of the memory budget and
+ * evicted with its bucket. The index of a refreshed bucket is extended with the new log events only.
+ */
+class LogEventsCache
+{
+    /**
+     * time range of a bucket
+     */
+    static final long BUCKET_MILLIS = 5 * 60 * 1000;
+    /**
+     * log events may arrive in AWS CloudWatch this time after their timestamp, buckets are refreshed until then
+     */
+    static final long LATE_ARRIVAL_MILLIS = 5 * 60 * 1000;
+    /**
+     * open buckets are not refreshed again within this time
+     */
+    static final long MIN_REFRESH_MILLIS = 2 * 1000;
+    /**
+     * default memory budget
+     */
+    static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    /**
+     * maximum number of empty buckets cached by one backward read (one week), see {@link #skipEmpty}
+     */
+    static final int MAX_EMPTY_BUCKETS = 7 * 24 * 12;
+    /**
+     * estimated memory per log event besides message
+     */
+    private static final int EVENT_OVERHEAD_BYTES = 64;
+
+    private final Map<String, Bucket> buckets = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<Bucket>> loading = new ConcurrentHashMap<>();
+    private volatile long maxBytes;
+    private long bytes;
+
+    LogEventsCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param maxBytes memory budget, 0 disables cache
+     */
+    void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = Math.max(0, maxBytes);
+
+        synchronized (this)
+        {
+            evict();
+        }
+    }
+
+    boolean isEnabled()
+    {
+        return maxBytes > 0;
+    }
+
+    /**
+     * @param time time in milliseconds
+     * @return start time of bucket containing time
+     */
+    static long getBucketStart(long time)
+    {
+        return Math.floorDiv(time, BUCKET_MILLIS) * BUCKET_MILLIS;
+    }
+
+    /**
+     * @return <code>true</code> if all buckets of time range are cached (possibly not refreshed)
+     */
+    synchronized boolean containsAll(LogGroupAndStreamName logGroupAndStreamName, long startTime, long endTime)
+    {
+        for (long bucketStart = getBucketStart(startTime); bucketStart < endTime; bucketStart += BUCKET_MILLIS)
+        {
+            if (!buckets.containsKey(getKey(logGroupAndStreamName, bucketStart)))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * get bucket with combined log events, read from AWS CloudWatch if not cached or bucket is open
+     *
+     * @param bucketStart start time of bucket, see {@link #getBucketStart(long)}
+     * @return bucket, log events oldest first
+     */
+    Bucket get(CloudWatchLogsClient logsClient, LogGroupAndStreamName logGroupAndStreamName, long bucketStart)
+    {
+        final String key = getKey(logGroupAndStreamName, bucketStart);
+        final long now = System.currentTimeMillis();
+
+        Bucket cached;
+        synchronized (this)
+        {
+            cached = buckets.get(key);
+        }
+
+        if (cached != null && !cached.needsRefresh(now))
+        {
+            return cached;
+        }
+
+        CompletableFuture<Bucket> future = new CompletableFuture<>();
+        CompletableFuture<Bucket> running = loading.putIfAbsent(key, future);
+        if (running != null)
+        {
+            // same bucket is read by another request
+            try
+            {
+                return running.join();
+            }
+            catch (CompletionException e)
+            {
+                if (e.getCause() instanceof RuntimeException)
+                {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        try
+        {
+            Bucket bucket = load(logsClient, logGroupAndStreamName, bucketStart, cached, now);
+            put(key, bucket);
+            future.complete(bucket);
+
+            return bucket;
+        }
+        catch (RuntimeException e)
+        {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * skip buckets without log events, so a quiet log stream is not read bucket by bucket<br/>
+     * if the bucket is not cached, the newest log event before the bucket end is looked up with one backward read,
+     * the buckets after it are cached as empty buckets (at most {@value #MAX_EMPTY_BUCKETS})
+     *
+     * @param minTime start of time range
+     * @param bucketStart start time of bucket, see {@link #getBucketStart(long)}
+     * @return start of the newest bucket from <code>bucketStart</code> back which is cached or has log events, a
+     * bucket before <code>minTime</code> if there are no further log events
+     */
+    long skipEmpty(CloudWatchLogsClient logsClient, LogGroupAndStreamName logGroupAndStreamName, long minTime, long bucketStart)
+    {
+        synchronized (this)
+        {
+            if (buckets.containsKey(getKey(logGroupAndStreamName, bucketStart)))
+            {
+                return bucketStart;
+            }
+        }
+
+        final long minBucketStart = getBucketStart(minTime);
+        final Long newestTimestamp = findNewestTimestamp(logsClient, logGroupAndStreamName, minBucketStart, bucketStart + BUCKET_MILLIS);
+        final long eventBucketStart = newestTimestamp != null ? getBucketStart(newestTimestamp) : minBucketStart - BUCKET_MILLIS;
+        final long now = System.currentTimeMillis();
+
+        final long minEmptyBucketStart = Math.max(eventBucketStart, bucketStart - MAX_EMPTY_BUCKETS * BUCKET_MILLIS);
+        for (long emptyBucketStart = bucketStart; emptyBucketStart > minEmptyBucketStart; emptyBucketStart -= BUCKET_MILLIS)
+        {
+            put(getKey(logGroupAndStreamName, emptyBucketStart), new Bucket(new ArrayList<>(), now, now >= emptyBucketStart + BUCKET_MILLIS + LATE_ARRIVAL_MILLIS));
+        }
+
+        Util.log(Level.DEBUG, "cache buckets %d - %d: empty", eventBucketStart + BUCKET_MILLIS, bucketStart);
+
+        return eventBucketStart;
+    }
+
+    /**
+     * @param startTime start of time range
+     * @param endTime end of time range (exclusive)
+     * @return timestamp of newest log event in time range, <code>null</code> if there are no log events
+     */
+    private static Long findNewestTimestamp(CloudWatchLogsClient logsClient, LogGroupAndStreamName logGroupAndStreamName, long startTime, long endTime)
+    {
+        GetLogEventsRequest.Builder builder = GetLogEventsRequest.builder()
+                .logGroupName(logGroupAndStreamName.logGroupName)
+                .logStreamName(logGroupAndStreamName.streamName)
+                .startFromHead(false)
+                .startTime(startTime)
+                .endTime(endTime)
+                .limit(1);
+
+        String nextToken = null;
+        while (true)
+        {
+            GetLogEventsResponse response = logsClient.getLogEvents(builder.nextToken(nextToken).build());
+
+            if (response.hasEvents() && !response.events().isEmpty())
+            {
+                return response.events().get(response.events().size() - 1).timestamp();
+            }
+
+            // pages may be empty although there are older log events, same token is returned at the start of the log stream
+            String backwardToken = response.nextBackwardToken();
+            if (backwardToken == null || backwardToken.equals(nextToken))
+            {
+                return null;
+            }
+
+            nextToken = backwardToken;
+        }
+    }
+
+    /**
+     * read log events of bucket, only log events from newest cached timestamp on if bucket is cached<br/>
+     * cached log events with the newest timestamp are replaced, they may have got further log events or parts
+     */
+    private static Bucket load(CloudWatchLogsClient logsClient, LogGroupAndStreamName logGroupAndStreamName, long bucketStart, Bucket cached, long now)
+    {
+        final long bucketEnd = bucketStart + BUCKET_MILLIS;
+        final List<OutputLogEvent> events = new ArrayList<>();
+        long startTime = bucketStart;
+
+        if (cached != null && !cached.events.isEmpty())
+        {
+            startTime = cached.events.get(cached.events.size() - 1).timestamp();
+            for (OutputLogEvent event : cached.events)
+            {
+                if (event.timestamp() < startTime)
+                {
+                    events.add(event);
+                }
+            }
+        }
+
+        final int cachedEvents = events.size();
+        OutputLogEventCombiner combiner = new OutputLogEventCombiner(true, events::add);
+
+        GetLogEventsRequest.Builder builder = GetLogEventsRequest.builder()
+                .logGroupName(logGroupAndStreamName.logGroupName)
+                .logStreamName(logGroupAndStreamName.streamName)
+                .startFromHead(true)
+                .startTime(startTime)
+                .endTime(bucketEnd)
+                .limit(LogEventsReader.PAGE_LIMIT);
+
+        String nextToken = null;
+        while (true)
+        {
+            GetLogEventsResponse response = logsClient.getLogEvents(builder.nextToken(nextToken).build());
+
+            if (response.hasEvents())
+            {
+                response.events().forEach(combiner::accept);
+            }
+
+            // same token is returned at the end of the log stream
+            String forwardToken = response.nextForwardToken();
+            if (forwardToken == null || forwardToken.equals(nextToken))
+            {
+                break;
+            }
+
+            nextToken = forwardToken;
+        }
+
+        combiner.flush();
+
+        Util.log(Level.DEBUG, "cache bucket %d: cached log events: %d, read log events: %d", bucketStart, cachedEvents, events.size() - cachedEvents);
+
+        Bucket bucket = new Bucket(events, now, now >= bucketEnd + LATE_ARRIVAL_MILLIS);
+
+        // extend index of searched bucket, cached log events are the first log events of both buckets
+        if (cached != null && cached.index != null && isPrefix(cached.events, events, cachedEvents))
+        {
+            LogEventsIndex index = cached.index.copy(cachedEvents);
+            index.addAll(events, cachedEvents);
+            bucket.setIndex(index);
+        }
+
+        return bucket;
+    }
+
+    private static boolean isPrefix(List<OutputLogEvent> cachedEvents, List<OutputLogEvent> events, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (cachedEvents.get(i) != events.get(i))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * get inverted index of bucket, built on first use
+     *
+     * @param bucketStart start time of bucket
+     * @param bucket bucket returned by {@link #get}
+     * @return index of bucket
+     */
+    LogEventsIndex getIndex(LogGroupAndStreamName logGroupAndStreamName, long bucketStart, Bucket bucket)
+    {
+        synchronized (bucket)
+        {
+            if (bucket.index != null)
+            {
+                return bucket.index;
+            }
+
+            LogEventsIndex index = new LogEventsIndex();
+            index.addAll(bucket.events, 0);
+
+            synchronized (this)
+            {
+                bucket.setIndex(index);
+
+                // bucket may have been evicted or replaced meanwhile
+                if (buckets.get(getKey(logGroupAndStreamName, bucketStart)) == bucket)
+                {
+                    bytes += index.getBytes();
+                    evict();
+                }
+            }
+
+            return index;
+        }
+    }
+
+    private synchronized void put(String key, Bucket bucket)
+    {
+        Bucket old = buckets.put(key, bucket);
+        if (old != null)
+        {
+            bytes -= old.bytes;
+        }
+        bytes += bucket.bytes;
+
+        evict();
+    }
+
+    /**
+     * remove least recently used buckets until memory budget is respected
+     */
+    private void evict()
+    {
+        Iterator<Bucket> it = buckets.values().iterator();
+        while (bytes > maxBytes && it.hasNext())
+        {
+            bytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    private static String getKey(LogGroupAndStreamName logGroupAndStreamName, long bucketStart)
+    {
+        return logGroupAndStreamName.logGroupName + '\n' + logGroupAndStreamName.streamName + '\n' + bucketStart;
+    }
+
+    static class Bucket
+    {
+        /**
+         * combined log events, oldest first
+         */
+        final List<OutputLogEvent> events;
+        private final long fetchedAt;
+        /**
+         * <code>true</code> if no further log events are expected
+         */
+        private final boolean closed;
+        private long bytes;
+        private volatile LogEventsIndex index;
+
+        Bucket(List<OutputLogEvent> events, long fetchedAt, boolean closed)
+        {
+            this.events = Collections.unmodifiableList(events);
+            this.fetchedAt = fetchedAt;
+            this.closed = closed;
+
+            long size = 0;
+            for (OutputLogEvent event : events)
+            {
+                size += EVENT_OVERHEAD_BYTES + 2L * event.message().length();
+            }
+            // empty buckets are part of the memory budget as well
+            this.bytes = Math.max(size, EVENT_OVERHEAD_BYTES);
+        }
+
+        /**
+         * set index, its memory is added to bucket
+         */
+        private void setIndex(LogEventsIndex index)
+        {
+            this.index = index;
+            this.bytes += index.getBytes();
+        }
+
+        boolean needsRefresh(long now)
+        {
+            return !closed && now - fetchedAt >= MIN_REFRESH_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ch.eswitch.tinylog.writers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * continuation cursor for paging through log events of one log stream<br/>
+ * contains the AWS CloudWatch token of the next page and the time range of the first page, so that relative time
+ * ranges do not move while paging
+ */
+public class LogEventsCursor
+{
+    private static final char SEPARATOR = '|';
+
+    /**
+     * start time in milliseconds of first page
+     */
+    public final long startTime;
+    /**
+     * end time in milliseconds of first page, <code>null</code> if open end
+     */
+    public final Long endTime;
+    /**
+     * AWS CloudWatch token of next page, e.g. {@code nextBackwardToken} of
+     * {@link software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsResponse}
+     */
+    public final String token;
+
+    public LogEventsCursor(long startTime, Long endTime, String token)
+    {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.token = token;
+    }
+
+    /**
+     * @return cursor as URL safe string
+     */
+    public String encode()
+    {
+        String value = startTime + String.valueOf(SEPARATOR) + (endTime != null ? endTime : "") + SEPARATOR + token;
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor cursor created by {@link #encode()}
+     * @return decoded cursor or <code>null</code> if cursor is not valid
+     */
+    public static LogEventsCursor decode(String cursor)
+    {
+        if (cursor == null || cursor.isEmpty())
+        {
+            return null;
+        }
+
+        try
+        {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int posEndTime = value.indexOf(SEPARATOR);
+            int posToken = value.indexOf(SEPARATOR, posEndTime + 1);
+
+            if (posEndTime <= 0 || posToken < 0 || posToken + 1 >= value.length())
+            {
+                return null;
+            }
+
+            String endTime = value.substring(posEndTime + 1, posToken);
+
+            return new LogEventsCursor(Long.parseLong(value.substring(0, posEndTime)),
+                                       endTime.isEmpty() ? null : Long.parseLong(endTime),
+                                       value.substring(posToken + 1));
+        }
+        catch (IllegalArgumentException e)
+        {
+            // also NumberFormatException
+            return null;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * export of all log events in time range of selected writers as file<br/>
+ * log events are written while they are read from AWS CloudWatch, with their original timestamp and split log events
+ * merged, so memory usage does not depend on the size of the time range. Compressed formats are compressed while
+ * writing:
+ * <ul>
+ *     <li>{@value #OUTPUT_TYPE_FILE}: text, one line per log event</li>
+ *     <li>{@value #OUTPUT_TYPE_FILE_GZIP}: text, gzip compressed</li>
+ *     <li>{@value #OUTPUT_TYPE_NDJSON_GZIP}: NDJSON like {@link LogEventsNdjsonOutput}, gzip compressed</li>
+ *     <li>{@value #OUTPUT_TYPE_ZIP}: zip with one text file per writer</li>
+ * </ul>
+ */
+class LogEventsExport
+{
+    static final String OUTPUT_TYPE_FILE = "file";
+    static final String OUTPUT_TYPE_FILE_GZIP = "fileGzip";
+    static final String OUTPUT_TYPE_NDJSON_GZIP = "ndjsonGzip";
+    static final String OUTPUT_TYPE_ZIP = "zip";
+
+    private static final List<String> OUTPUT_TYPES = Arrays.asList(OUTPUT_TYPE_FILE, OUTPUT_TYPE_FILE_GZIP, OUTPUT_TYPE_NDJSON_GZIP, OUTPUT_TYPE_ZIP);
+    private static final DateTimeFormatter FILE_NAME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private LogEventsExport()
+    {
+    }
+
+    /**
+     * @return <code>true</code> if request parameter <code>outputType</code> is an export
+     */
+    static boolean isExport(String outputType)
+    {
+        return OUTPUT_TYPES.contains(outputType);
+    }
+
+    /**
+     * write all log events of time range of selected writers
+     *
+     * @param outputType one of the <code>OUTPUT_TYPE_*</code> constants
+     */
+    static void write(HttpServletRequest req, HttpServletResponse resp, List<String> selectedWriters, String outputType) throws IOException
+    {
+        final boolean mergedTimeline = MergedLogEventsTimeline.isMergedTimeline(req);
+        final boolean ndjson = OUTPUT_TYPE_NDJSON_GZIP.equals(outputType);
+        final String fileName = "awslogs-" + FILE_NAME_FORMATTER.format(LocalDateTime.now());
+
+        OutputStream stream = resp.getOutputStream();
+        ZipOutputStream zip = null;
+        switch (outputType)
+        {
+            case OUTPUT_TYPE_FILE_GZIP:
+                setAttachment(resp, "application/gzip", fileName + ".log.gz");
+                stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+                break;
+            case OUTPUT_TYPE_NDJSON_GZIP:
+                setAttachment(resp, "application/gzip", fileName + ".ndjson.gz");
+                stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+                break;
+            case OUTPUT_TYPE_ZIP:
+                setAttachment(resp, "application/zip", fileName + ".zip");
+                zip = new ZipOutputStream(stream, StandardCharsets.UTF_8);
+                stream = zip;
+                break;
+            default:
+                resp.setContentType("text/plain");
+                resp.setCharacterEncoding("UTF-8");
+        }
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE))
+        {
+            if (mergedTimeline)
+            {
+                List<LogEventsQuery> queries = selectedWriters.stream()
+                        .map(w -> LogEventsQuery.of(w, req))
+                        .filter(q -> q != null)
+                        .collect(Collectors.toList());
+                // export contains all log events of time range
+                queries.forEach(q -> q.pageSize = 0);
+
+                putNextEntry(zip, out, MergedLogEventsTimeline.TIMELINE);
+                if (!ndjson)
+                {
+                    writeLine(out, MergedLogEventsTimeline.TIMELINE + " " + selectedWriters);
+                }
+
+                final long[] rows = { 0 };
+                LogEventsResult result = MergedLogEventsTimeline.read(queries, null, (source, e) -> writeLogEvent(out, ndjson, source, e, ++rows[0]));
+                writeResult(out, ndjson, MergedLogEventsTimeline.TIMELINE, result);
+                return;
+            }
+
+            for (String writerName : selectedWriters)
+            {
+                final String source = writerName.substring(writerName.indexOf('_') + 1);
+                putNextEntry(zip, out, source);
+                if (!ndjson)
+                {
+                    writeLine(out, writerName);
+                }
+
+                LogEventsQuery query = LogEventsQuery.of(writerName, req);
+                if (query == null)
+                {
+                    writeResult(out, ndjson, writerName, null);
+                    continue;
+                }
+
+                // export contains all log events of time range
+                query.pageSize = 0;
+                query.cursor = null;
+
+                final long[] rows = { 0 };
+                LogEventsResult result = LogEventsReader.read(query, e -> writeLogEvent(out, ndjson, ndjson ? source : null, e, ++rows[0]));
+                writeResult(out, ndjson, writerName, result);
+            }
+        }
+        catch (UncheckedIOException e)
+        {
+            Util.log(Level.DEBUG, "export: client disconnected: %s", e.getCause());
+        }
+    }
+
+    private static void setAttachment(HttpServletResponse resp, String contentType, String fileName)
+    {
+        resp.setContentType(contentType);
+        resp.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+    }
+
+    /**
+     * start new zip entry for log events of a writer, if output is a zip
+     */
+    private static void putNextEntry(ZipOutputStream zip, Writer out, String name) throws IOException
+    {
+        if (zip != null)
+        {
+            out.flush();
+            zip.putNextEntry(new ZipEntry(name + ".log"));
+        }
+    }
+
+    /**
+     * @param source writer name, <code>null</code> if not written in text (writer name in line before log events)
+     */
+    private static void writeLogEvent(Writer out, boolean ndjson, String source, OutputLogEvent event, long row)
+    {
+        try
+        {
+            if (ndjson)
+            {
+                writeLine(out, LogEventsNdjsonOutput.toJson(source, event).toString());
+            }
+            else
+            {
+                out.write(Util.getFormattedTimestamp(event.timestamp()));
+                if (source != null)
+                {
+                    out.write(" [");
+                    out.write(source);
+                    out.write(']');
+                }
+                out.write(' ');
+                writeLine(out, event.message());
+            }
+
+            if (row % AwsCloudWatchLogsViewerServlet.FLUSH_ROWS == 0)
+            {
+                out.flush();
+            }
+        }
+        catch (IOException e)
+        {
+            // stop reading log events
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeResult(Writer out, boolean ndjson, String writerName, LogEventsResult result) throws IOException
+    {
+        if (ndjson)
+        {
+            writeLine(out, LogEventsNdjsonOutput.toJson(writerName, result).toString());
+        }
+        else
+        {
+            writeLine(out, String.format("%s (%d log events found%s)", writerName, result != null ? result.count : 0,
+                                         result != null && result.budgetExceeded ? ", " + QueryBudget.PARTIAL_RESULTS : ""));
+        }
+        out.flush();
+    }
+
+    private static void writeLine(Writer out, String line) throws IOException
+    {
+        out.write(line);
+        out.write('\n');
+    }
+}
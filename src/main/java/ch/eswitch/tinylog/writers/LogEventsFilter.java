@@ -0,0 +1,611 @@
+package ch.eswitch.tinylog.writers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * query language of AWS Log Viewer for JSON log events<br/>
+ * <ul>
+ *     <li><code>field:value</code> attribute has value (case-sensitive), <code>*</code> is a wildcard, e.g.
+ *     <code>source:*Dao*</code></li>
+ *     <li><code>field~regex</code> attribute contains regular expression, e.g. <code>message~"time(d )?out"</code></li>
+ *     <li><code>text</code> log event contains text (case-insensitive)</li>
+ *     <li><code>AND</code>, <code>OR</code>, <code>NOT</code> and parentheses, terms without operator are combined
+ *     with <code>AND</code></li>
+ * </ul>
+ * Values with spaces or parentheses are quoted (<code>"..."</code>, <code>\"</code> for a quote). Fields are top-level
+ * string attributes of the JSON object, the message of a log event which is not JSON is field
+ * {@value #FIELD_MESSAGE}.<br/>
+ * <br/>
+ * The query is compiled once, fields are extracted per log event in one scan only when a field predicate is
+ * evaluated and only fields used by the query are decoded.
+ */
+class LogEventsFilter
+{
+    /**
+     * field with message of log events which are not JSON
+     */
+    static final String FIELD_MESSAGE = "message";
+
+    private final Node root;
+    /**
+     * fields used by query, index is {@link FieldPredicate#fieldIndex}
+     */
+    private final String[] fieldNames;
+
+    private LogEventsFilter(Node root, String[] fieldNames)
+    {
+        this.root = root;
+        this.fieldNames = fieldNames;
+    }
+
+    /**
+     * @param query query
+     * @return compiled query or <code>null</code> if query is empty
+     * @throws IllegalArgumentException if query is invalid
+     */
+    static LogEventsFilter compile(String query)
+    {
+        Parser parser = new Parser(query);
+        Node root = parser.parse();
+
+        return root != null ? new LogEventsFilter(root, parser.fieldNames.toArray(new String[0])) : null;
+    }
+
+    /**
+     * @param message combined log event message
+     * @return <code>true</code> if log event matches query
+     */
+    boolean matches(String message)
+    {
+        return matches(message, QueryBudget.UNLIMITED);
+    }
+
+    /**
+     * @param message combined log event message
+     * @param budget bounds evaluation of regular expressions
+     * @return <code>true</code> if log event matches query
+     */
+    boolean matches(String message, QueryBudget budget)
+    {
+        return root.matches(new Fields(message, budget));
+    }
+
+    /**
+     * @return ascending positions of log events which may match query or <code>null</code> if index can not restrict
+     * log events
+     */
+    int[] findCandidates(LogEventsIndex index)
+    {
+        return root.findCandidates(index);
+    }
+
+    /**
+     * @return AWS CloudWatch JSON filter pattern which selects a superset of the matching log events or
+     * <code>null</code> if query can not be expressed as filter pattern
+     */
+    String getFilterPattern()
+    {
+        String pattern = root.toFilterPattern();
+
+        return pattern != null && pattern.length() + 4 <= CloudWatchFilterPattern.MAX_PATTERN_LENGTH ? "{ " + pattern + " }" : null;
+    }
+
+    /**
+     * field values of one log event, extracted on first access
+     */
+    private class Fields
+    {
+        private final String message;
+        private final QueryBudget budget;
+        private int[] positions;
+        private String[] values;
+        private String upperCaseMessage;
+
+        Fields(String message, QueryBudget budget)
+        {
+            this.message = message;
+            this.budget = budget;
+        }
+
+        /**
+         * @return value of field or <code>null</code> if log event has no such string attribute
+         */
+        String get(int fieldIndex)
+        {
+            if (values == null)
+            {
+                values = new String[fieldNames.length];
+                positions = JsonFieldExtractor.findStringValues(message, fieldNames);
+            }
+
+            if (positions == null)
+            {
+                // not JSON
+                return FIELD_MESSAGE.equals(fieldNames[fieldIndex]) ? message : null;
+            }
+
+            if (values[fieldIndex] == null && positions[2 * fieldIndex] >= 0)
+            {
+                values[fieldIndex] = JsonFieldExtractor.unescape(message, positions[2 * fieldIndex], positions[2 * fieldIndex + 1]);
+            }
+
+            return values[fieldIndex];
+        }
+
+        String getUpperCaseMessage()
+        {
+            if (upperCaseMessage == null)
+            {
+                upperCaseMessage = message.toUpperCase();
+            }
+
+            return upperCaseMessage;
+        }
+    }
+
+    private abstract static class Node
+    {
+        abstract boolean matches(LogEventsFilter.Fields fields);
+
+        /**
+         * @return candidates from index (superset of matching log events) or <code>null</code> for all log events
+         */
+        int[] findCandidates(LogEventsIndex index)
+        {
+            return null;
+        }
+
+        /**
+         * @return part of AWS CloudWatch JSON filter pattern or <code>null</code> if not supported
+         */
+        abstract String toFilterPattern();
+    }
+
+    private static class And extends Node
+    {
+        private final List<Node> nodes;
+
+        And(List<Node> nodes)
+        {
+            this.nodes = nodes;
+        }
+
+        @Override
+        boolean matches(LogEventsFilter.Fields fields)
+        {
+            for (Node node : nodes)
+            {
+                if (!node.matches(fields))
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        int[] findCandidates(LogEventsIndex index)
+        {
+            int[] candidates = null;
+            for (Node node : nodes)
+            {
+                int[] nodeCandidates = node.findCandidates(index);
+                if (nodeCandidates != null)
+                {
+                    candidates = candidates == null ? nodeCandidates : LogEventsIndex.intersect(candidates, nodeCandidates);
+                }
+            }
+
+            return candidates;
+        }
+
+        @Override
+        String toFilterPattern()
+        {
+            // unsupported terms are left out, result is a superset
+            StringBuilder pattern = new StringBuilder();
+            for (Node node : nodes)
+            {
+                String nodePattern = node.toFilterPattern();
+                if (nodePattern != null)
+                {
+                    pattern.append(pattern.length() > 0 ? " && " : "").append(nodePattern);
+                }
+            }
+
+            return pattern.length() > 0 ? "(" + pattern + ")" : null;
+        }
+    }
+
+    private static class Or extends Node
+    {
+        private final List<Node> nodes;
+
+        Or(List<Node> nodes)
+        {
+            this.nodes = nodes;
+        }
+
+        @Override
+        boolean matches(LogEventsFilter.Fields fields)
+        {
+            for (Node node : nodes)
+            {
+                if (node.matches(fields))
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        int[] findCandidates(LogEventsIndex index)
+        {
+            int[] candidates = new int[0];
+            for (Node node : nodes)
+            {
+                int[] nodeCandidates = node.findCandidates(index);
+                if (nodeCandidates == null)
+                {
+                    return null;
+                }
+                candidates = LogEventsIndex.union(candidates, nodeCandidates);
+            }
+
+            return candidates;
+        }
+
+        @Override
+        String toFilterPattern()
+        {
+            StringBuilder pattern = new StringBuilder();
+            for (Node node : nodes)
+            {
+                String nodePattern = node.toFilterPattern();
+                if (nodePattern == null)
+                {
+                    return null;
+                }
+                pattern.append(pattern.length() > 0 ? " || " : "").append(nodePattern);
+            }
+
+            return "(" + pattern + ")";
+        }
+    }
+
+    private static class Not extends Node
+    {
+        private final Node node;
+
+        Not(Node node)
+        {
+            this.node = node;
+        }
+
+        @Override
+        boolean matches(LogEventsFilter.Fields fields)
+        {
+            return !node.matches(fields);
+        }
+
+        @Override
+        String toFilterPattern()
+        {
+            return null;
+        }
+    }
+
+    /**
+     * case-insensitive text search in whole log event
+     */
+    private static class Text extends Node
+    {
+        private final String upperCaseText;
+
+        Text(String text)
+        {
+            this.upperCaseText = text.toUpperCase();
+        }
+
+        @Override
+        boolean matches(LogEventsFilter.Fields fields)
+        {
+            return fields.getUpperCaseMessage().contains(upperCaseText);
+        }
+
+        @Override
+        int[] findCandidates(LogEventsIndex index)
+        {
+            return index.findText(upperCaseText);
+        }
+
+        @Override
+        String toFilterPattern()
+        {
+            return null;
+        }
+    }
+
+    private static class FieldPredicate extends Node
+    {
+        private final String fieldName;
+        private final int fieldIndex;
+        private final String value;
+        /**
+         * regular expression or wildcard pattern, <code>null</code> if value is compared
+         */
+        private final Pattern pattern;
+        private final boolean regExp;
+
+        FieldPredicate(String fieldName, int fieldIndex, String value, boolean regExp)
+        {
+            this.fieldName = fieldName;
+            this.fieldIndex = fieldIndex;
+            this.value = value;
+            this.regExp = regExp;
+
+            if (regExp)
+            {
+                pattern = Pattern.compile(value);
+            }
+            else if (value.indexOf('*') >= 0)
+            {
+                String[] parts = value.split("\\*", -1);
+                StringBuilder regex = new StringBuilder();
+                for (int i = 0; i < parts.length; i++)
+                {
+                    regex.append(i > 0 ? ".*" : "").append(parts[i].isEmpty() ? "" : Pattern.quote(parts[i]));
+                }
+                pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+            }
+            else
+            {
+                pattern = null;
+            }
+        }
+
+        @Override
+        boolean matches(LogEventsFilter.Fields fields)
+        {
+            String fieldValue = fields.get(fieldIndex);
+            if (fieldValue == null)
+            {
+                return false;
+            }
+
+            if (regExp)
+            {
+                return fields.budget.find(pattern, fieldValue);
+            }
+
+            return pattern != null ? fields.budget.matches(pattern, fieldValue) : value.equals(fieldValue);
+        }
+
+        @Override
+        int[] findCandidates(LogEventsIndex index)
+        {
+            return regExp ? null : index.findField(fieldName, value);
+        }
+
+        @Override
+        String toFilterPattern()
+        {
+            // message of split log events is spread over several log events
+            if (regExp || FIELD_MESSAGE.equals(fieldName) || value.indexOf('"') >= 0 || value.indexOf('\\') >= 0 || !fieldName.matches("[A-Za-z0-9_]+"))
+            {
+                return null;
+            }
+
+            return "$." + fieldName + " = \"" + value + "\"";
+        }
+    }
+
+    /**
+     * recursive descent parser<br/>
+     * <pre>
+     * or      = and ("OR" and)*
+     * and     = not (["AND"] not)*
+     * not     = "NOT" not | primary
+     * primary = "(" or ")" | field (":" | "~") value | value
+     * </pre>
+     */
+    private static class Parser
+    {
+        private final String query;
+        private final List<String> fieldNames = new ArrayList<>();
+        private int pos;
+
+        Parser(String query)
+        {
+            this.query = query != null ? query : "";
+        }
+
+        Node parse()
+        {
+            skipWhitespace();
+            if (pos >= query.length())
+            {
+                return null;
+            }
+
+            Node node = parseOr();
+            skipWhitespace();
+            if (pos < query.length())
+            {
+                throw error("unexpected '" + query.charAt(pos) + "'");
+            }
+
+            return node;
+        }
+
+        private Node parseOr()
+        {
+            List<Node> nodes = new ArrayList<>();
+            nodes.add(parseAnd());
+            while (consumeKeyword("OR"))
+            {
+                nodes.add(parseAnd());
+            }
+
+            return nodes.size() == 1 ? nodes.get(0) : new Or(nodes);
+        }
+
+        private Node parseAnd()
+        {
+            List<Node> nodes = new ArrayList<>();
+            nodes.add(parseNot());
+            while (true)
+            {
+                skipWhitespace();
+                if (pos >= query.length() || query.charAt(pos) == ')' || isKeyword("OR"))
+                {
+                    break;
+                }
+                consumeKeyword("AND");
+                nodes.add(parseNot());
+            }
+
+            return nodes.size() == 1 ? nodes.get(0) : new And(nodes);
+        }
+
+        private Node parseNot()
+        {
+            if (consumeKeyword("NOT"))
+            {
+                return new Not(parseNot());
+            }
+
+            return parsePrimary();
+        }
+
+        private Node parsePrimary()
+        {
+            skipWhitespace();
+            if (pos >= query.length())
+            {
+                throw error("term expected");
+            }
+
+            if (query.charAt(pos) == '(')
+            {
+                pos++;
+                Node node = parseOr();
+                skipWhitespace();
+                if (pos >= query.length() || query.charAt(pos) != ')')
+                {
+                    throw error("')' expected");
+                }
+                pos++;
+
+                return node;
+            }
+
+            if (query.charAt(pos) == '"')
+            {
+                return new Text(parseValue());
+            }
+
+            int start = pos;
+            while (pos < query.length() && Character.isJavaIdentifierPart(query.charAt(pos)))
+            {
+                pos++;
+            }
+
+            if (pos > start && pos < query.length() && (query.charAt(pos) == ':' || query.charAt(pos) == '~'))
+            {
+                String fieldName = query.substring(start, pos);
+                boolean regExp = query.charAt(pos++) == '~';
+
+                int fieldIndex = fieldNames.indexOf(fieldName);
+                if (fieldIndex < 0)
+                {
+                    fieldIndex = fieldNames.size();
+                    fieldNames.add(fieldName);
+                }
+
+                return new FieldPredicate(fieldName, fieldIndex, parseValue(), regExp);
+            }
+
+            pos = start;
+            return new Text(parseValue());
+        }
+
+        /**
+         * @return quoted value or word until whitespace or parenthesis
+         */
+        private String parseValue()
+        {
+            StringBuilder value = new StringBuilder();
+            if (pos < query.length() && query.charAt(pos) == '"')
+            {
+                pos++;
+                while (pos < query.length() && query.charAt(pos) != '"')
+                {
+                    char c = query.charAt(pos++);
+                    if (c == '\\' && pos < query.length())
+                    {
+                        c = query.charAt(pos++);
+                    }
+                    value.append(c);
+                }
+
+                if (pos >= query.length())
+                {
+                    throw error("'\"' expected");
+                }
+                pos++;
+            }
+            else
+            {
+                while (pos < query.length() && !Character.isWhitespace(query.charAt(pos)) && query.charAt(pos) != '(' && query.charAt(pos) != ')')
+                {
+                    value.append(query.charAt(pos++));
+                }
+
+                if (value.length() == 0)
+                {
+                    throw error("value expected");
+                }
+            }
+
+            return value.toString();
+        }
+
+        private boolean isKeyword(String keyword)
+        {
+            int end = pos + keyword.length();
+
+            return query.startsWith(keyword, pos) && (end >= query.length() || Character.isWhitespace(query.charAt(end)) || query.charAt(end) == '(');
+        }
+
+        private boolean consumeKeyword(String keyword)
+        {
+            skipWhitespace();
+            if (isKeyword(keyword))
+            {
+                pos += keyword.length();
+                return true;
+            }
+
+            return false;
+        }
+
+        private void skipWhitespace()
+        {
+            while (pos < query.length() && Character.isWhitespace(query.charAt(pos)))
+            {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message)
+        {
+            return new IllegalArgumentException("invalid query at position " + pos + ": " + message);
+        }
+    }
+}
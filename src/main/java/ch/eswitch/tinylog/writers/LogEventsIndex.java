@@ -0,0 +1,437 @@
+package ch.eswitch.tinylog.writers;
+
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * inverted token index of the combined log events of a {@link LogEventsCache} bucket<br/>
+ * tokens are runs of letters and digits of the upper case text, posting lists contain the ascending positions of the
+ * log events in the bucket. The whole message is indexed as field {@value #FIELD_ALL}, top-level string attributes of
+ * JSON log events with their name (the message of a log event which is not JSON as
+ * {@value LogEventsFilter#FIELD_MESSAGE}).<br/>
+ * <br/>
+ * The index only selects candidates: a log event whose text contains a search text has each inner token of the search
+ * text, a token ending with the first and a token starting with the last token of the search text. Tokens are sorted,
+ * so prefixes are looked up by range, suffixes and inner parts by the trigrams of the tokens. The candidates are
+ * checked with {@link LogEventsQuery#matches} afterwards.
+ */
+class LogEventsIndex
+{
+    /**
+     * field of tokens of whole message
+     */
+    static final String FIELD_ALL = "";
+    /**
+     * estimated memory per token besides characters
+     */
+    private static final int TOKEN_OVERHEAD_BYTES = 80;
+    /**
+     * estimated memory per trigram of a token
+     */
+    private static final int TRIGRAM_BYTES = 8;
+    /**
+     * estimated memory per distinct trigram of a field
+     */
+    private static final int TRIGRAM_OVERHEAD_BYTES = 80;
+    private static final int TRIGRAM_LENGTH = 3;
+
+    /**
+     * tokens per field
+     */
+    private final Map<String, Tokens> fields = new HashMap<>();
+    /**
+     * number of indexed log events
+     */
+    private int size;
+    private long bytes;
+
+    /**
+     * @return number of indexed log events
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return estimated memory of index
+     */
+    long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * index log events, must follow the log events already indexed
+     *
+     * @param events log events of bucket
+     * @param from position of first log event to index
+     */
+    void addAll(List<OutputLogEvent> events, int from)
+    {
+        for (int i = from; i < events.size(); i++)
+        {
+            final int id = size++;
+            final String message = events.get(i).message();
+
+            final String upperCaseMessage = message.toUpperCase();
+
+            addTokens(FIELD_ALL, upperCaseMessage, id);
+
+            boolean json = JsonFieldExtractor.forEachStringValue(message, (name, start, end) -> {
+                String value = JsonFieldExtractor.unescape(message, start, end).toUpperCase();
+                addTokens(name, value, id);
+            });
+            if (!json)
+            {
+                addTokens(LogEventsFilter.FIELD_MESSAGE, upperCaseMessage, id);
+            }
+        }
+    }
+
+    /**
+     * @param eventCount number of log events to keep
+     * @return copy of index with first log events only, e.g. log events which are not read again when bucket is
+     * refreshed
+     */
+    LogEventsIndex copy(int eventCount)
+    {
+        LogEventsIndex copy = new LogEventsIndex();
+        copy.size = Math.min(eventCount, size);
+
+        fields.forEach((field, tokens) -> {
+            Tokens copyTokens = new Tokens();
+            tokens.postings.forEach((token, postings) -> {
+                Postings copyPostings = postings.copy(eventCount);
+                if (copyPostings.size > 0)
+                {
+                    copy.bytes += copyTokens.add(token, copyPostings) + 4L * copyPostings.ids.length;
+                }
+            });
+            copy.fields.put(field, copyTokens);
+        });
+
+        return copy;
+    }
+
+    /**
+     * @param upperCaseText upper case search text
+     * @return ascending positions of log events which may contain text or <code>null</code> if text has no token
+     */
+    int[] findText(String upperCaseText)
+    {
+        return find(FIELD_ALL, upperCaseText, true);
+    }
+
+    /**
+     * @param field field name
+     * @param value value, <code>*</code> is a wildcard
+     * @return ascending positions of log events whose field may have value or <code>null</code> if value has no
+     * token
+     */
+    int[] findField(String field, String value)
+    {
+        return find(field, value.toUpperCase(), false);
+    }
+
+    /**
+     * @param contains <code>true</code> if text may be part of the indexed text, <code>false</code> if text is the
+     * whole indexed text, except at wildcards
+     */
+    private int[] find(String field, String upperCaseText, boolean contains)
+    {
+        List<int[]> searchTokens = new ArrayList<>();
+        forEachToken(upperCaseText, (start, end) -> searchTokens.add(new int[] { start, end }));
+        if (searchTokens.isEmpty())
+        {
+            return null;
+        }
+
+        Tokens tokens = fields.get(field);
+        if (tokens == null)
+        {
+            return new int[0];
+        }
+
+        int[] result = null;
+        for (int[] searchToken : searchTokens)
+        {
+            final int start = searchToken[0];
+            final int end = searchToken[1];
+            // first and last token of search text may be part of a longer token
+            boolean openStart = start == 0 ? contains : upperCaseText.charAt(start - 1) == '*';
+            boolean openEnd = end == upperCaseText.length() ? contains : upperCaseText.charAt(end) == '*';
+            int[] ids = tokens.find(upperCaseText.substring(start, end), openStart, openEnd);
+
+            result = result == null ? ids : intersect(result, ids);
+            if (result.length == 0)
+            {
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    private void addTokens(String field, String upperCaseText, int id)
+    {
+        Tokens tokens = fields.computeIfAbsent(field, f -> new Tokens());
+        forEachToken(upperCaseText, (start, end) -> {
+            String token = upperCaseText.substring(start, end);
+            Postings postings = tokens.postings.get(token);
+            if (postings == null)
+            {
+                postings = new Postings();
+                bytes += tokens.add(token, postings);
+            }
+            int capacity = postings.ids.length;
+            postings.add(id);
+            bytes += 4L * (postings.ids.length - capacity);
+        });
+    }
+
+    /**
+     * pass start (inclusive) and end (exclusive) of each token of text to consumer
+     */
+    private static void forEachToken(String text, IntBinaryConsumer consumer)
+    {
+        int tokenStart = -1;
+        for (int i = 0; i <= text.length(); i++)
+        {
+            boolean tokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (tokenChar && tokenStart < 0)
+            {
+                tokenStart = i;
+            }
+            else if (!tokenChar && tokenStart >= 0)
+            {
+                consumer.accept(tokenStart, i);
+                tokenStart = -1;
+            }
+        }
+    }
+
+    /**
+     * @return sorted union of two sorted arrays
+     */
+    static int[] union(int[] a, int[] b)
+    {
+        if (a.length == 0)
+        {
+            return b;
+        }
+        if (b.length == 0)
+        {
+            return a;
+        }
+
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length)
+        {
+            int value = j >= b.length || (i < a.length && a[i] <= b[j]) ? a[i] : b[j];
+            while (i < a.length && a[i] == value)
+            {
+                i++;
+            }
+            while (j < b.length && b[j] == value)
+            {
+                j++;
+            }
+            result[n++] = value;
+        }
+
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * @return sorted intersection of two sorted arrays
+     */
+    static int[] intersect(int[] a, int[] b)
+    {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length)
+        {
+            if (a[i] < b[j])
+            {
+                i++;
+            }
+            else if (a[i] > b[j])
+            {
+                j++;
+            }
+            else
+            {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(result, n);
+    }
+
+    private interface IntBinaryConsumer
+    {
+        void accept(int start, int end);
+    }
+
+    /**
+     * tokens of one field<br/>
+     * posting lists are sorted by token for exact and prefix search, each token is also listed for each of its
+     * trigrams, for suffix and infix search
+     */
+    private static class Tokens
+    {
+        private final TreeMap<String, Postings> postings = new TreeMap<>();
+        private final Map<String, List<String>> trigrams = new HashMap<>();
+
+        /**
+         * @return estimated memory of new token
+         */
+        long add(String token, Postings tokenPostings)
+        {
+            postings.put(token, tokenPostings);
+
+            long bytes = TOKEN_OVERHEAD_BYTES + 2L * token.length();
+            for (int i = 0; i + TRIGRAM_LENGTH <= token.length(); i++)
+            {
+                List<String> trigramTokens = trigrams.get(token.substring(i, i + TRIGRAM_LENGTH));
+                if (trigramTokens == null)
+                {
+                    trigramTokens = new ArrayList<>(2);
+                    trigrams.put(token.substring(i, i + TRIGRAM_LENGTH), trigramTokens);
+                    bytes += TRIGRAM_OVERHEAD_BYTES;
+                }
+                // token contains trigram several times
+                if (trigramTokens.isEmpty() || trigramTokens.get(trigramTokens.size() - 1) != token)
+                {
+                    trigramTokens.add(token);
+                    bytes += TRIGRAM_BYTES;
+                }
+            }
+
+            return bytes;
+        }
+
+        /**
+         * @param searchToken search token
+         * @param openStart <code>true</code> if search token may be the end or an inner part of a token
+         * @param openEnd <code>true</code> if search token may be the start or an inner part of a token
+         * @return ascending positions of log events with a matching token
+         */
+        int[] find(String searchToken, boolean openStart, boolean openEnd)
+        {
+            if (!openStart)
+            {
+                if (!openEnd)
+                {
+                    Postings exact = postings.get(searchToken);
+                    return exact != null ? exact.toArray() : new int[0];
+                }
+
+                // prefix, upper case tokens have no character after Character.MAX_VALUE
+                return union(postings.subMap(searchToken, true, searchToken + Character.MAX_VALUE, false).values());
+            }
+
+            Collection<String> candidates = searchToken.length() >= TRIGRAM_LENGTH ? getTrigramTokens(searchToken) : postings.keySet();
+            List<Postings> matches = new ArrayList<>();
+            for (String token : candidates)
+            {
+                if (openEnd ? token.contains(searchToken) : token.endsWith(searchToken))
+                {
+                    matches.add(postings.get(token));
+                }
+            }
+
+            return union(matches);
+        }
+
+        /**
+         * @return tokens containing the rarest trigram of search token
+         */
+        private List<String> getTrigramTokens(String searchToken)
+        {
+            List<String> rarest = null;
+            for (int i = 0; i + TRIGRAM_LENGTH <= searchToken.length(); i++)
+            {
+                List<String> trigramTokens = trigrams.get(searchToken.substring(i, i + TRIGRAM_LENGTH));
+                if (trigramTokens == null)
+                {
+                    return Collections.emptyList();
+                }
+                if (rarest == null || trigramTokens.size() < rarest.size())
+                {
+                    rarest = trigramTokens;
+                }
+            }
+
+            return rarest;
+        }
+
+        private static int[] union(Collection<Postings> matches)
+        {
+            int[] ids = new int[0];
+            for (Postings match : matches)
+            {
+                ids = LogEventsIndex.union(ids, match.toArray());
+            }
+
+            return ids;
+        }
+    }
+
+    /**
+     * ascending log event positions of a token
+     */
+    private static class Postings
+    {
+        private int[] ids = new int[2];
+        private int size;
+
+        void add(int id)
+        {
+            // token occurs several times in log event
+            if (size > 0 && ids[size - 1] == id)
+            {
+                return;
+            }
+
+            if (size == ids.length)
+            {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        Postings copy(int eventCount)
+        {
+            int n = Arrays.binarySearch(ids, 0, size, eventCount);
+            n = n >= 0 ? n : -n - 1;
+
+            Postings copy = new Postings();
+            copy.ids = Arrays.copyOf(ids, Math.max(n, 2));
+            copy.size = n;
+
+            return copy;
+        }
+
+        int[] toArray()
+        {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package ch.eswitch.tinylog.writers;
+
+import com.google.gson.JsonObject;
+import org.tinylog.Level;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * NDJSON output of AWS Log Viewer (content type {@value #CONTENT_TYPE})<br/>
+ * each line is a JSON object, either a log event (<code>source</code>, <code>timestamp</code>, <code>message</code>)
+ * or the result of a writer (<code>result</code> with <code>writer</code>, <code>count</code> and
+ * <code>nextCursor</code>) after its log events.<br/>
+ * <br/>
+ * Output is compressed with gzip if accepted by client. Responses for time ranges which can not get new log events
+ * have an ETag, so unchanged results are not read and sent again.
+ */
+class LogEventsNdjsonOutput
+{
+    /**
+     * value of request parameter <code>outputType</code>
+     */
+    static final String OUTPUT_TYPE = "ndjson";
+    static final String CONTENT_TYPE = "application/x-ndjson";
+    /**
+     * request parameters which do not change the result
+     */
+    private static final List<String> IGNORED_PARAMETERS = Arrays.asList("submitButton", "idWriter", "action");
+
+    private LogEventsNdjsonOutput()
+    {
+    }
+
+    /**
+     * write log events of selected writers, or only of writer in request parameter
+     * {@value AwsCloudWatchLogsViewerServlet#PARAMETER_FRAGMENT} ("load more")
+     */
+    static void write(HttpServletRequest req, HttpServletResponse resp, List<String> selectedWriters) throws IOException
+    {
+        final boolean mergedTimeline = MergedLogEventsTimeline.isMergedTimeline(req);
+
+        String fragment = req.getParameter(AwsCloudWatchLogsViewerServlet.PARAMETER_FRAGMENT);
+        final List<String> writers = fragment != null && !mergedTimeline && selectedWriters.contains(fragment)
+                ? Collections.singletonList(fragment)
+                : selectedWriters;
+
+        String eTag = isClosedTimeRange(writers, req) ? getETag(req) : null;
+        if (eTag != null)
+        {
+            resp.setHeader("ETag", eTag);
+            if (eTag.equals(req.getHeader("If-None-Match")))
+            {
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+
+        resp.setContentType(CONTENT_TYPE);
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        final boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip)
+        {
+            resp.setHeader("Content-Encoding", "gzip");
+        }
+        resp.addHeader("Vary", "Accept-Encoding");
+
+        OutputStream stream = gzip ? new GZIPOutputStream(resp.getOutputStream(), true) : resp.getOutputStream();
+        try (Writer out = new OutputStreamWriter(stream, StandardCharsets.UTF_8))
+        {
+            final long[] rows = { 0 };
+            if (mergedTimeline)
+            {
+                LogEventsResult result = MergedLogEventsTimeline.read(writers, req, (source, e) -> writeLogEvent(out, source, e, ++rows[0]));
+                writeResult(out, MergedLogEventsTimeline.TIMELINE, result);
+            }
+            else
+            {
+                for (String writerName : writers)
+                {
+                    final String source = writerName.substring(writerName.indexOf('_') + 1);
+                    LogEventsResult result = AwsCloudWatchLogsJsonWriter.processCombinedOutputLogEvents(writerName, req, e -> writeLogEvent(out, source, e, ++rows[0]));
+                    writeResult(out, writerName, result);
+                }
+            }
+        }
+        catch (UncheckedIOException e)
+        {
+            Util.log(Level.DEBUG, "NDJSON output: client disconnected: %s", e.getCause());
+        }
+    }
+
+    private static void writeLogEvent(Writer out, String source, OutputLogEvent event, long row)
+    {
+        try
+        {
+            out.write(toJson(source, event).toString());
+            out.write('\n');
+
+            if (row % AwsCloudWatchLogsViewerServlet.FLUSH_ROWS == 0)
+            {
+                out.flush();
+            }
+        }
+        catch (IOException e)
+        {
+            // stop reading log events
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeResult(Writer out, String writerName, LogEventsResult result) throws IOException
+    {
+        out.write(toJson(writerName, result).toString());
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * @return NDJSON line of a log event
+     */
+    static JsonObject toJson(String source, OutputLogEvent event)
+    {
+        JsonObject line = new JsonObject();
+        line.addProperty("source", source);
+        line.addProperty("timestamp", event.timestamp());
+        line.addProperty("message", event.message());
+
+        return line;
+    }
+
+    /**
+     * @return NDJSON line of the result of a writer
+     */
+    static JsonObject toJson(String writerName, LogEventsResult result)
+    {
+        JsonObject value = new JsonObject();
+        value.addProperty("writer", writerName);
+        value.addProperty("count", result != null ? result.count : 0);
+        if (result != null && result.nextCursor != null)
+        {
+            value.addProperty("nextCursor", result.nextCursor);
+        }
+        if (result != null && result.budgetExceeded)
+        {
+            value.addProperty("partial", QueryBudget.PARTIAL_RESULTS);
+        }
+
+        JsonObject line = new JsonObject();
+        line.add("result", value);
+
+        return line;
+    }
+
+    /**
+     * @return <code>true</code> if end time of all writers is so long ago, that no more log events arrive
+     */
+    private static boolean isClosedTimeRange(List<String> writers, HttpServletRequest req)
+    {
+        final long now = System.currentTimeMillis();
+        for (String writerName : writers)
+        {
+            LogEventsQuery query = LogEventsQuery.of(writerName, req);
+            if (query == null || query.endTime == null || query.endTime + LogEventsCache.LATE_ARRIVAL_MILLIS > now)
+            {
+                return false;
+            }
+        }
+
+        return !writers.isEmpty();
+    }
+
+    /**
+     * @return weak ETag from all request parameters
+     */
+    static String getETag(HttpServletRequest req)
+    {
+        Map<String, String[]> parameters = new TreeMap<>(req.getParameterMap());
+        IGNORED_PARAMETERS.forEach(parameters::remove);
+
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            parameters.forEach((name, values) -> {
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                for (String value : values)
+                {
+                    digest.update((byte) 0);
+                    digest.update(value.getBytes(StandardCharsets.UTF_8));
+                }
+                digest.update((byte) '\n');
+            });
+
+            StringBuilder eTag = new StringBuilder("W/\"");
+            byte[] hash = digest.digest();
+            for (int i = 0; i < 16; i++)
+            {
+                eTag.append(String.format("%02x", hash[i]));
+            }
+
+            return eTag.append('"').toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package ch.eswitch.tinylog.writers;
+
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.regex.Pattern;
+
+/**
+ * search parameters of AWS Log Viewer for one tinylog writer<br/>
+ * parameters are read from {@link HttpServletRequest} (see {@link #of(String, HttpServletRequest)})
+ */
+public class LogEventsQuery
+{
+    /**
+     * request parameter prefix for {@link #cursor}, followed by writer name
+     */
+    public static final String PARAMETER_CURSOR_PREFIX = "cursor_";
+    /**
+     * request parameter for {@link #pageSize}
+     */
+    public static final String PARAMETER_PAGE_SIZE = "pageSize";
+    /**
+     * request parameter for search mode, see {@link #SEARCH_MODE_SERVER}
+     */
+    public static final String PARAMETER_SEARCH_MODE = "searchMode";
+    /**
+     * search mode: search term is sent to AWS CloudWatch as filter pattern (see {@link #serverSideSearch})
+     */
+    public static final String SEARCH_MODE_SERVER = "server";
+    /**
+     * request parameter, <code>true</code> if search term is a query (see {@link #queryLanguage})
+     */
+    public static final String PARAMETER_USE_QUERY = "useQuery";
+    /**
+     * value of request parameter <code>timeRadios</code> for latest log events (see {@link #limit})
+     */
+    public static final String TIME_LATEST = "latestRadio";
+    /**
+     * request parameter with number of latest log events
+     */
+    public static final String PARAMETER_LATEST_COUNT = "latestCount";
+    /**
+     * default number of latest log events
+     */
+    public static final int DEFAULT_LATEST_COUNT = 100;
+    /**
+     * maximum number of latest log events, they are kept in memory for merged timeline
+     */
+    public static final int MAX_LATEST_COUNT = 10000;
+    /**
+     * page size if request parameter {@value #PARAMETER_PAGE_SIZE} is invalid
+     */
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    /**
+     * maximum page size, 0 (all log events of time range) is still allowed
+     */
+    public static final int MAX_PAGE_SIZE = 10000;
+    /**
+     * tinylog writer name
+     */
+    public final String writerName;
+    /**
+     * log group and stream name of writer
+     */
+    public final LogGroupAndStreamName logGroupAndStreamName;
+    /**
+     * start time in milliseconds (inclusive)
+     */
+    public final long startTime;
+    /**
+     * end time in milliseconds (exclusive), <code>null</code> if open end
+     */
+    public final Long endTime;
+    /**
+     * search term, <code>null</code> if log events are not filtered
+     */
+    public final String searchTerm;
+    /**
+     * <code>true</code> if {@link #searchTerm} is a regular expression
+     */
+    public final boolean regExp;
+    /**
+     * <code>true</code> if {@link #searchTerm} is a query with field predicates, see {@link LogEventsFilter}
+     */
+    public final boolean queryLanguage;
+    /**
+     * continuation cursor of previous page, <code>null</code> for first page
+     */
+    public LogEventsCursor cursor;
+    /**
+     * minimum number of combined log events per page, 0 to read all log events of time range
+     */
+    public int pageSize;
+    /**
+     * <code>true</code> to filter log events by AWS CloudWatch ({@code FilterLogEvents}) if search term can be
+     * expressed as filter pattern (see {@link CloudWatchFilterPattern}), log events are sorted ascending in this case
+     */
+    public boolean serverSideSearch;
+    /**
+     * maximum number of combined log events (latest log events), 0 if all log events of time range are read<br/>
+     * log events are read backwards from the end of the log stream until enough log events are found, log events with
+     * the same timestamp as the last one are read as well, so split log events are not cut
+     */
+    public int limit;
+    /**
+     * time budget and cancellation of request, shared by all queries of a request
+     */
+    QueryBudget budget = QueryBudget.UNLIMITED;
+    /**
+     * phase timing of request, shared by all queries of a request
+     */
+    RequestTiming timing = RequestTiming.NONE;
+
+    private final String searchTermUpperCase;
+    private final Pattern pattern;
+    private final LogEventsFilter filter;
+
+    LogEventsQuery(String writerName, LogGroupAndStreamName logGroupAndStreamName, long startTime, Long endTime, String searchTerm, boolean regExp, boolean queryLanguage)
+    {
+        this.writerName = writerName;
+        this.logGroupAndStreamName = logGroupAndStreamName;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.searchTerm = searchTerm != null && !searchTerm.isEmpty() ? searchTerm : null;
+        this.regExp = regExp && !queryLanguage;
+        this.queryLanguage = queryLanguage;
+
+        if (this.searchTerm != null)
+        {
+            searchTermUpperCase = this.searchTerm.toUpperCase();
+            pattern = this.regExp ? Pattern.compile(this.searchTerm) : null;
+            filter = queryLanguage ? LogEventsFilter.compile(this.searchTerm) : null;
+        }
+        else
+        {
+            searchTermUpperCase = null;
+            pattern = null;
+            filter = null;
+        }
+    }
+
+    /**
+     * create query for a tinylog writer
+     *
+     * @param writerName tinylog writer name
+     * @param request (optional) search parameters to filer for Log Events
+     * @return query or <code>null</code> if log group and stream name of writer are not configured
+     */
+    public static LogEventsQuery of(String writerName, HttpServletRequest request)
+    {
+        LogGroupAndStreamName logGroupAndStreamName = AwsCloudWatchLogsJsonWriter.getLogGroupAndStreamName(writerName);
+
+        if (logGroupAndStreamName == null)
+        {
+            return null;
+        }
+
+        // set start and end date/time and other search parameters
+        String startDateTime = null;
+        String endDateTime = null;
+        String searchTerm = null;
+        String useRegExp = null;
+        String useQuery = null;
+        LogEventsCursor cursor = null;
+        int pageSize = 0;
+        int limit = 0;
+        boolean serverSideSearch = false;
+        if (request != null)
+        {
+            String timeRadios = request.getParameter("timeRadios");
+            if (timeRadios != null)
+            {
+                if (timeRadios.equals("absoluteRadio"))
+                {
+                    startDateTime = request.getParameter("startDateTime");
+                    endDateTime = request.getParameter("endDateTime");
+                }
+                else if (timeRadios.equals("relativeRadio"))
+                {
+                    String relativeTime = request.getParameter("relativeTime");
+                    String relativeUnit = request.getParameter("relativeUnit");
+
+                    long min = parseInt(relativeTime, -1);
+                    if (min >= 0 && relativeUnit != null && relativeUnit.length() > 0)
+                    {
+                        switch (relativeUnit)
+                        {
+                            case "min":
+                                // nothing to do
+                                break;
+                            case "h":
+                                min = min * 60;
+                                break;
+                            case "d":
+                                min = min * 60 * 24;
+                                break;
+                        }
+
+                        ZonedDateTime zdt = ZonedDateTime.ofInstant(Instant.now(),
+                                                                    ZoneId.systemDefault());
+
+                        zdt = zdt.plusMinutes(-1 * min);
+                        startDateTime = zdt.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+                    }
+                }
+                else if (timeRadios.equals(TIME_LATEST))
+                {
+                    limit = parseInt(request.getParameter(PARAMETER_LATEST_COUNT), DEFAULT_LATEST_COUNT);
+                    limit = limit > 0 ? Math.min(limit, MAX_LATEST_COUNT) : DEFAULT_LATEST_COUNT;
+                }
+            }
+
+            searchTerm = request.getParameter("searchTerm");
+            useRegExp = request.getParameter("useRegExp");
+            useQuery = request.getParameter(PARAMETER_USE_QUERY);
+            cursor = LogEventsCursor.decode(request.getParameter(PARAMETER_CURSOR_PREFIX + writerName));
+
+            serverSideSearch = SEARCH_MODE_SERVER.equals(request.getParameter(PARAMETER_SEARCH_MODE));
+
+            String pageSizeParameter = request.getParameter(PARAMETER_PAGE_SIZE);
+            if (pageSizeParameter != null && !pageSizeParameter.isEmpty())
+            {
+                pageSize = parseInt(pageSizeParameter, DEFAULT_PAGE_SIZE);
+                pageSize = pageSize >= 0 ? Math.min(pageSize, MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+            }
+        }
+
+        if (startDateTime == null)
+        {
+            ZonedDateTime zdt = ZonedDateTime.ofInstant(Instant.now(),
+                                                        ZoneId.systemDefault());
+            startDateTime = zdt.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+        }
+
+        LogEventsQuery query;
+        if (cursor != null)
+        {
+            // keep time range of first page
+            query = new LogEventsQuery(writerName, logGroupAndStreamName, cursor.startTime, cursor.endTime, searchTerm, Boolean.parseBoolean(useRegExp), Boolean.parseBoolean(useQuery));
+        }
+        else if (limit > 0)
+        {
+            // from beginning of log stream, reading stops at limit
+            query = new LogEventsQuery(writerName, logGroupAndStreamName, 0, null, searchTerm, Boolean.parseBoolean(useRegExp), Boolean.parseBoolean(useQuery));
+        }
+        else
+        {
+            query = new LogEventsQuery(writerName,
+                                       logGroupAndStreamName,
+                                       toMillis(startDateTime),
+                                       endDateTime != null && !endDateTime.isEmpty() ? toMillis(endDateTime) : null,
+                                       searchTerm,
+                                       Boolean.parseBoolean(useRegExp),
+                                       Boolean.parseBoolean(useQuery));
+        }
+        query.cursor = cursor;
+        query.pageSize = pageSize;
+        query.serverSideSearch = serverSideSearch;
+        if (request != null)
+        {
+            query.budget = QueryBudget.of(request);
+            query.timing = RequestTiming.of(request);
+        }
+
+        if (limit > 0)
+        {
+            query.limit = limit;
+            query.pageSize = limit;
+            // server-side search reads oldest log events first
+            query.serverSideSearch = false;
+        }
+
+        return query;
+    }
+
+    /**
+     * @return value of request parameter or default value if parameter is missing or not a number
+     */
+    private static int parseInt(String parameter, int defaultValue)
+    {
+        if (parameter == null || parameter.isEmpty())
+        {
+            return defaultValue;
+        }
+
+        try
+        {
+            return Integer.parseInt(parameter.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * copy of query for another log stream, e.g. a rolled log stream of the writer
+     */
+    LogEventsQuery copy(LogGroupAndStreamName logGroupAndStreamName)
+    {
+        LogEventsQuery query = new LogEventsQuery(writerName, logGroupAndStreamName, startTime, endTime, searchTerm, regExp, queryLanguage);
+        query.cursor = cursor;
+        query.pageSize = pageSize;
+        query.serverSideSearch = serverSideSearch;
+        query.limit = limit;
+        query.budget = budget;
+        query.timing = timing;
+
+        return query;
+    }
+
+    private static long toMillis(String dateTime)
+    {
+        LocalDateTime ldt = LocalDateTime.parse(dateTime,
+                                                DateTimeFormatter.ISO_DATE_TIME);
+        return ldt.atZone(ZoneId.systemDefault()).toInstant()
+                  .toEpochMilli();
+    }
+
+    /**
+     * @return AWS CloudWatch filter pattern for {@link #searchTerm} or <code>null</code> if log events are filtered
+     * locally only
+     */
+    public String getFilterPattern()
+    {
+        if (filter != null)
+        {
+            return serverSideSearch ? filter.getFilterPattern() : null;
+        }
+
+        return serverSideSearch ? CloudWatchFilterPattern.of(searchTerm, regExp) : null;
+    }
+
+    /**
+     * @return <code>true</code> if {@link #searchTerm} can be looked up in a {@link LogEventsIndex}
+     */
+    boolean isIndexed()
+    {
+        return searchTerm != null && !regExp;
+    }
+
+    /**
+     * @param index index of log events
+     * @return ascending positions of log events which may match {@link #searchTerm} or <code>null</code> if all log
+     * events must be checked
+     */
+    int[] findCandidates(LogEventsIndex index)
+    {
+        if (!isIndexed())
+        {
+            return null;
+        }
+
+        return filter != null ? filter.findCandidates(index) : index.findText(searchTermUpperCase);
+    }
+
+    /**
+     * check if log event matches {@link #searchTerm}<br/>
+     * text search is case-insensitive, regular expression must match whole message, a query is evaluated by
+     * {@link LogEventsFilter}
+     *
+     * @param event combined log event
+     * @return <code>true</code> if no search term is set or log event matches search term
+     */
+    public boolean matches(OutputLogEvent event)
+    {
+        if (searchTerm == null)
+        {
+            return true;
+        }
+
+        final long start = RequestTiming.start();
+        try
+        {
+            if (filter != null)
+            {
+                return filter.matches(event.message(), budget);
+            }
+
+            if (regExp)
+            {
+                // aborted on catastrophic backtracking
+                return budget.matches(pattern, event.message());
+            }
+
+            return event.message().toUpperCase().contains(searchTermUpperCase);
+        }
+        finally
+        {
+            timing.add(RequestTiming.FILTER, start);
+        }
+    }
+}
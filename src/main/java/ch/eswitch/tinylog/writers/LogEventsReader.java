@@ -0,0 +1,534 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilterLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilterLogEventsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilteredLogEvent;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * reads log events from AWS CloudWatch page by page and passes combined and filtered log events to a consumer<br/>
+ * log events are read backwards (newest log events first), only one page and incomplete split log events are kept
+ * in memory<br/>
+ * if {@link LogEventsQuery#serverSideSearch} is set, log events are filtered by AWS CloudWatch and read oldest
+ * first<br/>
+ * if {@link LogEventsQuery#pageSize} is set, reading stops as soon as enough log events are found and a
+ * {@link LogEventsCursor} for the next page is returned<br/>
+ * paged reads are served from {@link LogEventsCache}, so changing the search term does not read the log events again,
+ * search terms are looked up in the inverted index of the cached log events ({@link LogEventsIndex})
+ */
+public class LogEventsReader
+{
+    /**
+     * maximum number of log events per page
+     */
+    static final int PAGE_LIMIT = 1000;
+    /**
+     * maximum number of AWS CloudWatch pages read for one page of combined log events<br/>
+     * limits work for search terms with few matches, a cursor is returned to continue
+     */
+    static final int MAX_PAGES_PER_CURSOR = 20;
+
+    /**
+     * number of time slices read concurrently if all log events of a time range are read, see
+     * {@link SlicedLogEventsFetcher}
+     */
+    private static volatile int fetchConcurrency = SlicedLogEventsFetcher.DEFAULT_CONCURRENCY;
+
+    /**
+     * prefix of cursor token if log events are read from {@link LogEventsCache}, followed by end time of next page
+     */
+    static final String CACHE_TOKEN_PREFIX = "cache:";
+    /**
+     * prefix of cursor token of latest log events ({@link LogEventsQuery#limit}), followed by end time of next page
+     */
+    static final String LATEST_TOKEN_PREFIX = "latest:";
+    /**
+     * prefix of cursor token of filtered log events ({@code FilterLogEvents}), followed by timestamp of the last split
+     * log event which has been read completely, <code>:</code> and AWS CloudWatch token of next page
+     */
+    static final String PARTS_TOKEN_PREFIX = "parts:";
+
+    /**
+     * combined log events of paged reads
+     */
+    static final LogEventsCache cache = new LogEventsCache(LogEventsCache.DEFAULT_MAX_BYTES);
+
+    /**
+     * @param concurrency number of time slices read concurrently if all log events of a time range are read (1 to
+     * {@value SlicedLogEventsFetcher#MAX_CONCURRENT_REQUESTS}), 1 to read sequentially
+     */
+    public static void setFetchConcurrency(int concurrency)
+    {
+        fetchConcurrency = Math.max(1, Math.min(concurrency, SlicedLogEventsFetcher.MAX_CONCURRENT_REQUESTS));
+    }
+
+    /**
+     * @param maxBytes memory budget of combined log events cache in bytes, 0 disables cache
+     */
+    public static void setCacheSize(long maxBytes)
+    {
+        cache.setMaxBytes(maxBytes);
+    }
+
+    /**
+     * create AWS CloudWatch Logs client with AWS configuration of a tinylog writer
+     *
+     * @param writerName tinylog writer name
+     * @return client, must be closed by caller
+     */
+    static CloudWatchLogsClient createLogsClient(String writerName)
+    {
+        AwsCloudWatchLogsJsonWriter.setAwsSystemProperties(writerName);
+
+        return CloudWatchLogsClient.builder()
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .build();
+    }
+
+    /**
+     * read combined log events of a query, newest log events first<br/>
+     * log streams of a rolling stream name (see {@link RollingStreamName}) are read as merged timeline, oldest log
+     * events first
+     *
+     * @param query search parameters
+     * @param consumer receives combined log events which match the search term
+     * @return number of log events passed to consumer and cursor of next page
+     */
+    public static LogEventsResult read(LogEventsQuery query, Consumer<OutputLogEvent> consumer)
+    {
+        if (RollingStreamName.isPattern(query.logGroupAndStreamName.streamName))
+        {
+            // rolled log streams of writer are merged, oldest first
+            return MergedLogEventsTimeline.read(Collections.singletonList(query), query.cursor, (source, e) -> consumer.accept(e));
+        }
+
+        final long start = RequestTiming.start();
+        try (CloudWatchLogsClient logsClient = createLogsClient(query.writerName))
+        {
+            query.timing.add(RequestTiming.CLIENT, start);
+
+            return read(logsClient, query, consumer);
+        }
+    }
+
+    static LogEventsResult read(CloudWatchLogsClient logsClient, LogEventsQuery query, Consumer<OutputLogEvent> renderer)
+    {
+        final Consumer<OutputLogEvent> consumer = timed(query.timing, renderer);
+
+        if (isCached(query))
+        {
+            return readCached(logsClient, query, consumer);
+        }
+
+        String filterPattern = query.getFilterPattern();
+        if (filterPattern != null)
+        {
+            return readFiltered(logsClient, query, filterPattern, consumer);
+        }
+
+        final LogEventsResult result = new LogEventsResult();
+        // timestamp of last log event within limit
+        final Long[] limitTimestamp = { null };
+        OutputLogEventCombiner combiner = new OutputLogEventCombiner(false, e -> {
+            // older log events than the last one within limit belong to the next page
+            if (!query.matches(e) || (limitTimestamp[0] != null && e.timestamp() < limitTimestamp[0]))
+            {
+                return;
+            }
+
+            result.count++;
+            consumer.accept(e);
+
+            if (query.limit > 0 && limitTimestamp[0] == null && result.count >= query.limit)
+            {
+                limitTimestamp[0] = e.timestamp();
+            }
+        });
+
+        if (query.pageSize == 0 && query.cursor == null && fetchConcurrency > 1)
+        {
+            // all log events of time range
+            int pages = new SlicedLogEventsFetcher(logsClient, query, fetchConcurrency).fetch(combiner::accept);
+            combiner.flush();
+            result.budgetExceeded = query.budget.isExceeded();
+
+            Util.log(Level.DEBUG, "pages: %d, combinedOutputLogEvents: %d", pages, result.count);
+
+            return result;
+        }
+
+        GetLogEventsRequest.Builder builder = GetLogEventsRequest.builder()
+                .logGroupName(query.logGroupAndStreamName.logGroupName)
+                .logStreamName(query.logGroupAndStreamName.streamName)
+                .startFromHead(false)
+                .startTime(query.startTime)
+                .limit(PAGE_LIMIT);
+
+        Long endTime = query.endTime;
+        String nextToken = query.cursor != null ? query.cursor.token : null;
+        if (nextToken != null && nextToken.startsWith(LATEST_TOKEN_PREFIX))
+        {
+            // latest log events older than previous page
+            endTime = Long.parseLong(nextToken.substring(LATEST_TOKEN_PREFIX.length()));
+            nextToken = null;
+        }
+
+        if (endTime != null)
+        {
+            builder.endTime(endTime);
+        }
+
+        int pages = 0;
+        boolean limitReached = false;
+        while (true)
+        {
+            long start = RequestTiming.start();
+            GetLogEventsResponse response = logsClient.getLogEvents(builder.nextToken(nextToken).build());
+            query.timing.add(RequestTiming.FETCH, start);
+            pages++;
+
+            if (response.hasEvents())
+            {
+                List<OutputLogEvent> events = response.events();
+                Util.log(Level.DEBUG, "log events: %d", events.size());
+
+                start = RequestTiming.start();
+                long nested = query.timing.getNestedNanos();
+
+                // events of a page are sorted ascending
+                for (int i = events.size() - 1; i >= 0; i--)
+                {
+                    // log events with timestamp of last log event are still read, so split log events are complete
+                    if (limitTimestamp[0] != null && events.get(i).timestamp() < limitTimestamp[0])
+                    {
+                        limitReached = true;
+                        break;
+                    }
+
+                    combiner.accept(events.get(i));
+                }
+                query.timing.addExclusive(RequestTiming.COMBINE, start, nested);
+            }
+
+            if (limitReached)
+            {
+                result.nextCursor = new LogEventsCursor(query.startTime, query.endTime, LATEST_TOKEN_PREFIX + limitTimestamp[0]).encode();
+                break;
+            }
+
+            // same token is returned at the beginning of the log stream
+            String backwardToken = response.nextBackwardToken();
+            if (backwardToken == null || backwardToken.equals(nextToken))
+            {
+                break;
+            }
+
+            nextToken = backwardToken;
+
+            if (query.budget.isCancelled())
+            {
+                result.budgetExceeded = true;
+                break;
+            }
+
+            // stop at page boundary, split log events must not be cut
+            if (!combiner.hasPendingParts() && (query.budget.isExceeded() || (query.pageSize > 0 && query.limit == 0
+                    && (result.count >= query.pageSize || pages >= MAX_PAGES_PER_CURSOR))))
+            {
+                result.budgetExceeded = query.budget.isExceeded();
+                result.nextCursor = new LogEventsCursor(query.startTime, query.endTime, nextToken).encode();
+                break;
+            }
+        }
+
+        combiner.flush();
+
+        Util.log(Level.DEBUG, "pages: %d, combinedOutputLogEvents: %d", pages, result.count);
+
+        return result;
+    }
+
+    /**
+     * check if query is read from {@link LogEventsCache}<br/>
+     * paged reads with local search are cached, with server-side search only if all buckets of the time range are
+     * already cached (only search term changed). Reads of a whole time range (text file) and latest log events are not
+     * cached.
+     */
+    private static boolean isCached(LogEventsQuery query)
+    {
+        if (query.cursor != null)
+        {
+            return query.cursor.token.startsWith(CACHE_TOKEN_PREFIX);
+        }
+
+        if (!cache.isEnabled() || query.pageSize == 0 || query.limit > 0)
+        {
+            return false;
+        }
+
+        return query.getFilterPattern() == null
+                || cache.containsAll(query.logGroupAndStreamName, query.startTime, getEndTime(query));
+    }
+
+    private static long getEndTime(LogEventsQuery query)
+    {
+        return query.endTime != null ? query.endTime : System.currentTimeMillis() + SlicedLogEventsFetcher.END_TIME_OFFSET_MILLIS;
+    }
+
+    /**
+     * read combined log events from {@link LogEventsCache} bucket by bucket, newest log events first<br/>
+     * pages end at bucket boundaries, the cursor contains the end time of the next page
+     */
+    static LogEventsResult readCached(CloudWatchLogsClient logsClient, LogEventsQuery query, Consumer<OutputLogEvent> consumer)
+    {
+        final LogEventsResult result = new LogEventsResult();
+        long endTime = getEndTime(query);
+        if (query.cursor != null)
+        {
+            try
+            {
+                endTime = Long.parseLong(query.cursor.token.substring(CACHE_TOKEN_PREFIX.length()));
+            }
+            catch (NumberFormatException e)
+            {
+                Util.log(Level.WARN, "invalid cursor: %s", query.cursor.token);
+            }
+        }
+
+        int buckets = 0;
+        for (long bucketStart = LogEventsCache.getBucketStart(endTime - 1); bucketStart + LogEventsCache.BUCKET_MILLIS > query.startTime; bucketStart -= LogEventsCache.BUCKET_MILLIS)
+        {
+            result.budgetExceeded = buckets > 0 && query.budget.isExceeded();
+            if (result.budgetExceeded || (query.pageSize > 0 && (result.count >= query.pageSize || buckets >= MAX_PAGES_PER_CURSOR)))
+            {
+                result.nextCursor = new LogEventsCursor(query.startTime, query.endTime, CACHE_TOKEN_PREFIX + (bucketStart + LogEventsCache.BUCKET_MILLIS)).encode();
+                break;
+            }
+
+            final long start = RequestTiming.start();
+            bucketStart = cache.skipEmpty(logsClient, query.logGroupAndStreamName, query.startTime, bucketStart);
+            if (bucketStart + LogEventsCache.BUCKET_MILLIS <= query.startTime)
+            {
+                // no further log events
+                query.timing.add(RequestTiming.CACHE, start);
+                break;
+            }
+
+            LogEventsCache.Bucket bucket = cache.get(logsClient, query.logGroupAndStreamName, bucketStart);
+            List<OutputLogEvent> events = bucket.events;
+            if (!events.isEmpty())
+            {
+                // empty buckets do not count for the page limit
+                buckets++;
+            }
+
+            // only log events containing the tokens of the search term are checked
+            int[] candidates = query.isIndexed() ? query.findCandidates(cache.getIndex(query.logGroupAndStreamName, bucketStart, bucket)) : null;
+            query.timing.add(RequestTiming.CACHE, start);
+
+            for (int c = (candidates != null ? candidates.length : events.size()) - 1; c >= 0; c--)
+            {
+                OutputLogEvent event = events.get(candidates != null ? candidates[c] : c);
+                if (event.timestamp() >= query.startTime && event.timestamp() < endTime && query.matches(event))
+                {
+                    result.count++;
+                    consumer.accept(event);
+                }
+            }
+        }
+
+        Util.log(Level.DEBUG, "cached buckets: %d, combinedOutputLogEvents: %d", buckets, result.count);
+
+        return result;
+    }
+
+    /**
+     * read log events filtered by AWS CloudWatch ({@code FilterLogEvents}), oldest log events first<br/>
+     * only matching partial messages are returned by AWS CloudWatch, therefore all parts of a split log event are
+     * read by timestamp, so that split log events are combined even if other parts do not match the filter pattern
+     *
+     * @param filterPattern AWS CloudWatch filter pattern, see {@link CloudWatchFilterPattern}
+     */
+    static LogEventsResult readFiltered(CloudWatchLogsClient logsClient, LogEventsQuery query, String filterPattern, Consumer<OutputLogEvent> consumer)
+    {
+        final LogEventsResult result = new LogEventsResult();
+        OutputLogEventCombiner combiner = createCombiner(query, true, result, consumer);
+
+        FilterLogEventsRequest.Builder builder = FilterLogEventsRequest.builder()
+                .logGroupName(query.logGroupAndStreamName.logGroupName)
+                .logStreamNames(query.logGroupAndStreamName.streamName)
+                .filterPattern(filterPattern)
+                .startTime(query.startTime)
+                .limit(PAGE_LIMIT);
+
+        if (query.endTime != null)
+        {
+            builder.endTime(query.endTime);
+        }
+
+        Util.log(Level.DEBUG, "filter pattern: %s", filterPattern);
+
+        // timestamps of split log events which have been read completely, also of previous page
+        Set<Long> partTimestamps = new HashSet<>();
+        String nextToken = query.cursor != null ? query.cursor.token : null;
+        if (nextToken != null && nextToken.startsWith(PARTS_TOKEN_PREFIX))
+        {
+            int posToken = nextToken.indexOf(':', PARTS_TOKEN_PREFIX.length());
+            try
+            {
+                partTimestamps.add(Long.parseLong(nextToken.substring(PARTS_TOKEN_PREFIX.length(), posToken)));
+                nextToken = nextToken.substring(posToken + 1);
+            }
+            catch (NumberFormatException | StringIndexOutOfBoundsException e)
+            {
+                Util.log(Level.WARN, "invalid cursor: %s", nextToken);
+            }
+        }
+        int pages = 0;
+        do
+        {
+            long start = RequestTiming.start();
+            FilterLogEventsResponse response = logsClient.filterLogEvents(builder.nextToken(nextToken).build());
+            query.timing.add(RequestTiming.FETCH, start);
+            pages++;
+
+            if (response.hasEvents())
+            {
+                Util.log(Level.DEBUG, "filtered log events: %d", response.events().size());
+
+                // incl. reading all parts of split log events
+                start = RequestTiming.start();
+                long nested = query.timing.getNestedNanos();
+
+                for (FilteredLogEvent filteredEvent : response.events())
+                {
+                    final long timestamp = filteredEvent.timestamp();
+                    partTimestamps.removeIf(t -> t < timestamp);
+
+                    if (!Util.isPartialMessage(filteredEvent.message()))
+                    {
+                        combiner.accept(toOutputLogEvent(filteredEvent));
+                    }
+                    else if (partTimestamps.add(timestamp))
+                    {
+                        // read all parts, also not matching ones
+                        readPartialLogEvents(logsClient, query.logGroupAndStreamName.logGroupName, query.logGroupAndStreamName.streamName, timestamp, combiner::accept);
+                    }
+                }
+                query.timing.addExclusive(RequestTiming.COMBINE, start, nested);
+            }
+
+            nextToken = response.nextToken();
+
+            if (nextToken != null && query.budget.isCancelled())
+            {
+                result.budgetExceeded = true;
+                break;
+            }
+
+            if (nextToken != null && !combiner.hasPendingParts() && (query.budget.isExceeded() || (query.pageSize > 0
+                    && (result.count >= query.pageSize || pages >= MAX_PAGES_PER_CURSOR))))
+            {
+                result.budgetExceeded = query.budget.isExceeded();
+                // parts of the last split log event may be returned again on the next page
+                String token = partTimestamps.isEmpty() ? nextToken : PARTS_TOKEN_PREFIX + Collections.max(partTimestamps) + ':' + nextToken;
+                result.nextCursor = new LogEventsCursor(query.startTime, query.endTime, token).encode();
+                break;
+            }
+        }
+        while (nextToken != null);
+
+        combiner.flush();
+
+        Util.log(Level.DEBUG, "pages: %d, filtered combinedOutputLogEvents: %d", pages, result.count);
+
+        return result;
+    }
+
+    /**
+     * read all partial messages of a log stream with a specific timestamp
+     */
+    static void readPartialLogEvents(CloudWatchLogsClient logsClient, String logGroupName, String streamName, long timestamp, Consumer<OutputLogEvent> consumer)
+    {
+        GetLogEventsRequest.Builder builder = GetLogEventsRequest.builder()
+                .logGroupName(logGroupName)
+                .logStreamName(streamName)
+                .startFromHead(true)
+                .startTime(timestamp)
+                .endTime(timestamp + 1);
+
+        String nextToken = null;
+        while (true)
+        {
+            GetLogEventsResponse response = logsClient.getLogEvents(builder.nextToken(nextToken).build());
+
+            if (response.hasEvents())
+            {
+                response.events()
+                        .stream()
+                        .filter(e -> Util.isPartialMessage(e.message()))
+                        .forEach(consumer);
+            }
+
+            // same token is returned at the end of the log stream
+            String forwardToken = response.nextForwardToken();
+            if (forwardToken == null || forwardToken.equals(nextToken))
+            {
+                break;
+            }
+
+            nextToken = forwardToken;
+        }
+    }
+
+    static OutputLogEvent toOutputLogEvent(FilteredLogEvent event)
+    {
+        return OutputLogEvent.builder()
+                .timestamp(event.timestamp())
+                .message(event.message())
+                .ingestionTime(event.ingestionTime())
+                .build();
+    }
+
+    /**
+     * @return consumer which adds the time of the consumer to phase {@link RequestTiming#RENDER}
+     */
+    static <T> Consumer<T> timed(RequestTiming timing, Consumer<T> consumer)
+    {
+        if (timing == RequestTiming.NONE)
+        {
+            return consumer;
+        }
+
+        return e -> {
+            final long start = RequestTiming.start();
+            consumer.accept(e);
+            timing.add(RequestTiming.RENDER, start);
+        };
+    }
+
+    /**
+     * create combiner which passes log events matching the search term to consumer
+     */
+    private static OutputLogEventCombiner createCombiner(LogEventsQuery query, boolean ascending, LogEventsResult result, Consumer<OutputLogEvent> consumer)
+    {
+        return new OutputLogEventCombiner(ascending, e -> {
+            if (query.matches(e))
+            {
+                result.count++;
+                consumer.accept(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,21 @@
+package ch.eswitch.tinylog.writers;
+
+/**
+ * result of reading log events of one tinylog writer
+ */
+public class LogEventsResult
+{
+    /**
+     * number of log events passed to consumer
+     */
+    public long count;
+    /**
+     * encoded {@link LogEventsCursor} of next page, <code>null</code> if all log events have been read
+     */
+    public String nextCursor;
+    /**
+     * <code>true</code> if reading stopped because the time budget of the request was exceeded or the request was
+     * cancelled, {@link #nextCursor} continues if possible
+     */
+    public boolean budgetExceeded;
+}
@@ -0,0 +1,224 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * follows the log streams of a writer and passes new combined log events to listeners (live tail)<br/>
+ * each log stream is polled with {@code GetLogEvents} and its forward token every {@value #POLL_MILLIS} ms. One
+ * tailer is shared by all listeners of the same writer log stream (e.g. several browser tabs), it is stopped when the
+ * last listener is removed.
+ */
+class LogStreamTailer
+{
+    /**
+     * poll interval
+     */
+    static final long POLL_MILLIS = 2000;
+    /**
+     * threads polling all tailed log streams
+     */
+    static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(2, r -> {
+        Thread thread = new Thread(r, LogStreamTailer.class.getSimpleName());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * running tailers with log group and stream name as key
+     */
+    private static final Map<String, LogStreamTailer> TAILERS = new HashMap<>();
+
+    private final String key;
+    private final LogGroupAndStreamName logGroupAndStreamName;
+    private final CloudWatchLogsClient logsClient;
+    private final List<Consumer<OutputLogEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final long startTime;
+    /**
+     * tailed log streams with stream name as key, only accessed by poll
+     */
+    private final Map<String, TailedStream> streams = new HashMap<>();
+    private ScheduledFuture<?> future;
+    private volatile boolean stopped;
+
+    private LogStreamTailer(String key, String writerName, LogGroupAndStreamName logGroupAndStreamName)
+    {
+        this.key = key;
+        this.logGroupAndStreamName = logGroupAndStreamName;
+        this.logsClient = LogEventsReader.createLogsClient(writerName);
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * add listener for new log events of a writer's log stream, tailer is started if necessary<br/>
+     * for a rolling stream name (see {@link RollingStreamName}) the log streams with log events of the last hour are
+     * tailed, log streams rolled over later are found by the next poll after the found log streams expired
+     * ({@value RollingStreamName#STREAMS_CACHE_MILLIS} ms)
+     *
+     * @param writerName tinylog writer name
+     * @param listener receives new combined log events, must not block
+     * @return tailer, to remove listener, <code>null</code> if log group and stream name of writer are not configured
+     */
+    static synchronized LogStreamTailer subscribe(String writerName, Consumer<OutputLogEvent> listener)
+    {
+        LogGroupAndStreamName logGroupAndStreamName = AwsCloudWatchLogsJsonWriter.getLogGroupAndStreamName(writerName);
+        if (logGroupAndStreamName == null)
+        {
+            return null;
+        }
+
+        final String key = logGroupAndStreamName.logGroupName + '\n' + logGroupAndStreamName.streamName;
+        LogStreamTailer tailer = TAILERS.get(key);
+        if (tailer == null)
+        {
+            tailer = new LogStreamTailer(key, writerName, logGroupAndStreamName);
+            tailer.future = SCHEDULER.scheduleWithFixedDelay(tailer::poll, 0, POLL_MILLIS, TimeUnit.MILLISECONDS);
+            TAILERS.put(key, tailer);
+
+            Util.log(Level.DEBUG, "start tail: %s", key);
+        }
+
+        tailer.listeners.add(listener);
+
+        return tailer;
+    }
+
+    /**
+     * remove listener, tailer is stopped if it has no more listeners
+     */
+    static synchronized void unsubscribe(LogStreamTailer tailer, Consumer<OutputLogEvent> listener)
+    {
+        tailer.listeners.remove(listener);
+
+        if (tailer.listeners.isEmpty() && TAILERS.remove(tailer.key, tailer))
+        {
+            tailer.stopped = true;
+            tailer.future.cancel(false);
+            // poll may be running
+            SCHEDULER.execute(tailer.logsClient::close);
+
+            Util.log(Level.DEBUG, "stop tail: %s", tailer.key);
+        }
+    }
+
+    /**
+     * read new log events of all log streams, executed by {@link #SCHEDULER}
+     */
+    private void poll()
+    {
+        try
+        {
+            resolveStreams();
+        }
+        catch (RuntimeException e)
+        {
+            // keep polling the known log streams, e.g. throttling
+            Util.log(Level.WARN, "find log streams of %s failed: %s", key.replace('\n', '/'), e);
+        }
+
+        for (TailedStream stream : streams.values())
+        {
+            if (stopped)
+            {
+                return;
+            }
+
+            try
+            {
+                stream.poll();
+            }
+            catch (RuntimeException e)
+            {
+                // keep polling, e.g. throttling
+                Util.log(Level.WARN, "tail of %s/%s failed: %s", logGroupAndStreamName.logGroupName, stream.streamName, e);
+            }
+        }
+    }
+
+    /**
+     * add log streams rolled over since last poll, the log streams of a pattern are described by
+     * {@link RollingStreamName#findStreamNames} at most once per {@value RollingStreamName#STREAMS_CACHE_MILLIS} ms
+     */
+    private void resolveStreams()
+    {
+        if (!RollingStreamName.isPattern(logGroupAndStreamName.streamName))
+        {
+            if (streams.isEmpty())
+            {
+                streams.put(logGroupAndStreamName.streamName, new TailedStream(logGroupAndStreamName.streamName));
+            }
+            return;
+        }
+
+        List<String> streamNames = RollingStreamName.findStreamNames(logsClient, logGroupAndStreamName,
+                                                                     System.currentTimeMillis() - RollingStreamName.METADATA_LAG_MILLIS, null);
+        streams.keySet().retainAll(streamNames);
+        for (String streamName : streamNames)
+        {
+            if (!streams.containsKey(streamName))
+            {
+                streams.put(streamName, new TailedStream(streamName));
+
+                Util.log(Level.DEBUG, "tail log stream: %s/%s", logGroupAndStreamName.logGroupName, streamName);
+            }
+        }
+    }
+
+    /**
+     * position in one tailed log stream
+     */
+    private class TailedStream
+    {
+        private final String streamName;
+        private final OutputLogEventCombiner combiner;
+        private String nextToken;
+
+        TailedStream(String streamName)
+        {
+            this.streamName = streamName;
+            this.combiner = new OutputLogEventCombiner(true, e -> listeners.forEach(l -> l.accept(e)));
+        }
+
+        void poll()
+        {
+            GetLogEventsRequest.Builder builder = GetLogEventsRequest.builder()
+                    .logGroupName(logGroupAndStreamName.logGroupName)
+                    .logStreamName(streamName)
+                    .startFromHead(true)
+                    .startTime(startTime)
+                    .limit(LogEventsReader.PAGE_LIMIT);
+
+            while (!stopped)
+            {
+                GetLogEventsResponse response = logsClient.getLogEvents(builder.nextToken(nextToken).build());
+
+                if (response.hasEvents())
+                {
+                    response.events().forEach(combiner::accept);
+                }
+
+                // same token is returned at the end of the log stream
+                String forwardToken = response.nextForwardToken();
+                if (forwardToken == null || forwardToken.equals(nextToken))
+                {
+                    break;
+                }
+
+                nextToken = forwardToken;
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package ch.eswitch.tinylog.writers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.tinylog.Level;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.CloudWatchLogsException;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetQueryResultsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.ResultField;
+import software.amazon.awssdk.services.cloudwatchlogs.model.StartQueryResponse;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * CloudWatch Logs Insights mode of AWS Log Viewer<br/>
+ * aggregations are executed by AWS CloudWatch ({@code StartQuery}), the browser polls the results
+ * ({@code GetQueryResults}) until the query is complete, so no log events are read by the viewer:
+ * <ul>
+ *     <li>{@value #OUTPUT_TYPE_START}: start query for log groups of selected writers, returns <code>queryId</code></li>
+ *     <li>{@value #OUTPUT_TYPE_RESULTS}: returns <code>status</code>, <code>statistics</code>, <code>fields</code> and
+ *     <code>rows</code> of query <code>queryId</code>, partial results while running</li>
+ *     <li>{@value #OUTPUT_TYPE_STOP}: stop query <code>queryId</code></li>
+ * </ul>
+ * Query templates are built from the field names configured for the JSON writer (<code>field.*</code>).
+ */
+public class LogsInsightsQuery
+{
+    /**
+     * value of request parameter <code>outputType</code> for Insights page
+     */
+    public static final String OUTPUT_TYPE = "insights";
+    static final String OUTPUT_TYPE_START = "insightsStart";
+    static final String OUTPUT_TYPE_RESULTS = "insightsResults";
+    static final String OUTPUT_TYPE_STOP = "insightsStop";
+    /**
+     * request parameter with Insights query
+     */
+    static final String PARAMETER_QUERY = "insightsQuery";
+    static final String PARAMETER_QUERY_ID = "queryId";
+    /**
+     * maximum number of result rows
+     */
+    static final int MAX_RESULTS = 1000;
+    /**
+     * maximum number of log groups of a query
+     */
+    static final int MAX_LOG_GROUPS = 50;
+    /**
+     * only first part of split log events is counted
+     */
+    static final String FILTER_FIRST_PART = "filter not ispresent(" + AwsCloudWatchLogsWriter.CONTEXT_KEY_MESSAGE_PART + ") or "
+            + AwsCloudWatchLogsWriter.CONTEXT_KEY_MESSAGE_PART + " like /:1\\//";
+
+    private static final String FIELD_PREFIX = "field.";
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private LogsInsightsQuery()
+    {
+    }
+
+    /**
+     * @return <code>true</code> if request parameter <code>outputType</code> is an Insights request
+     */
+    static boolean isInsightsRequest(String outputType)
+    {
+        return OUTPUT_TYPE_START.equals(outputType) || OUTPUT_TYPE_RESULTS.equals(outputType) || OUTPUT_TYPE_STOP.equals(outputType);
+    }
+
+    /**
+     * query templates from configured JSON fields of a writer
+     *
+     * @param writerName tinylog writer name
+     * @return query with title
+     */
+    public static Map<String, String> getTemplates(String writerName)
+    {
+        Map<String, String> fields = getFields(writerName);
+        String level = findField(fields, "level");
+        String source = findField(fields, "class", "class-name");
+        String message = findField(fields, "message", "message-only");
+
+        Map<String, String> templates = new LinkedHashMap<>();
+        String count = FILTER_FIRST_PART + "\n| stats count(*) as logEvents";
+        templates.put("Log Events per minute", count + " by bin(1m) as minute\n| sort minute desc");
+        if (level != null)
+        {
+            templates.put("Log Events per minute by " + level, count + " by bin(1m) as minute, " + level + "\n| sort minute desc");
+            templates.put("Errors per minute" + (source != null ? " by " + source : ""),
+                          "filter " + level + " = \"ERROR\"\n| " + FILTER_FIRST_PART + "\n| stats count(*) as errors by bin(1m) as minute"
+                                  + (source != null ? ", " + source : "") + "\n| sort minute desc");
+        }
+        for (String field : fields.keySet())
+        {
+            if (!field.equals(message))
+            {
+                templates.put("Log Events by " + field, count + " by " + field + "\n| sort logEvents desc");
+            }
+        }
+        if (message != null)
+        {
+            templates.put("Latest errors", (level != null ? "filter " + level + " = \"ERROR\"\n| " : "") + FILTER_FIRST_PART
+                    + "\n| fields @timestamp, @logStream, " + String.join(", ", fields.keySet()) + "\n| sort @timestamp desc");
+        }
+
+        return templates;
+    }
+
+    /**
+     * @return configured JSON fields with their pattern, field names are quoted if necessary
+     */
+    private static Map<String, String> getFields(String writerName)
+    {
+        Map<String, String> fields = new LinkedHashMap<>();
+        Map<String, String> writerConfig = AwsCloudWatchLogsJsonWriter.getWriterConfig(writerName);
+        if (writerConfig != null)
+        {
+            writerConfig.forEach((key, value) -> {
+                if (key.startsWith(FIELD_PREFIX))
+                {
+                    String field = key.substring(FIELD_PREFIX.length());
+                    fields.put(IDENTIFIER.matcher(field).matches() ? field : "`" + field + "`", value);
+                }
+            });
+        }
+
+        return fields;
+    }
+
+    /**
+     * @return name of field whose pattern is one of the placeholders, e.g. <code>{class}</code>
+     */
+    private static String findField(Map<String, String> fields, String... placeholders)
+    {
+        for (Map.Entry<String, String> field : fields.entrySet())
+        {
+            String pattern = field.getValue().trim();
+            for (String placeholder : placeholders)
+            {
+                if (pattern.equals(placeholder) || pattern.startsWith("{" + placeholder + "}") || pattern.startsWith("{" + placeholder + "|")
+                        || pattern.startsWith("{" + placeholder + " "))
+                {
+                    return field.getKey();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * handle Insights request of browser, response is JSON
+     */
+    static void handle(HttpServletRequest req, HttpServletResponse resp, List<String> selectedWriters) throws IOException
+    {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+
+        JsonObject json = new JsonObject();
+        if (selectedWriters.isEmpty())
+        {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            json.addProperty("error", "no writer selected");
+            resp.getWriter().print(json);
+            return;
+        }
+
+        String outputType = req.getParameter("outputType");
+        RequestTiming timing = RequestTiming.of(req);
+        long start = RequestTiming.start();
+        try (CloudWatchLogsClient logsClient = LogEventsReader.createLogsClient(selectedWriters.get(0)))
+        {
+            timing.add(RequestTiming.CLIENT, start);
+
+            start = RequestTiming.start();
+            if (OUTPUT_TYPE_START.equals(outputType))
+            {
+                json.addProperty(PARAMETER_QUERY_ID, start(logsClient, selectedWriters, req));
+            }
+            else if (OUTPUT_TYPE_STOP.equals(outputType))
+            {
+                logsClient.stopQuery(b -> b.queryId(req.getParameter(PARAMETER_QUERY_ID)));
+            }
+            else
+            {
+                json = getResults(logsClient, req.getParameter(PARAMETER_QUERY_ID));
+            }
+            timing.add(RequestTiming.FETCH, start);
+        }
+        catch (CloudWatchLogsException | IllegalArgumentException e)
+        {
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            json = new JsonObject();
+            json.addProperty("error", e instanceof CloudWatchLogsException ? ((CloudWatchLogsException) e).awsErrorDetails().errorMessage() : e.getMessage());
+        }
+
+        resp.getWriter().print(json);
+    }
+
+    /**
+     * start query for log groups and streams of selected writers and time range of form
+     *
+     * @return query id
+     */
+    private static String start(CloudWatchLogsClient logsClient, List<String> selectedWriters, HttpServletRequest req)
+    {
+        String query = req.getParameter(PARAMETER_QUERY);
+        if (query == null || query.trim().isEmpty())
+        {
+            throw new IllegalArgumentException("no query");
+        }
+
+        Set<String> logGroupNames = new LinkedHashSet<>();
+        List<String> streamNames = new ArrayList<>();
+        LogEventsQuery timeRange = null;
+        for (String writerName : selectedWriters)
+        {
+            LogEventsQuery writerQuery = LogEventsQuery.of(writerName, req);
+            if (writerQuery != null)
+            {
+                logGroupNames.add(writerQuery.logGroupAndStreamName.logGroupName);
+                for (LogEventsQuery streamQuery : RollingStreamName.expand(logsClient, Collections.singletonList(writerQuery), writerQuery.startTime, writerQuery.endTime))
+                {
+                    streamNames.add(streamQuery.logGroupAndStreamName.streamName.replace("\\", "\\\\").replace("\"", "\\\""));
+                }
+                timeRange = writerQuery;
+            }
+        }
+
+        if (timeRange == null || logGroupNames.size() > MAX_LOG_GROUPS)
+        {
+            throw new IllegalArgumentException("writers must have 1 to " + MAX_LOG_GROUPS + " log groups");
+        }
+
+        // only log streams of selected writers
+        String queryString = "filter @logStream in [\"" + String.join("\", \"", streamNames) + "\"]\n| " + query.trim();
+        final long startTime = timeRange.startTime;
+        final long endTime = timeRange.endTime != null ? timeRange.endTime : System.currentTimeMillis();
+
+        Util.log(Level.DEBUG, "Insights query: %s", queryString);
+
+        StartQueryResponse response = logsClient.startQuery(b -> b.logGroupNames(logGroupNames)
+                .startTime(startTime / 1000)
+                .endTime((endTime + 999) / 1000)
+                .queryString(queryString)
+                .limit(MAX_RESULTS));
+
+        return response.queryId();
+    }
+
+    /**
+     * @return status, statistics and result table of query
+     */
+    private static JsonObject getResults(CloudWatchLogsClient logsClient, String queryId)
+    {
+        GetQueryResultsResponse response = logsClient.getQueryResults(b -> b.queryId(queryId));
+
+        JsonObject json = new JsonObject();
+        json.addProperty("status", response.statusAsString());
+        if (response.statistics() != null)
+        {
+            JsonObject statistics = new JsonObject();
+            statistics.addProperty("recordsMatched", response.statistics().recordsMatched());
+            statistics.addProperty("recordsScanned", response.statistics().recordsScanned());
+            statistics.addProperty("bytesScanned", response.statistics().bytesScanned());
+            json.add("statistics", statistics);
+        }
+
+        // columns in order of first appearance, rows may have different fields
+        List<String> fields = new ArrayList<>();
+        JsonArray rows = new JsonArray();
+        if (response.hasResults())
+        {
+            for (List<ResultField> result : response.results())
+            {
+                JsonObject row = new JsonObject();
+                for (ResultField resultField : result)
+                {
+                    if ("@ptr".equals(resultField.field()))
+                    {
+                        continue;
+                    }
+                    if (!fields.contains(resultField.field()))
+                    {
+                        fields.add(resultField.field());
+                    }
+                    row.addProperty(resultField.field(), resultField.value());
+                }
+                rows.add(row);
+            }
+        }
+
+        JsonArray fieldArray = new JsonArray();
+        fields.forEach(fieldArray::add);
+        json.add("fields", fieldArray);
+        json.add("rows", rows);
+
+        return json;
+    }
+}
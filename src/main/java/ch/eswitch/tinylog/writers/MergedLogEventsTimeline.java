@@ -0,0 +1,505 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilterLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilterLogEventsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilteredLogEvent;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * merged timeline of several tinylog writers, oldest log events first<br/>
+ * Log streams of the same log group are read with one multi-stream {@code FilterLogEvents} call, all log groups are
+ * read concurrently. Combined log events are merged by timestamp (k-way merge), each log event is passed with its
+ * source (writer names). Each log group buffers at most {@value #QUEUE_PAGES} pages, so memory usage is bounded by the
+ * number of log groups times the page size.<br/>
+ * <br/>
+ * Writers with the same log group and stream name are read only once.
+ */
+public class MergedLogEventsTimeline
+{
+    /**
+     * request parameter value for merged timeline, used instead of a writer name
+     */
+    public static final String TIMELINE = "timeline";
+    /**
+     * request parameter for timeline mode, see {@link #isMergedTimeline(HttpServletRequest)}
+     */
+    public static final String PARAMETER_TIMELINE = "timeline";
+    /**
+     * number of pages a log group reads ahead
+     */
+    static final int QUEUE_PAGES = 2;
+    /**
+     * maximum number of log streams of one {@code FilterLogEvents} call
+     */
+    static final int MAX_STREAMS_PER_REQUEST = 100;
+
+    private static final List<SourceEvent> END_OF_SOURCE = Collections.emptyList();
+
+    private MergedLogEventsTimeline()
+    {
+    }
+
+    /**
+     * @param request search parameters
+     * @return <code>true</code> if log events of all selected writers should be shown in one timeline
+     */
+    public static boolean isMergedTimeline(HttpServletRequest request)
+    {
+        return "merged".equals(request.getParameter(PARAMETER_TIMELINE));
+    }
+
+    /**
+     * read merged timeline of tinylog writers
+     *
+     * @param writerNames tinylog writer names
+     * @param request search parameters, {@link LogEventsQuery#PARAMETER_CURSOR_PREFIX} followed by {@value #TIMELINE}
+     * contains cursor of next page
+     * @param consumer receives source (writer names) and combined log event, oldest first
+     * @return number of log events passed to consumer and cursor of next page
+     */
+    public static LogEventsResult read(List<String> writerNames, HttpServletRequest request, BiConsumer<String, OutputLogEvent> consumer)
+    {
+        List<LogEventsQuery> queries = writerNames.stream()
+                .map(w -> LogEventsQuery.of(w, request))
+                .filter(q -> q != null)
+                .collect(Collectors.toList());
+
+        return read(queries, LogEventsCursor.decode(request.getParameter(LogEventsQuery.PARAMETER_CURSOR_PREFIX + TIMELINE)), consumer);
+    }
+
+    /**
+     * read merged timeline of queries<br/>
+     * time range, search term and page size of first query are used for all queries
+     *
+     * @param queries queries of tinylog writers
+     * @param cursor cursor of next page or <code>null</code> for first page
+     * @param consumer receives source (writer names) and combined log event, oldest first
+     * @return number of log events passed to consumer and cursor of next page
+     */
+    public static LogEventsResult read(List<LogEventsQuery> queries, LogEventsCursor cursor, BiConsumer<String, OutputLogEvent> renderer)
+    {
+        if (queries.isEmpty())
+        {
+            return new LogEventsResult();
+        }
+
+        LogEventsQuery query = queries.get(0);
+        if (RollingStreamName.hasPattern(queries))
+        {
+            // one query per rolled log stream
+            long start = RequestTiming.start();
+            try (CloudWatchLogsClient logsClient = LogEventsReader.createLogsClient(query.writerName))
+            {
+                query.timing.add(RequestTiming.CLIENT, start);
+
+                start = RequestTiming.start();
+                queries = RollingStreamName.expand(logsClient, queries, cursor != null ? cursor.startTime : query.startTime,
+                                                   cursor != null ? cursor.endTime : query.endTime);
+                query.timing.add(RequestTiming.FETCH, start);
+            }
+
+            if (queries.isEmpty())
+            {
+                return new LogEventsResult();
+            }
+        }
+
+        final BiConsumer<String, OutputLogEvent> consumer = timed(query.timing, renderer);
+        if (query.limit > 0)
+        {
+            return readLatest(queries, consumer);
+        }
+
+        // log group -> log stream -> source
+        Map<String, Map<String, String>> logGroups = new LinkedHashMap<>();
+        for (LogEventsQuery q : queries)
+        {
+            String source = q.writerName.substring(q.writerName.indexOf('_') + 1);
+            logGroups.computeIfAbsent(q.logGroupAndStreamName.logGroupName, g -> new LinkedHashMap<>())
+                     .merge(q.logGroupAndStreamName.streamName, source, (s1, s2) -> s1 + ", " + s2);
+        }
+
+        List<Source> sources = new ArrayList<>();
+        logGroups.forEach((logGroupName, streams) -> {
+            List<String> streamNames = new ArrayList<>(streams.keySet());
+            for (int i = 0; i < streamNames.size(); i += MAX_STREAMS_PER_REQUEST)
+            {
+                Map<String, String> streamSources = new HashMap<>();
+                streamNames.subList(i, Math.min(streamNames.size(), i + MAX_STREAMS_PER_REQUEST))
+                           .forEach(s -> streamSources.put(s, streams.get(s)));
+                sources.add(new Source(sources.size(), logGroupName, streamSources));
+            }
+        });
+
+        final long start = RequestTiming.start();
+        try (CloudWatchLogsClient logsClient = LogEventsReader.createLogsClient(query.writerName))
+        {
+            query.timing.add(RequestTiming.CLIENT, start);
+
+            return merge(logsClient, query, cursor, sources, consumer);
+        }
+    }
+
+    /**
+     * read latest log events ({@link LogEventsQuery#limit}) of each log stream backwards, the newest of them are
+     * merged<br/>
+     * only limit log events per log stream are kept in memory, there is no next page
+     */
+    private static LogEventsResult readLatest(List<LogEventsQuery> queries, BiConsumer<String, OutputLogEvent> consumer)
+    {
+        final int limit = queries.get(0).limit;
+
+        // log group and stream -> query, source
+        Map<String, LogEventsQuery> streamQueries = new LinkedHashMap<>();
+        Map<String, String> streamSources = new HashMap<>();
+        for (LogEventsQuery q : queries)
+        {
+            String key = q.logGroupAndStreamName.logGroupName + '\n' + q.logGroupAndStreamName.streamName;
+            String source = q.writerName.substring(q.writerName.indexOf('_') + 1);
+            streamQueries.putIfAbsent(key, q);
+            streamSources.merge(key, source, (s1, s2) -> s1 + ", " + s2);
+        }
+
+        List<SourceEvent> events = new ArrayList<>();
+        streamQueries.forEach((key, q) -> {
+            String source = streamSources.get(key);
+            LogEventsReader.read(q, e -> events.add(new SourceEvent(source, e)));
+        });
+
+        // newest log events of all log streams, oldest first
+        events.sort(Comparator.comparingLong(e -> e.event.timestamp()));
+        List<SourceEvent> latest = events.subList(Math.max(0, events.size() - limit), events.size());
+        latest.forEach(e -> consumer.accept(e.source, e.event));
+
+        LogEventsResult result = new LogEventsResult();
+        result.count = latest.size();
+        result.budgetExceeded = queries.get(0).budget.isExceeded();
+
+        return result;
+    }
+
+    private static LogEventsResult merge(CloudWatchLogsClient logsClient, LogEventsQuery query, LogEventsCursor cursor, List<Source> sources, BiConsumer<String, OutputLogEvent> consumer)
+    {
+        final long startTime = cursor != null ? cursor.startTime : query.startTime;
+        final Long endTime = cursor != null ? cursor.endTime : query.endTime;
+        // number of log events with timestamp 'startTime' which have been passed on previous pages
+        long skip = cursor != null ? parseCount(cursor.token) : 0;
+
+        Util.log(Level.DEBUG, "merged timeline sources: %d", sources.size());
+
+        LogEventsResult result = new LogEventsResult();
+        // timestamp and number of passed log events with this timestamp, including previous pages
+        long lastTimestamp = startTime;
+        long sameTimestamp = skip;
+        ExecutorService executor = Threads.newTaskExecutor(MergedLogEventsTimeline.class.getSimpleName(), true);
+        try
+        {
+            PriorityQueue<Source> heads = new PriorityQueue<>(
+                    Comparator.comparingLong((Source s) -> s.head.event.timestamp()).thenComparingInt(s -> s.index));
+
+            for (Source source : sources)
+            {
+                source.future = executor.submit(() -> source.read(logsClient, query, startTime, endTime));
+            }
+
+            for (Source source : sources)
+            {
+                if (source.next())
+                {
+                    heads.add(source);
+                }
+            }
+
+            while (!heads.isEmpty())
+            {
+                Source source = heads.poll();
+                SourceEvent sourceEvent = source.head;
+
+                if (source.next())
+                {
+                    heads.add(source);
+                }
+
+                final long timestamp = sourceEvent.event.timestamp();
+                if (skip > 0 && timestamp == startTime)
+                {
+                    skip--;
+                    continue;
+                }
+
+                if (timestamp != lastTimestamp)
+                {
+                    // page ends between two timestamps, next page starts at last timestamp
+                    result.budgetExceeded = query.budget.isExceeded();
+                    if (result.budgetExceeded || (query.pageSize > 0 && result.count >= query.pageSize))
+                    {
+                        result.nextCursor = new LogEventsCursor(lastTimestamp, endTime, String.valueOf(sameTimestamp)).encode();
+                        break;
+                    }
+
+                    lastTimestamp = timestamp;
+                    sameTimestamp = 0;
+                }
+
+                sameTimestamp++;
+                result.count++;
+                consumer.accept(sourceEvent.source, sourceEvent.event);
+            }
+        }
+        finally
+        {
+            sources.stream()
+                   .filter(s -> s.future != null)
+                   .forEach(s -> s.future.cancel(true));
+            executor.shutdownNow();
+        }
+
+        if (result.nextCursor == null && query.budget.isExceeded())
+        {
+            // sources stopped reading, continue after last passed log event
+            result.budgetExceeded = true;
+            result.nextCursor = new LogEventsCursor(lastTimestamp, endTime, String.valueOf(sameTimestamp)).encode();
+        }
+
+        Util.log(Level.DEBUG, "merged timeline log events: %d", result.count);
+
+        return result;
+    }
+
+    /**
+     * @return consumer which adds the time of the consumer to phase {@link RequestTiming#RENDER}
+     */
+    private static BiConsumer<String, OutputLogEvent> timed(RequestTiming timing, BiConsumer<String, OutputLogEvent> consumer)
+    {
+        if (timing == RequestTiming.NONE)
+        {
+            return consumer;
+        }
+
+        return (source, e) -> {
+            final long start = RequestTiming.start();
+            consumer.accept(source, e);
+            timing.add(RequestTiming.RENDER, start);
+        };
+    }
+
+    private static long parseCount(String token)
+    {
+        try
+        {
+            return Math.max(0, Long.parseLong(token));
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    private static class SourceEvent
+    {
+        private final String source;
+        private final OutputLogEvent event;
+
+        SourceEvent(String source, OutputLogEvent event)
+        {
+            this.source = source;
+            this.event = event;
+        }
+    }
+
+    /**
+     * log streams of one log group, read by one {@code FilterLogEvents} call
+     */
+    private static class Source
+    {
+        private final int index;
+        private final String logGroupName;
+        /**
+         * log stream name -&gt; source (writer names)
+         */
+        private final Map<String, String> streamSources;
+        private final BlockingQueue<List<SourceEvent>> pages = new ArrayBlockingQueue<>(QUEUE_PAGES + 1);
+        private volatile RuntimeException error;
+        private Future<?> future;
+        private Iterator<SourceEvent> page = Collections.emptyIterator();
+        private SourceEvent head;
+        private boolean ended;
+
+        Source(int index, String logGroupName, Map<String, String> streamSources)
+        {
+            this.index = index;
+            this.logGroupName = logGroupName;
+            this.streamSources = streamSources;
+        }
+
+        /**
+         * read and combine log events of all log streams, executed by executor
+         */
+        void read(CloudWatchLogsClient logsClient, LogEventsQuery query, long startTime, Long endTime)
+        {
+            final String filterPattern = query.getFilterPattern();
+            final List<SourceEvent> buffer = new ArrayList<>();
+            final Map<String, OutputLogEventCombiner> combiners = new HashMap<>();
+            streamSources.forEach((streamName, source) -> combiners.put(streamName, new OutputLogEventCombiner(true, e -> {
+                if (query.matches(e))
+                {
+                    buffer.add(new SourceEvent(source, e));
+                }
+            })));
+
+            try
+            {
+                FilterLogEventsRequest.Builder builder = FilterLogEventsRequest.builder()
+                        .logGroupName(logGroupName)
+                        .logStreamNames(streamSources.keySet())
+                        .startTime(startTime)
+                        .limit(LogEventsReader.PAGE_LIMIT);
+
+                if (endTime != null)
+                {
+                    builder.endTime(endTime);
+                }
+
+                if (filterPattern != null)
+                {
+                    builder.filterPattern(filterPattern);
+                }
+
+                // log stream and timestamp of split log events which have been read completely
+                Set<String> partKeys = new HashSet<>();
+                String nextToken = null;
+                do
+                {
+                    final long start = RequestTiming.start();
+                    FilterLogEventsResponse response = logsClient.filterLogEvents(builder.nextToken(nextToken).build());
+                    query.timing.add(RequestTiming.FETCH, start);
+
+                    if (response.hasEvents())
+                    {
+                        List<FilteredLogEvent> events = new ArrayList<>(response.events());
+                        events.sort(Comparator.comparingLong(FilteredLogEvent::timestamp));
+
+                        for (FilteredLogEvent filteredEvent : events)
+                        {
+                            final long timestamp = filteredEvent.timestamp();
+                            // keep order of log events of all log streams
+                            combiners.values().forEach(c -> c.flush(timestamp));
+
+                            OutputLogEventCombiner combiner = combiners.get(filteredEvent.logStreamName());
+                            if (combiner == null)
+                            {
+                                continue;
+                            }
+
+                            if (filterPattern == null || !Util.isPartialMessage(filteredEvent.message()))
+                            {
+                                combiner.accept(LogEventsReader.toOutputLogEvent(filteredEvent));
+                            }
+                            else if (partKeys.add(filteredEvent.logStreamName() + '\n' + timestamp))
+                            {
+                                // read all parts, also not matching ones
+                                LogEventsReader.readPartialLogEvents(logsClient, logGroupName, filteredEvent.logStreamName(), timestamp, combiner::accept);
+                            }
+                        }
+                    }
+
+                    if (!buffer.isEmpty())
+                    {
+                        pages.put(new ArrayList<>(buffer));
+                        buffer.clear();
+                    }
+
+                    nextToken = response.nextToken();
+                }
+                // merged log events stop at next timestamp if budget is exceeded
+                while (nextToken != null && !query.budget.isExceeded());
+
+                combiners.values().forEach(OutputLogEventCombiner::flush);
+                if (!buffer.isEmpty())
+                {
+                    pages.put(new ArrayList<>(buffer));
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // cancelled
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (RuntimeException e)
+            {
+                error = e;
+            }
+
+            try
+            {
+                pages.put(END_OF_SOURCE);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * move to next log event, executed by caller
+         *
+         * @return <code>false</code> if all log events have been read
+         */
+        boolean next()
+        {
+            while (!page.hasNext())
+            {
+                if (ended)
+                {
+                    return false;
+                }
+
+                try
+                {
+                    List<SourceEvent> events = pages.take();
+                    if (events == END_OF_SOURCE)
+                    {
+                        ended = true;
+                        if (error != null)
+                        {
+                            throw error;
+                        }
+                        return false;
+                    }
+
+                    page = events.iterator();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("reading log events interrupted", e);
+                }
+            }
+
+            head = page.next();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package ch.eswitch.tinylog.writers;
+
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * part of a split log event<br/>
+ * split log entries get context {@value AwsCloudWatchLogsWriter#CONTEXT_KEY_MESSAGE_PART} with value
+ * <code>&lt;message id&gt;:&lt;part&gt;/&lt;total parts&gt;</code>, which is rendered by
+ * {@link AwsCloudWatchLogsJsonWriter} as first JSON attribute. The message id is unique per writing process, so
+ * parts of a split log event are found exactly, even if several processes write to the same log stream.<br/>
+ * <br/>
+ * Log events without this attribute (e.g. written by older versions) are recognized by the part marker
+ * <code>[n/m]</code> in JSON attribute {@value AwsCloudWatchLogsWriter#JSON_CONTEXT_ATTRIBUTE}, their parts are
+ * grouped by timestamp.
+ */
+class MessagePart
+{
+    /**
+     * random prefix of message ids of this process
+     */
+    private static final String ID_PREFIX = Long.toString(new SecureRandom().nextLong() >>> 16, 36);
+    private static final AtomicLong ID_COUNTER = new AtomicLong();
+    private static final char ID_SEPARATOR = ':';
+    private static final char TOTAL_SEPARATOR = '/';
+
+    /**
+     * message id, <code>null</code> if log event has only a part marker <code>[n/m]</code>
+     */
+    final String id;
+    /**
+     * part index, starting with 1, -1 if not a number
+     */
+    final int index;
+    /**
+     * total number of parts, -1 if not a number
+     */
+    final int total;
+
+    private MessagePart(String id, int index, int total)
+    {
+        this.id = id;
+        this.index = index;
+        this.total = total;
+    }
+
+    /**
+     * @return new compact message id, unique per process
+     */
+    static String createId()
+    {
+        return ID_PREFIX + '-' + Long.toString(ID_COUNTER.incrementAndGet(), 36);
+    }
+
+    /**
+     * @return value of context {@value AwsCloudWatchLogsWriter#CONTEXT_KEY_MESSAGE_PART}
+     */
+    static String format(String id, int index, int total)
+    {
+        return id + ID_SEPARATOR + index + TOTAL_SEPARATOR + total;
+    }
+
+    /**
+     * @param message log event message
+     * @return message part or <code>null</code> if log event is not split
+     */
+    static MessagePart of(String message)
+    {
+        if (message == null)
+        {
+            return null;
+        }
+
+        int[] valuePosition = findFrameValue(message);
+        if (valuePosition != null)
+        {
+            int posId = message.indexOf(ID_SEPARATOR, valuePosition[0]);
+            int posTotal = message.indexOf(TOTAL_SEPARATOR, posId + 1);
+            if (posId > valuePosition[0] && posTotal > posId && posTotal < valuePosition[1])
+            {
+                try
+                {
+                    return new MessagePart(message.substring(valuePosition[0], posId),
+                                           Integer.parseInt(message.substring(posId + 1, posTotal)),
+                                           Integer.parseInt(message.substring(posTotal + 1, valuePosition[1])));
+                }
+                catch (NumberFormatException ignored)
+                {
+                    // fall back to part marker
+                }
+            }
+        }
+
+        // part marker of older versions is only searched in context attribute, not in message text
+        int[] contextPosition = JsonFieldExtractor.findStringValues(message, AwsCloudWatchLogsWriter.JSON_CONTEXT_ATTRIBUTE);
+        if (contextPosition == null || contextPosition[0] < 0)
+        {
+            return null;
+        }
+
+        int[] part = Util.findMessagePart(message, contextPosition[0], contextPosition[1]);
+
+        return part != null ? new MessagePart(null, part[0], part[1]) : null;
+    }
+
+    /**
+     * @param event log event
+     * @return key of split log event, message id or timestamp if log event has no message id
+     */
+    Object getKey(OutputLogEvent event)
+    {
+        return id != null ? id : event.timestamp();
+    }
+
+    /**
+     * find value of JSON attribute {@value AwsCloudWatchLogsWriter#CONTEXT_KEY_MESSAGE_PART}, which must be the
+     * first attribute, so only the beginning of the message is read
+     *
+     * @return start (inclusive) and end (exclusive) position of value or <code>null</code> if not found
+     */
+    static int[] findFrameValue(String message)
+    {
+        int pos = skipWhitespace(message, 0);
+        if (pos >= message.length() || message.charAt(pos) != '{')
+        {
+            return null;
+        }
+
+        pos = skipWhitespace(message, pos + 1);
+        String key = '"' + AwsCloudWatchLogsWriter.CONTEXT_KEY_MESSAGE_PART + '"';
+        if (!message.startsWith(key, pos))
+        {
+            return null;
+        }
+
+        pos = skipWhitespace(message, pos + key.length());
+        if (pos >= message.length() || message.charAt(pos) != ':')
+        {
+            return null;
+        }
+
+        pos = skipWhitespace(message, pos + 1);
+        if (pos >= message.length() || message.charAt(pos) != '"')
+        {
+            return null;
+        }
+
+        int end = message.indexOf('"', pos + 1);
+
+        return end > pos ? new int[] { pos + 1, end } : null;
+    }
+
+    private static int skipWhitespace(String message, int pos)
+    {
+        while (pos < message.length() && Character.isWhitespace(message.charAt(pos)))
+        {
+            pos++;
+        }
+
+        return pos;
+    }
+}
@@ -0,0 +1,155 @@
+package ch.eswitch.tinylog.writers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * off-heap memory for queued log events of a writer, with a fixed byte budget<br/>
+ * messages are written UTF-8 encoded to direct {@link ByteBuffer} segments of {@value #SEGMENT_SIZE} bytes, one
+ * segment after the other. A segment is reused when all its messages have been released, so memory of queued log
+ * events is neither part of the heap nor scanned by the garbage collector.
+ */
+class OffHeapArena
+{
+    /**
+     * size of a segment, a message must fit into a segment
+     */
+    static final int SEGMENT_SIZE = 1024 * 1024;
+
+    private final int maxSegments;
+    private final Deque<Segment> freeSegments = new ArrayDeque<>();
+    private int segments;
+    private Segment current;
+
+    /**
+     * @param maxBytes byte budget, rounded up to segment size
+     */
+    OffHeapArena(long maxBytes)
+    {
+        this.maxSegments = (int) Math.max(1, (maxBytes + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+    }
+
+    /**
+     * copy message to off-heap memory
+     *
+     * @return slice of message, <code>null</code> if byte budget is exhausted
+     */
+    Slice allocate(long timestamp, String message)
+    {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > SEGMENT_SIZE)
+        {
+            return null;
+        }
+
+        synchronized (this)
+        {
+            if (current == null || current.position + bytes.length > SEGMENT_SIZE)
+            {
+                if (current != null && current.live == 0)
+                {
+                    current.position = 0;
+                }
+                else
+                {
+                    Segment segment = freeSegments.poll();
+                    if (segment == null)
+                    {
+                        if (segments >= maxSegments)
+                        {
+                            return null;
+                        }
+                        segment = new Segment();
+                        segments++;
+                    }
+                    // previous segment is freed by its last release
+                    current = segment;
+                }
+            }
+
+            ByteBuffer buffer = current.buffer.duplicate();
+            buffer.position(current.position);
+            buffer.put(bytes);
+
+            Slice slice = new Slice(current, current.position, bytes.length, timestamp);
+            current.position += bytes.length;
+            current.live++;
+
+            return slice;
+        }
+    }
+
+    /**
+     * @return message of slice, decoded from off-heap memory
+     */
+    String read(Slice slice)
+    {
+        byte[] bytes = new byte[slice.length];
+        ByteBuffer buffer = slice.segment.buffer.duplicate();
+        buffer.position(slice.offset);
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * release memory of a message, must be called once per slice
+     */
+    synchronized void release(Slice slice)
+    {
+        Segment segment = slice.segment;
+        segment.live--;
+        if (segment.live == 0 && segment != current)
+        {
+            segment.position = 0;
+            freeSegments.push(segment);
+        }
+    }
+
+    /**
+     * @return allocated off-heap memory in bytes
+     */
+    synchronized long getAllocatedBytes()
+    {
+        return (long) segments * SEGMENT_SIZE;
+    }
+
+    private static class Segment
+    {
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+        private int position;
+        /**
+         * number of messages which have not been released
+         */
+        private int live;
+    }
+
+    /**
+     * position of a message in off-heap memory
+     */
+    static class Slice
+    {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        final long timestamp;
+
+        private Slice(Segment segment, int offset, int length, long timestamp)
+        {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * @return size of UTF-8 encoded message
+         */
+        int getLength()
+        {
+            return length;
+        }
+    }
+}
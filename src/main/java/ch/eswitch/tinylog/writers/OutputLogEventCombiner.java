@@ -0,0 +1,155 @@
+package ch.eswitch.tinylog.writers;
+
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * incremental version of {@link Util#combineOutputLogEvents(List)}<br/>
+ * log events must be passed in timestamp order (ascending or descending), page by page.
+ * Partial messages of a split log event have the same timestamp, therefore a split log event is complete as soon as
+ * a log event with another timestamp is passed. Only partial messages of incomplete split log events are kept in
+ * memory.<br/>
+ * Parts with message id (see {@link MessagePart}) are grouped by message id, so parts of different log events with
+ * the same timestamp are not mixed.
+ */
+public class OutputLogEventCombiner
+{
+    private final boolean ascending;
+    private final Consumer<OutputLogEvent> consumer;
+    /**
+     * partial log events grouped by message id or timestamp, with message part index as key
+     */
+    private final Map<Object, Map<Integer, OutputLogEvent>> pendingParts = new LinkedHashMap<>();
+
+    /**
+     * @param ascending <code>true</code> if log events are passed in ascending timestamp order
+     * @param consumer receives combined log events in the same order
+     */
+    public OutputLogEventCombiner(boolean ascending, Consumer<OutputLogEvent> consumer)
+    {
+        this.ascending = ascending;
+        this.consumer = consumer;
+    }
+
+    /**
+     * pass next log event
+     *
+     * @param event log event as read from AWS CloudWatch
+     */
+    public void accept(OutputLogEvent event)
+    {
+        final long timestamp = event.timestamp();
+
+        if (!pendingParts.isEmpty())
+        {
+            flushPendingParts(timestamp);
+        }
+
+        MessagePart part = MessagePart.of(event.message());
+        if (part == null)
+        {
+            consumer.accept(event);
+            return;
+        }
+
+        final Object key = part.getKey(event);
+        Map<Integer, OutputLogEvent> parts = pendingParts.get(key);
+
+        if (parts != null && parts.containsKey(part.index))
+        {
+            // same part index twice - parts belong to different log events
+            pendingParts.remove(key);
+            parts.values().forEach(consumer);
+            parts = null;
+        }
+
+        if (parts == null)
+        {
+            parts = new HashMap<>();
+            pendingParts.put(key, parts);
+        }
+
+        parts.put(part.index, event);
+
+        if (parts.size() == part.total)
+        {
+            pendingParts.remove(key);
+            emit(parts);
+        }
+    }
+
+    /**
+     * pass all remaining partial log events to consumer<br/>
+     * must be called after last log event has been passed
+     */
+    public void flush()
+    {
+        new ArrayList<>(pendingParts.values()).forEach(this::emit);
+        pendingParts.clear();
+    }
+
+    /**
+     * pass partial log events of all split log events which are older (ascending order) or newer (descending order)
+     * than timestamp to consumer<br/>
+     * used if log events of several log streams are passed to several combiners
+     *
+     * @param timestamp timestamp of current log event
+     */
+    public void flush(long timestamp)
+    {
+        if (!pendingParts.isEmpty())
+        {
+            flushPendingParts(timestamp);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if partial log events of an incomplete split log event are kept
+     */
+    public boolean hasPendingParts()
+    {
+        return !pendingParts.isEmpty();
+    }
+
+    /**
+     * emit all split log events which can not get any further parts
+     *
+     * @param timestamp timestamp of current log event
+     */
+    private void flushPendingParts(long timestamp)
+    {
+        Iterator<Map<Integer, OutputLogEvent>> it = pendingParts.values().iterator();
+        while (it.hasNext())
+        {
+            Map<Integer, OutputLogEvent> parts = it.next();
+            // all parts have the same timestamp
+            long partsTimestamp = parts.values().iterator().next().timestamp();
+            if (ascending ? partsTimestamp < timestamp : partsTimestamp > timestamp)
+            {
+                it.remove();
+                emit(parts);
+            }
+        }
+    }
+
+    private void emit(Map<Integer, OutputLogEvent> parts)
+    {
+        OutputLogEvent combined = Util.combinePartialOutputLogEvents(parts);
+
+        if (combined != null)
+        {
+            consumer.accept(combined);
+        }
+        else
+        {
+            parts.values().forEach(consumer);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+
+import javax.servlet.ServletRequest;
+import java.util.regex.Pattern;
+
+/**
+ * time budget and cancellation of the queries of one viewer request<br/>
+ * readers check the budget at page boundaries and stop with a partial result and a cursor to continue
+ * ({@link LogEventsResult#budgetExceeded}), the request is cancelled if the client disconnects.<br/>
+ * <br/>
+ * Regular expressions are evaluated on a {@link CharSequence} which counts the character accesses of the matcher, so
+ * catastrophic backtracking is aborted after {@value #REGEX_STEPS_PER_CHAR} steps per character or when the budget is
+ * exceeded.
+ */
+class QueryBudget
+{
+    /**
+     * request attribute with budget of request
+     */
+    static final String ATTRIBUTE = QueryBudget.class.getName();
+    /**
+     * default time budget of viewer requests
+     */
+    static final long DEFAULT_MILLIS = 60 * 1000;
+    /**
+     * message of partial results
+     */
+    static final String PARTIAL_RESULTS = "partial results, budget exceeded";
+    /**
+     * maximum character accesses of a regular expression per character of the text
+     */
+    static final int REGEX_STEPS_PER_CHAR = 1000;
+    /**
+     * minimum character accesses of a regular expression, e.g. for short texts
+     */
+    static final int MIN_REGEX_STEPS = 100000;
+    /**
+     * character accesses between checks of the budget
+     */
+    private static final int CHECK_STEPS = 4096;
+
+    /**
+     * budget without time limit, e.g. live tail
+     */
+    static final QueryBudget UNLIMITED = new QueryBudget(0);
+
+    private static volatile long defaultMillis = DEFAULT_MILLIS;
+
+    /**
+     * end of budget ({@link System#currentTimeMillis()}), 0 if unlimited
+     */
+    private final long deadline;
+    private volatile boolean cancelled;
+
+    /**
+     * @param millis time budget, 0 for unlimited
+     */
+    QueryBudget(long millis)
+    {
+        this.deadline = millis > 0 ? System.currentTimeMillis() + millis : 0;
+    }
+
+    /**
+     * @param millis default time budget of viewer requests, 0 for unlimited
+     */
+    static void setDefaultMillis(long millis)
+    {
+        defaultMillis = Math.max(0, millis);
+    }
+
+    /**
+     * @return budget of request, a budget with the default time is created on first call
+     */
+    static QueryBudget of(ServletRequest request)
+    {
+        synchronized (request)
+        {
+            QueryBudget budget = (QueryBudget) request.getAttribute(ATTRIBUTE);
+            if (budget == null)
+            {
+                budget = new QueryBudget(defaultMillis);
+                request.setAttribute(ATTRIBUTE, budget);
+            }
+
+            return budget;
+        }
+    }
+
+    /**
+     * stop all queries of request, e.g. client disconnected
+     */
+    void cancel()
+    {
+        cancelled = true;
+    }
+
+    boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * @return <code>true</code> if request is cancelled or time budget is exceeded
+     */
+    boolean isExceeded()
+    {
+        return cancelled || (deadline > 0 && System.currentTimeMillis() > deadline);
+    }
+
+    /**
+     * @return <code>true</code> if the whole text matches the pattern, <code>false</code> if it does not match or the
+     * evaluation has been aborted
+     */
+    boolean matches(Pattern pattern, String text)
+    {
+        try
+        {
+            return pattern.matcher(new BoundedCharSequence(text)).matches();
+        }
+        catch (RegexAbortedException e)
+        {
+            Util.log(Level.DEBUG, "regular expression aborted: %s", pattern);
+            return false;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the pattern is found in the text, <code>false</code> if it is not found or the
+     * evaluation has been aborted
+     */
+    boolean find(Pattern pattern, String text)
+    {
+        try
+        {
+            return pattern.matcher(new BoundedCharSequence(text)).find();
+        }
+        catch (RegexAbortedException e)
+        {
+            Util.log(Level.DEBUG, "regular expression aborted: %s", pattern);
+            return false;
+        }
+    }
+
+    /**
+     * text which aborts the matcher after too many character accesses
+     */
+    private class BoundedCharSequence implements CharSequence
+    {
+        private final String text;
+        private long remainingSteps;
+        private int checkSteps = CHECK_STEPS;
+
+        BoundedCharSequence(String text)
+        {
+            this.text = text;
+            this.remainingSteps = Math.max(MIN_REGEX_STEPS, (long) REGEX_STEPS_PER_CHAR * text.length());
+        }
+
+        private BoundedCharSequence(String text, long remainingSteps)
+        {
+            this.text = text;
+            this.remainingSteps = remainingSteps;
+        }
+
+        @Override
+        public char charAt(int index)
+        {
+            if (--remainingSteps < 0)
+            {
+                throw new RegexAbortedException();
+            }
+            if (--checkSteps == 0)
+            {
+                checkSteps = CHECK_STEPS;
+                if (isExceeded())
+                {
+                    throw new RegexAbortedException();
+                }
+            }
+
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length()
+        {
+            return text.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end)
+        {
+            return new BoundedCharSequence(text.substring(start, end), remainingSteps);
+        }
+
+        @Override
+        public String toString()
+        {
+            return text;
+        }
+    }
+
+    /**
+     * evaluation of regular expression aborted, without stack trace
+     */
+    private static class RegexAbortedException extends RuntimeException
+    {
+        RegexAbortedException()
+        {
+            super(null, null, false, false);
+        }
+    }
+}
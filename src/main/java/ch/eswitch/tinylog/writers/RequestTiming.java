@@ -0,0 +1,217 @@
+package ch.eswitch.tinylog.writers;
+
+import com.google.gson.JsonObject;
+import org.tinylog.Level;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * time spent in the phases of one viewer request, sent as {@code Server-Timing} header<br/>
+ * phases of concurrent reads are summed up, so the sum of all phases may be greater than the duration of the request.
+ * The durations of all requests are aggregated in counters, see {@link #getTotals()}.<br/>
+ * <br/>
+ * Headers of streamed responses are sent before the log events are read, the timing is sent as trailer then (if
+ * supported by the connection).
+ */
+class RequestTiming
+{
+    /**
+     * request attribute with timing of request
+     */
+    static final String ATTRIBUTE = RequestTiming.class.getName();
+    static final String HEADER = "Server-Timing";
+    /**
+     * value of request parameter <code>outputType</code> for aggregated timing of all requests (JSON)
+     */
+    static final String OUTPUT_TYPE = "timing";
+
+    /**
+     * create AWS CloudWatch Logs client, incl. credentials
+     */
+    static final int CLIENT = 0;
+    /**
+     * AWS CloudWatch calls
+     */
+    static final int FETCH = 1;
+    /**
+     * read buckets of {@link LogEventsCache}, incl. loading missing buckets
+     */
+    static final int CACHE = 2;
+    /**
+     * combine split log events, without filter and render
+     */
+    static final int COMBINE = 3;
+    /**
+     * check search term
+     */
+    static final int FILTER = 4;
+    /**
+     * write log events to response
+     */
+    static final int RENDER = 5;
+
+    private static final String[] PHASES = { "client", "fetch", "cache", "combine", "filter", "render" };
+
+    /**
+     * timing of requests without viewer request, e.g. writer
+     */
+    static final RequestTiming NONE = new RequestTiming();
+
+    private static final AtomicLong TOTAL_REQUESTS = new AtomicLong();
+    private static final AtomicLongArray TOTAL_NANOS = new AtomicLongArray(PHASES.length);
+    private static final AtomicLongArray TOTAL_COUNTS = new AtomicLongArray(PHASES.length);
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray nanos = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray counts = new AtomicLongArray(PHASES.length);
+
+    /**
+     * @return timing of request, created on first call
+     */
+    static RequestTiming of(ServletRequest request)
+    {
+        synchronized (request)
+        {
+            RequestTiming timing = (RequestTiming) request.getAttribute(ATTRIBUTE);
+            if (timing == null)
+            {
+                timing = new RequestTiming();
+                request.setAttribute(ATTRIBUTE, timing);
+            }
+
+            return timing;
+        }
+    }
+
+    /**
+     * @return start time of a phase
+     */
+    static long start()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * add duration of a phase
+     *
+     * @param phase one of the phase constants
+     * @param startNanos result of {@link #start()}
+     */
+    void add(int phase, long startNanos)
+    {
+        if (this != NONE)
+        {
+            nanos.addAndGet(phase, System.nanoTime() - startNanos);
+            counts.incrementAndGet(phase);
+        }
+    }
+
+    /**
+     * @return time of phases which are executed while log events are combined (filter and render)
+     */
+    long getNestedNanos()
+    {
+        return nanos.get(FILTER) + nanos.get(RENDER);
+    }
+
+    /**
+     * add duration of a phase without nested phases, e.g. combiner calls filter and render
+     *
+     * @param nestedNanos result of {@link #getNestedNanos()} at start of phase
+     */
+    void addExclusive(int phase, long startNanos, long nestedNanos)
+    {
+        if (this != NONE)
+        {
+            long duration = System.nanoTime() - startNanos - (getNestedNanos() - nestedNanos);
+            nanos.addAndGet(phase, Math.max(0, duration));
+            counts.incrementAndGet(phase);
+        }
+    }
+
+    /**
+     * send timing as trailer of a streamed response, if response is committed before {@link #finish} is called
+     */
+    void setTrailer(HttpServletResponse resp)
+    {
+        try
+        {
+            resp.setTrailerFields(() -> Collections.singletonMap(HEADER, toHeader()));
+        }
+        catch (IllegalStateException | UnsupportedOperationException e)
+        {
+            // trailers not supported, e.g. HTTP/1.0
+        }
+    }
+
+    /**
+     * add durations to totals and set header if response is not committed yet
+     */
+    void finish(HttpServletResponse resp)
+    {
+        TOTAL_REQUESTS.incrementAndGet();
+        for (int i = 0; i < PHASES.length; i++)
+        {
+            TOTAL_NANOS.addAndGet(i, nanos.get(i));
+            TOTAL_COUNTS.addAndGet(i, counts.get(i));
+        }
+
+        String header = toHeader();
+        if (!resp.isCommitted())
+        {
+            resp.setHeader(HEADER, header);
+        }
+
+        Util.log(Level.DEBUG, "%s: %s", HEADER, header);
+    }
+
+    /**
+     * @return value of {@code Server-Timing} header, e.g. <code>fetch;dur=120.5;desc="3"</code>, the description
+     * contains the number of measurements
+     */
+    String toHeader()
+    {
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < PHASES.length; i++)
+        {
+            long count = counts.get(i);
+            if (count > 0)
+            {
+                header.append(PHASES[i])
+                      .append(";dur=").append(toMillis(nanos.get(i)))
+                      .append(";desc=\"").append(count).append("\", ");
+            }
+        }
+        header.append("total;dur=").append(toMillis(System.nanoTime() - startNanos));
+
+        return header.toString();
+    }
+
+    /**
+     * @return aggregated durations of all viewer requests: number of requests and count and milliseconds per phase
+     */
+    static JsonObject getTotals()
+    {
+        JsonObject totals = new JsonObject();
+        totals.addProperty("requests", TOTAL_REQUESTS.get());
+        for (int i = 0; i < PHASES.length; i++)
+        {
+            JsonObject phase = new JsonObject();
+            phase.addProperty("count", TOTAL_COUNTS.get(i));
+            phase.addProperty("millis", TOTAL_NANOS.get(i) / 1000000);
+            totals.add(PHASES[i], phase);
+        }
+
+        return totals;
+    }
+
+    private static String toMillis(long nanos)
+    {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000000.0);
+    }
+}
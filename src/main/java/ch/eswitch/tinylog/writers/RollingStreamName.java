@@ -0,0 +1,581 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.DescribeLogStreamsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.DescribeLogStreamsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.LogStream;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OrderBy;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * rolling log stream name, like the file name of tinylog's rolling file writer<br/>
+ * the stream name of the writer configuration is a pattern with placeholders:
+ * <ul>
+ *     <li><code>{date}</code>, <code>{date:yyyy-MM-dd-HH}</code>: start of current period (default
+ *     <code>yyyy-MM-dd</code>)</li>
+ *     <li><code>{start}</code>, <code>{start:yyyyMMddHHmmss}</code>: start time of writer (default
+ *     <code>yyyyMMddHHmmss</code>)</li>
+ *     <li><code>{hostname}</code>, <code>{pid}</code>: host name and process id</li>
+ *     <li><code>{count}</code>: number of rollovers since start of writer</li>
+ * </ul>
+ * Routing placeholders of {@link DestinationRouter} are resolved by the writer before, the viewer reads the log streams
+ * of all routes.<br/>
+ * Property {@value #PROPERTY_POLICIES} contains comma separated rollover policies: <code>hourly</code>,
+ * <code>daily</code>, <code>size: 100mb</code> (bytes of messages) and <code>events: 100000</code>.<br/>
+ * <br/>
+ * All parts of a split log event are put to the same log stream. The next log stream is announced by
+ * {@link #getStreamNameAhead()} before the rollover, so it can be created in advance.<br/>
+ * The viewer reads the log streams matching the pattern whose log events overlap the time range, see
+ * {@link #findStreamNames(CloudWatchLogsClient, LogGroupAndStreamName, long, Long)}.
+ */
+class RollingStreamName
+{
+    /**
+     * property name in tinylog configuration for rollover policies
+     */
+    static final String PROPERTY_POLICIES = "policies";
+    /**
+     * fraction of period or size after which the next log stream is announced
+     */
+    static final double AHEAD_FRACTION = 0.8;
+    /**
+     * tolerance for times of log stream metadata, last event timestamp is updated eventually (within an hour)
+     */
+    static final long METADATA_LAG_MILLIS = 60 * 60 * 1000;
+    /**
+     * time found log streams of a pattern are reused
+     */
+    static final long STREAMS_CACHE_MILLIS = 60 * 1000;
+    /**
+     * maximum number of {@code DescribeLogStreams} calls to find log streams of a pattern
+     */
+    static final int MAX_DESCRIBE_PAGES = 20;
+    /**
+     * maximum number of log streams per {@code DescribeLogStreams} call
+     */
+    static final int DESCRIBE_LIMIT = 50;
+
+    private static final String DEFAULT_DATE_PATTERN = "yyyy-MM-dd";
+    private static final String DEFAULT_START_PATTERN = "yyyyMMddHHmmss";
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    /**
+     * found log streams with log group and pattern as key
+     */
+    private static final Map<String, FoundStreams> FOUND_STREAMS = new ConcurrentHashMap<>();
+
+    private final String pattern;
+    private final List<Object> segments = new ArrayList<>();
+    private final ChronoUnit period;
+    private final long maxBytes;
+    private final long maxEvents;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final long startTime = System.currentTimeMillis();
+
+    private long periodStart = -1;
+    private int count;
+    private long bytes;
+    private long events;
+    private String streamName;
+
+    /**
+     * @param pattern stream name with placeholders
+     * @param policies comma separated rollover policies or <code>null</code>
+     */
+    RollingStreamName(String pattern, String policies)
+    {
+        this.pattern = pattern;
+        parse(pattern, segments);
+
+        ChronoUnit period = null;
+        long maxBytes = UNLIMITED;
+        long maxEvents = UNLIMITED;
+        if (policies != null)
+        {
+            for (String policy : policies.split(","))
+            {
+                String[] nameAndValue = policy.split(":", 2);
+                String name = nameAndValue[0].trim().toLowerCase(Locale.ROOT);
+                String value = nameAndValue.length > 1 ? nameAndValue[1].trim().toLowerCase(Locale.ROOT) : "";
+                switch (name)
+                {
+                    case "hourly":
+                        period = ChronoUnit.HOURS;
+                        break;
+                    case "daily":
+                        period = period != ChronoUnit.HOURS ? ChronoUnit.DAYS : period;
+                        break;
+                    case "size":
+                        maxBytes = parseSize(value);
+                        break;
+                    case "events":
+                        maxEvents = Long.parseLong(value);
+                        break;
+                    case "":
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown rollover policy: " + policy);
+                }
+            }
+        }
+        this.period = period;
+        this.maxBytes = maxBytes;
+        this.maxEvents = maxEvents;
+    }
+
+    /**
+     * @return <code>true</code> if stream name contains placeholders
+     */
+    static boolean isPattern(String streamName)
+    {
+        return streamName != null && streamName.indexOf('{') >= 0;
+    }
+
+    /**
+     * @return <code>true</code> if one of the queries has a rolling stream name
+     */
+    static boolean hasPattern(List<LogEventsQuery> queries)
+    {
+        return queries.stream().anyMatch(q -> isPattern(q.logGroupAndStreamName.streamName));
+    }
+
+    /**
+     * get log stream of log events, rolls over if a policy is reached<br/>
+     * log events of one call are put to the same log stream
+     *
+     * @param timestamp timestamp of log events
+     * @param eventBytes size of log events
+     * @param eventCount number of log events
+     * @return log stream name
+     */
+    synchronized String getStreamName(long timestamp, long eventBytes, int eventCount)
+    {
+        long currentPeriodStart = getPeriodStart(timestamp);
+        boolean rollover = streamName == null
+                || currentPeriodStart != periodStart
+                || (bytes > 0 && bytes + eventBytes > maxBytes)
+                || (events > 0 && events + eventCount > maxEvents);
+
+        if (rollover)
+        {
+            if (streamName != null)
+            {
+                count++;
+            }
+            periodStart = currentPeriodStart;
+            bytes = 0;
+            events = 0;
+            streamName = format(periodStart, count);
+
+            Util.log(Level.DEBUG, "rollover log stream: %s", streamName);
+        }
+
+        bytes += eventBytes;
+        events += eventCount;
+
+        return streamName;
+    }
+
+    /**
+     * @return name of next log stream if rollover is near (e.g. 80% of period or size), otherwise <code>null</code>
+     */
+    synchronized String getStreamNameAhead()
+    {
+        if (streamName == null)
+        {
+            return null;
+        }
+
+        if (period != null)
+        {
+            long nextPeriodStart = getNextPeriodStart(periodStart);
+            if (System.currentTimeMillis() >= periodStart + (long) ((nextPeriodStart - periodStart) * AHEAD_FRACTION))
+            {
+                return format(nextPeriodStart, count + 1);
+            }
+        }
+
+        if ((maxBytes != UNLIMITED && bytes >= maxBytes * AHEAD_FRACTION) || (maxEvents != UNLIMITED && events >= maxEvents * AHEAD_FRACTION))
+        {
+            return format(periodStart, count + 1);
+        }
+
+        return null;
+    }
+
+    private long getPeriodStart(long timestamp)
+    {
+        if (period == null)
+        {
+            return 0;
+        }
+
+        return Instant.ofEpochMilli(timestamp).atZone(zone).truncatedTo(period).toInstant().toEpochMilli();
+    }
+
+    private long getNextPeriodStart(long periodStart)
+    {
+        return Instant.ofEpochMilli(periodStart).atZone(zone).plus(1, period).toInstant().toEpochMilli();
+    }
+
+    /**
+     * @return stream name of period and rollover count
+     */
+    String format(long periodStart, int count)
+    {
+        StringBuilder name = new StringBuilder();
+        for (Object segment : segments)
+        {
+            if (segment instanceof Placeholder)
+            {
+                name.append(((Placeholder) segment).format(this, periodStart, count));
+            }
+            else
+            {
+                name.append(segment);
+            }
+        }
+
+        return name.toString();
+    }
+
+    /**
+     * @return literal text before first placeholder
+     */
+    String getPrefix()
+    {
+        return !segments.isEmpty() && segments.get(0) instanceof String ? (String) segments.get(0) : "";
+    }
+
+    /**
+     * @return regular expression matching all stream names of pattern
+     */
+    Pattern getNamePattern()
+    {
+        StringBuilder regex = new StringBuilder();
+        for (Object segment : segments)
+        {
+            if (segment instanceof Placeholder)
+            {
+                regex.append(((Placeholder) segment).name.equals("count") || ((Placeholder) segment).name.equals("pid") ? "\\d+" : ".+?");
+            }
+            else
+            {
+                regex.append(Pattern.quote((String) segment));
+            }
+        }
+
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * find log streams of a rolling stream name whose log events may overlap a time range<br/>
+     * log streams of a pattern are described once per {@value #STREAMS_CACHE_MILLIS} ms, or again if the time range
+     * starts before the found log streams
+     *
+     * @param logGroupAndStreamName log group and stream name pattern
+     * @param startTime start of time range
+     * @param endTime end of time range or <code>null</code> for now
+     * @return stream names, oldest log stream first
+     */
+    static List<String> findStreamNames(CloudWatchLogsClient logsClient, LogGroupAndStreamName logGroupAndStreamName, long startTime, Long endTime)
+    {
+        final String key = logGroupAndStreamName.logGroupName + '\n' + logGroupAndStreamName.streamName;
+        final long now = System.currentTimeMillis();
+
+        FoundStreams found = FOUND_STREAMS.get(key);
+        if (found == null || found.time + STREAMS_CACHE_MILLIS < now || found.startTime > startTime)
+        {
+            found = describeLogStreams(logsClient, logGroupAndStreamName, now, startTime);
+            FOUND_STREAMS.put(key, found);
+        }
+
+        final long end = endTime != null ? endTime : now;
+        List<String> streamNames = new ArrayList<>();
+        for (LogStream logStream : found.logStreams)
+        {
+            long first = logStream.firstEventTimestamp() != null ? logStream.firstEventTimestamp() : logStream.creationTime();
+            long last = Math.max(logStream.lastEventTimestamp() != null ? logStream.lastEventTimestamp() : 0,
+                                 logStream.lastIngestionTime() != null ? logStream.lastIngestionTime() : logStream.creationTime());
+            if (first <= end && last + METADATA_LAG_MILLIS >= startTime)
+            {
+                streamNames.add(logStream.logStreamName());
+            }
+        }
+
+        Util.log(Level.DEBUG, "log streams of %s: %d", logGroupAndStreamName.streamName, streamNames.size());
+
+        return streamNames;
+    }
+
+    /**
+     * describe log streams matching the pattern<br/>
+     * without literal prefix all log streams of the log group are described, newest event first, until the last event
+     * of a log stream is before the start time
+     */
+    private static FoundStreams describeLogStreams(CloudWatchLogsClient logsClient, LogGroupAndStreamName logGroupAndStreamName, long now, long startTime)
+    {
+        RollingStreamName rollingStreamName = new RollingStreamName(logGroupAndStreamName.streamName, null);
+        Pattern namePattern = rollingStreamName.getNamePattern();
+        String prefix = rollingStreamName.getPrefix();
+
+        DescribeLogStreamsRequest.Builder builder = DescribeLogStreamsRequest.builder()
+                .logGroupName(logGroupAndStreamName.logGroupName)
+                .limit(DESCRIBE_LIMIT);
+        if (!prefix.isEmpty())
+        {
+            builder.logStreamNamePrefix(prefix);
+        }
+        else
+        {
+            // prefix and order by last event time cannot be combined
+            builder.orderBy(OrderBy.LAST_EVENT_TIME).descending(true);
+        }
+
+        List<LogStream> logStreams = new ArrayList<>();
+        long foundStartTime = Long.MIN_VALUE;
+        String nextToken = null;
+        int pages = 0;
+        do
+        {
+            DescribeLogStreamsResponse response = logsClient.describeLogStreams(builder.nextToken(nextToken).build());
+            pages++;
+            nextToken = response.nextToken();
+
+            if (response.hasLogStreams())
+            {
+                for (LogStream logStream : response.logStreams())
+                {
+                    if (prefix.isEmpty() && logStream.lastEventTimestamp() != null
+                            && logStream.lastEventTimestamp() + METADATA_LAG_MILLIS < startTime)
+                    {
+                        // all further log streams ended before start time
+                        foundStartTime = startTime;
+                        nextToken = null;
+                        break;
+                    }
+
+                    if (logStream.creationTime() != null && namePattern.matcher(logStream.logStreamName()).matches())
+                    {
+                        logStreams.add(logStream);
+                    }
+                }
+            }
+        }
+        while (nextToken != null && pages < MAX_DESCRIBE_PAGES);
+
+        if (nextToken != null)
+        {
+            Util.log(Level.WARN, "log streams of %s truncated after %d log streams", logGroupAndStreamName.streamName, pages * DESCRIBE_LIMIT);
+        }
+
+        logStreams.sort(Comparator.comparingLong(LogStream::creationTime));
+
+        return new FoundStreams(now, foundStartTime, logStreams);
+    }
+
+    /**
+     * replace queries of rolling stream names by one query per log stream in time range
+     *
+     * @param startTime start of time range, e.g. of cursor
+     * @param endTime end of time range or <code>null</code> for now
+     */
+    static List<LogEventsQuery> expand(CloudWatchLogsClient logsClient, List<LogEventsQuery> queries, long startTime, Long endTime)
+    {
+        List<LogEventsQuery> expanded = new ArrayList<>();
+        for (LogEventsQuery query : queries)
+        {
+            if (!isPattern(query.logGroupAndStreamName.streamName))
+            {
+                expanded.add(query);
+                continue;
+            }
+
+            for (String streamName : findStreamNames(logsClient, query.logGroupAndStreamName, startTime, endTime))
+            {
+                expanded.add(query.copy(new LogGroupAndStreamName(query.logGroupAndStreamName.logGroupName, streamName)));
+            }
+        }
+
+        return expanded;
+    }
+
+    private static void parse(String pattern, List<Object> segments)
+    {
+        int pos = 0;
+        while (pos < pattern.length())
+        {
+            int start = pattern.indexOf('{', pos);
+            if (start < 0)
+            {
+                segments.add(pattern.substring(pos));
+                break;
+            }
+
+            int end = pattern.indexOf('}', start);
+            if (end < 0)
+            {
+                throw new IllegalArgumentException("missing '}' in stream name: " + pattern);
+            }
+
+            if (start > pos)
+            {
+                segments.add(pattern.substring(pos, start));
+            }
+            segments.add(new Placeholder(pattern.substring(start + 1, end)));
+            pos = end + 1;
+        }
+    }
+
+    /**
+     * @param size size with optional unit, e.g. <code>10mb</code>
+     */
+    private static long parseSize(String size)
+    {
+        long factor = 1;
+        String number = size;
+        if (size.endsWith("kb"))
+        {
+            factor = 1024;
+        }
+        else if (size.endsWith("mb"))
+        {
+            factor = 1024 * 1024;
+        }
+        else if (size.endsWith("gb"))
+        {
+            factor = 1024 * 1024 * 1024;
+        }
+
+        if (factor > 1)
+        {
+            number = size.substring(0, size.length() - 2);
+        }
+
+        return Long.parseLong(number.trim()) * factor;
+    }
+
+    /**
+     * placeholder of stream name pattern, e.g. <code>{date:yyyy-MM-dd}</code>
+     */
+    private static class Placeholder
+    {
+        private final String name;
+        private final DateTimeFormatter formatter;
+
+        Placeholder(String placeholder)
+        {
+            String[] nameAndPattern = placeholder.split(":", 2);
+            name = nameAndPattern[0].trim();
+
+            switch (name)
+            {
+                case "date":
+                    formatter = DateTimeFormatter.ofPattern(nameAndPattern.length > 1 ? nameAndPattern[1] : DEFAULT_DATE_PATTERN);
+                    break;
+                case "start":
+                    formatter = DateTimeFormatter.ofPattern(nameAndPattern.length > 1 ? nameAndPattern[1] : DEFAULT_START_PATTERN);
+                    break;
+                case "hostname":
+                case "pid":
+                case "count":
+                    formatter = null;
+                    break;
+                default:
+                    if (!DestinationRouter.isRoutingPlaceholder(placeholder))
+                    {
+                        throw new IllegalArgumentException("unknown placeholder in stream name: {" + placeholder + "}");
+                    }
+                    // resolved by writer, any value for viewer
+                    formatter = null;
+            }
+        }
+
+        String format(RollingStreamName rollingStreamName, long periodStart, int count)
+        {
+            switch (name)
+            {
+                case "date":
+                    long time = rollingStreamName.period != null ? periodStart : System.currentTimeMillis();
+                    return formatter.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(time), rollingStreamName.zone));
+                case "start":
+                    return formatter.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(rollingStreamName.startTime), rollingStreamName.zone));
+                case "hostname":
+                    return LocalProcess.HOST_NAME;
+                case "pid":
+                    return LocalProcess.PROCESS_ID;
+                case "count":
+                    return String.valueOf(count);
+                default:
+                    throw new IllegalStateException("routing placeholder not resolved: {" + name + "}");
+            }
+        }
+    }
+
+    /**
+     * host name and process id, resolved once on first use (the host name lookup may block on DNS)
+     */
+    private static class LocalProcess
+    {
+        private static final String HOST_NAME = getHostName();
+        private static final String PROCESS_ID = getProcessId();
+
+        private static String getHostName()
+        {
+            try
+            {
+                return InetAddress.getLocalHost().getHostName();
+            }
+            catch (UnknownHostException e)
+            {
+                String hostName = System.getenv("HOSTNAME");
+                return hostName != null ? hostName : "localhost";
+            }
+        }
+
+        private static String getProcessId()
+        {
+            // <pid>@<hostname>
+            String name = ManagementFactory.getRuntimeMXBean().getName();
+            int at = name.indexOf('@');
+
+            return at > 0 ? name.substring(0, at) : name;
+        }
+    }
+
+    /**
+     * log streams of a pattern, oldest first
+     */
+    private static class FoundStreams
+    {
+        private final long time;
+        /**
+         * log streams ended before this time are not found, {@link Long#MIN_VALUE} if all log streams are found
+         */
+        private final long startTime;
+        private final List<LogStream> logStreams;
+
+        FoundStreams(long time, long startTime, List<LogStream> logStreams)
+        {
+            this.time = time;
+            this.startTime = startTime;
+            this.logStreams = logStreams;
+        }
+    }
+}
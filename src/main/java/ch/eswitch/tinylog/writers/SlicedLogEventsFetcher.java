@@ -0,0 +1,255 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * reads log events of one log stream in parallel<br/>
+ * the time range is split into slices which are read concurrently, log events are passed to the consumer in order
+ * (newest first), slice by slice. Each slice buffers at most {@value #QUEUE_PAGES} pages, so memory usage does not
+ * depend on the time range.<br/>
+ * <br/>
+ * Slices are half-open intervals in milliseconds. Partial messages of a split log event have the same timestamp,
+ * therefore a split log event is never spread over two slices.
+ */
+class SlicedLogEventsFetcher
+{
+    /**
+     * default number of concurrently read slices
+     */
+    static final int DEFAULT_CONCURRENCY = 4;
+    /**
+     * maximum number of concurrent {@code GetLogEvents} calls of all viewer requests<br/>
+     * see <a href="https://docs.aws.amazon.com/AmazonCloudWatch/latest/logs/cloudwatch_limits_cwl.html" target="_blank">CloudWatch Logs quotas</a>
+     */
+    static final int MAX_CONCURRENT_REQUESTS = 10;
+    /**
+     * number of slices per concurrently read slice, small slices balance the load
+     */
+    static final int SLICES_PER_THREAD = 4;
+    /**
+     * minimum time range of a slice
+     */
+    static final long MIN_SLICE_MILLIS = 60 * 1000;
+    /**
+     * log events with timestamps up to this time in the future are read if no end time is set
+     */
+    static final long END_TIME_OFFSET_MILLIS = 5 * 60 * 1000;
+    /**
+     * number of pages a slice reads ahead
+     */
+    static final int QUEUE_PAGES = 2;
+
+    private static final Semaphore REQUEST_PERMITS = new Semaphore(MAX_CONCURRENT_REQUESTS, true);
+    private static final List<OutputLogEvent> END_OF_SLICE = Collections.emptyList();
+
+    private final CloudWatchLogsClient logsClient;
+    private final LogEventsQuery query;
+    private final int concurrency;
+
+    /**
+     * @param concurrency number of slices read concurrently
+     */
+    SlicedLogEventsFetcher(CloudWatchLogsClient logsClient, LogEventsQuery query, int concurrency)
+    {
+        this.logsClient = logsClient;
+        this.query = query;
+        this.concurrency = Math.max(1, Math.min(concurrency, MAX_CONCURRENT_REQUESTS));
+    }
+
+    /**
+     * read all log events of query, newest first
+     *
+     * @param consumer receives log events (not combined and not filtered)
+     * @return number of pages read
+     */
+    int fetch(Consumer<OutputLogEvent> consumer)
+    {
+        final long endTime = query.endTime != null ? query.endTime : System.currentTimeMillis() + END_TIME_OFFSET_MILLIS;
+        final long range = endTime - query.startTime;
+        final int sliceCount = (int) Math.max(1, Math.min(range / MIN_SLICE_MILLIS, (long) concurrency * SLICES_PER_THREAD));
+        final long sliceMillis = (range + sliceCount - 1) / sliceCount;
+
+        Util.log(Level.DEBUG, "slices: %d, concurrency: %d", sliceCount, concurrency);
+
+        List<Slice> slices = new ArrayList<>(sliceCount);
+        for (int i = 0; i < sliceCount; i++)
+        {
+            // newest slice first
+            long sliceEnd = endTime - i * sliceMillis;
+            if (sliceEnd <= query.startTime)
+            {
+                break;
+            }
+            slices.add(new Slice(Math.max(query.startTime, sliceEnd - sliceMillis), sliceEnd));
+        }
+
+        // at most 'concurrency' slices are submitted at the same time
+        ExecutorService executor = Threads.newTaskExecutor(SlicedLogEventsFetcher.class.getSimpleName(), true);
+        int pages = 0;
+        try
+        {
+            int submitted = 0;
+            for (int i = 0; i < slices.size(); i++)
+            {
+                // sliding window of concurrently read slices
+                while (submitted < slices.size() && submitted < i + concurrency)
+                {
+                    Slice slice = slices.get(submitted++);
+                    slice.future = executor.submit(slice::read);
+                }
+
+                pages += slices.get(i).drain(consumer);
+                if (query.budget.isExceeded())
+                {
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            slices.stream()
+                  .filter(s -> s.future != null)
+                  .forEach(s -> s.future.cancel(true));
+            executor.shutdownNow();
+        }
+
+        return pages;
+    }
+
+    private class Slice
+    {
+        private final long startTime;
+        private final long endTime;
+        private final BlockingQueue<List<OutputLogEvent>> pages = new ArrayBlockingQueue<>(QUEUE_PAGES + 1);
+        private volatile RuntimeException error;
+        private Future<?> future;
+
+        Slice(long startTime, long endTime)
+        {
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        /**
+         * read pages of slice backwards, executed by executor
+         */
+        void read()
+        {
+            try
+            {
+                GetLogEventsRequest.Builder builder = GetLogEventsRequest.builder()
+                        .logGroupName(query.logGroupAndStreamName.logGroupName)
+                        .logStreamName(query.logGroupAndStreamName.streamName)
+                        .startFromHead(false)
+                        .startTime(startTime)
+                        .endTime(endTime)
+                        .limit(LogEventsReader.PAGE_LIMIT);
+
+                String nextToken = null;
+                while (true)
+                {
+                    GetLogEventsResponse response;
+                    REQUEST_PERMITS.acquire();
+                    try
+                    {
+                        final long start = RequestTiming.start();
+                        response = logsClient.getLogEvents(builder.nextToken(nextToken).build());
+                        query.timing.add(RequestTiming.FETCH, start);
+                    }
+                    finally
+                    {
+                        REQUEST_PERMITS.release();
+                    }
+
+                    if (response.hasEvents())
+                    {
+                        List<OutputLogEvent> events = new ArrayList<>(response.events());
+                        Collections.reverse(events);
+                        pages.put(events);
+                    }
+
+                    String backwardToken = response.nextBackwardToken();
+                    if (backwardToken == null || backwardToken.equals(nextToken))
+                    {
+                        break;
+                    }
+
+                    nextToken = backwardToken;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // cancelled
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (RuntimeException e)
+            {
+                error = e;
+            }
+
+            try
+            {
+                pages.put(END_OF_SLICE);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * pass all log events of slice to consumer, executed by caller
+         *
+         * @return number of pages
+         */
+        int drain(Consumer<OutputLogEvent> consumer)
+        {
+            int count = 0;
+            try
+            {
+                List<OutputLogEvent> events;
+                while ((events = pages.take()) != END_OF_SLICE)
+                {
+                    count++;
+                    final long start = RequestTiming.start();
+                    final long nested = query.timing.getNestedNanos();
+                    events.forEach(consumer);
+                    query.timing.addExclusive(RequestTiming.COMBINE, start, nested);
+
+                    if (query.budget.isExceeded())
+                    {
+                        // remaining slices are cancelled
+                        return count;
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("reading log events interrupted", e);
+            }
+
+            if (error != null)
+            {
+                throw error;
+            }
+
+            return count;
+        }
+    }
+}
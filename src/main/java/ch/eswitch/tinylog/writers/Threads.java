@@ -0,0 +1,45 @@
+package ch.eswitch.tinylog.writers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * threads of writer (senders) and viewer (concurrent reads of log events)<br/>
+ * this version uses platform threads, the multi-release jar contains a version for Java 21 and newer with virtual
+ * threads (<code>src/main/java21</code>) for daemon threads, so blocking AWS SDK calls do not need a platform thread
+ * each. Non-daemon threads, e.g. the sender of the writer, are platform threads in both versions.
+ */
+final class Threads
+{
+    private Threads()
+    {
+    }
+
+    /**
+     * @param name thread name prefix, followed by a number
+     * @param daemon <code>true</code> for daemon threads (virtual threads on Java 21 and newer)
+     * @return factory of platform threads
+     */
+    static ThreadFactory factory(String name, boolean daemon)
+    {
+        final AtomicInteger threadNumber = new AtomicInteger();
+
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+
+    /**
+     * @param name thread name prefix, followed by a number
+     * @param daemon <code>true</code> for daemon threads (virtual threads on Java 21 and newer)
+     * @return executor for short blocking tasks, idle platform threads are reused
+     */
+    static ExecutorService newTaskExecutor(String name, boolean daemon)
+    {
+        return Executors.newCachedThreadPool(factory(name, daemon));
+    }
+}
@@ -1,33 +1,38 @@
 package ch.eswitch.tinylog.writers;
 
-import jakarta.json.Json;
-import jakarta.json.JsonObject;
-import jakarta.json.JsonReader;
-import jakarta.json.JsonString;
 import org.tinylog.Level;
+import org.tinylog.configuration.Configuration;
 import org.tinylog.core.LogEntry;
 import org.tinylog.provider.InternalLogger;
 import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
 
-import java.io.StringReader;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class Util
 {
 
-    private static final String PARTIAL_MESSAGE_PATTERN_REGEX = "\\[(\\d*)/(\\d*)\\]";
-
-    private static final Pattern PARTIAL_MESSAGE_PATTERN = Pattern.compile(PARTIAL_MESSAGE_PATTERN_REGEX);
     private static final String[] JSON_ATTRIBUTE_NAMES_MESSAGE = new String[] { AwsCloudWatchLogsWriter.JSON_MESSAGE_ATTRIBUTE };
-    private static LocalDateTime lastLogMessage;
+    private static final String[] JSON_ATTRIBUTE_NAMES_MESSAGE_CONTEXT = new String[] {
+            AwsCloudWatchLogsWriter.JSON_MESSAGE_ATTRIBUTE,
+            AwsCloudWatchLogsWriter.JSON_CONTEXT_ATTRIBUTE };
+    private static final int REPLACE_MESSAGE = 0;
+    private static final int REPLACE_CONTEXT = 1;
+    private static final int REPLACE_MESSAGE_PART = 2;
+    private static final char CONTEXT_PART_END = AwsCloudWatchLogsWriter.CONTEXT_PART_FORMAT.charAt(AwsCloudWatchLogsWriter.CONTEXT_PART_FORMAT.length() - 1);
+    /**
+     * tinylog configuration property with minimum level of internal diagnostics, see {@link #log(Level, String, Object...)}
+     */
+    public static final String PROPERTY_INTERNAL_LEVEL = "awscloudwatch.level";
+    /**
+     * time of last internal diagnostic message per thread
+     */
+    private static final ThreadLocal<LocalDateTime> lastLogMessage = new ThreadLocal<>();
+    private static volatile Level internalLevel;
 
     /**
      * split long entry with large message into log entries with partial message<br/>
@@ -40,6 +45,7 @@ public class Util
         final String msg = logEntry.getMessage();
 
         final int totalParts = (int) Math.ceil((double) msg.length() / (double) AwsCloudWatchLogsWriter.MAX_MESSAGE_SIZE);
+        final String messageId = MessagePart.createId();
 
         ArrayList<LogEntry> logEntries = new ArrayList<>(totalParts);
         int start = 0;
@@ -49,7 +55,7 @@ public class Util
             String msgPart = msg.substring(start, end);
             start = end;
 
-            logEntries.add(copyLogEntry(logEntry, msgPart, part, totalParts));
+            logEntries.add(copyLogEntry(logEntry, msgPart, messageId, part, totalParts));
         }
 
         return logEntries;
@@ -67,14 +73,36 @@ public class Util
      * @return copied log entry
      */
     static LogEntry copyLogEntry(LogEntry logEntry, String msgPart, int part, int totalParts)
+    {
+        return copyLogEntry(logEntry, msgPart, null, part, totalParts);
+    }
+
+    /**
+     * create a new log entry based on existing log entry<br/>
+     * if message id is set, context with key {@value AwsCloudWatchLogsWriter#CONTEXT_KEY_MESSAGE_PART} is added as
+     * well, see {@link MessagePart}
+     *
+     * @param logEntry original log entry
+     * @param msgPart part of message
+     * @param messageId message id of all parts, <code>null</code> if not set
+     * @param part current part
+     * @param totalParts total number of parts
+     * @return copied log entry
+     */
+    static LogEntry copyLogEntry(LogEntry logEntry, String msgPart, String messageId, int part, int totalParts)
     {
         Map<String, String> context = new HashMap<>();
         if(logEntry.getContext() != null)
             context.putAll(logEntry.getContext());
 
         if(part >= 0 && totalParts >= 0)
+        {
             context.put(AwsCloudWatchLogsWriter.CONTEXT_KEY_PART, String.format(AwsCloudWatchLogsWriter.CONTEXT_PART_FORMAT, part + 1, totalParts));
 
+            if (messageId != null)
+                context.put(AwsCloudWatchLogsWriter.CONTEXT_KEY_MESSAGE_PART, MessagePart.format(messageId, part + 1, totalParts));
+        }
+
         return new LogEntry(logEntry.getTimestamp(),
                             logEntry.getThread(),
                             context,
@@ -88,185 +116,250 @@ public class Util
                             logEntry.getException());
     }
 
+    /**
+     * combine split log events, single pass over all log events<br/>
+     * partial messages are grouped by message id (or timestamp if log events have no message id, see
+     * {@link MessagePart}) with a hash map, parts of a split log event may be anywhere in the list (e.g. read from
+     * several pages)
+     *
+     * @param outputLogEvents log events as read from AWS CloudWatch
+     * @return combined log events, sorted reversed by timestamp
+     */
     public static List<OutputLogEvent> combineOutputLogEvents(List<OutputLogEvent> outputLogEvents)
     {
         log(Level.DEBUG, "outputLogEvents: %d", outputLogEvents.size());
-        // get all partial messages grouped by timestamp
-        Map<Long, List<OutputLogEvent>> groupedOutputLogEvents = outputLogEvents.stream()
-                .filter(e -> PARTIAL_MESSAGE_PATTERN.matcher(e.message()).find())
-                .collect(Collectors.groupingBy(OutputLogEvent::timestamp));
-
-        log(Level.DEBUG, "groupedOutputLogEvents: %d", groupedOutputLogEvents.size());
 
         List<OutputLogEvent> combinedOutputLogEvents = new ArrayList<>(outputLogEvents.size());
-        combinedOutputLogEvents.addAll(outputLogEvents);
+        // partial messages grouped by message id or timestamp, with message part index as key
+        Map<Object, List<Map<Integer, OutputLogEvent>>> groupedOutputLogEvents = new LinkedHashMap<>();
 
-        if (!groupedOutputLogEvents.isEmpty())
+        for (OutputLogEvent event : outputLogEvents)
         {
-            groupedOutputLogEvents.values()
-                    .forEach(combinedOutputLogEvents::removeAll);
-
-            log(Level.TRACE, "groupedOutputLogEvents.forEach");
-
-            groupedOutputLogEvents.values()
-                    .forEach(partialEvents -> {
-
-                        log(Level.TRACE, "partialEvents: %d", partialEvents.size());
-                        // create map with message part index as key
-                        Map<Integer, OutputLogEvent> messagePartIndexList = partialEvents.stream()
-                                .collect(
-                                        Collectors.toMap(Util::getMessagePartIndex, e -> e));
-
-                        log(Level.TRACE, "messagePartIndexList: %d", messagePartIndexList.size());
-
-                        if (!messagePartIndexList.isEmpty())
-                        {
-                            OutputLogEvent firstEntry = messagePartIndexList.get(1);
-
-                            boolean entryAdded = false;
-                            if (firstEntry != null)
-                            {
-                                int totalParts = getMessagePartTotal(firstEntry.message());
-                                if (totalParts > 0)
-                                {
-                                    if (totalParts == messagePartIndexList.size())
-                                    {
-                                        // sort list
-                                        List<OutputLogEvent> sortedValues = messagePartIndexList.entrySet()
-                                                .stream()
-                                                .sorted(Comparator.comparingInt(Map.Entry::getKey))
-                                                .map(Map.Entry::getValue)
-                                                .collect(Collectors.toList());
-
-                                        //log(Level.TRACE, "messagePartIndexList sorted");
-
-                                        // all partial messages found
-                                        log(Level.TRACE, "create full message");
-                                        String fullMessage = sortedValues
-                                                .stream()
-                                                .map(e -> getJsonMessageAttributeValue(e.message()))
-                                                .collect(Collectors.joining());
-
-                                        log(Level.TRACE, "full message created");
-
-                                        StringBuilder jsonMessage = new StringBuilder();
-                                        jsonMessage.append(firstEntry.message());
-
-                                        String[] jsonAttributeValues = getJsonAttributeValues(jsonMessage.toString(),
-                                                                                              new String[] {
-                                                                                                      AwsCloudWatchLogsWriter.JSON_MESSAGE_ATTRIBUTE,
-                                                                                                      AwsCloudWatchLogsWriter.JSON_CONTEXT_ATTRIBUTE });
-
-                                        log(Level.TRACE, "JSON attribute values read");
-                                        if (jsonAttributeValues != null)
-                                        {
-                                            String originalMessage = jsonAttributeValues[0];
-                                            String originalContext = jsonAttributeValues[1];
-
-                                            // replace json message attribute
-                                            replace(jsonMessage, originalMessage, fullMessage);
-
-                                            //log(Level.TRACE, "message replaced");
-                                            // replace json context attribute - [1/2] by [1]
-                                            int posEndPart = originalContext.indexOf(AwsCloudWatchLogsWriter.CONTEXT_PART_FORMAT.substring(AwsCloudWatchLogsWriter.CONTEXT_PART_FORMAT.length() - 1));
-                                            if (posEndPart > 0)
-                                            {
-                                                //log(Level.TRACE, "replace context");
-                                                String newContext = AwsCloudWatchLogsWriter.CONTEXT_PART_FORMAT.charAt(0) + "1" + originalContext.substring(posEndPart);
-
-                                                replace(jsonMessage, originalContext, newContext);
-                                            }
-
-                                            //log(Level.TRACE, "copy entry");
-                                            OutputLogEvent newEntry = firstEntry.toBuilder().message(jsonMessage.toString()).build();
-                                            //log(Level.TRACE, "new entry created");
-
-                                            combinedOutputLogEvents.add(newEntry);
-                                            entryAdded = true;
-
-                                            log(Level.TRACE, "entry added");
-                                        }
-                                    }
-                                }
-                            }
-
-                            if (!entryAdded)
-                            {
-                                combinedOutputLogEvents.addAll(messagePartIndexList.values());
-                            }
-                        }
-                    });
+            MessagePart part = MessagePart.of(event.message());
+            if (part == null)
+            {
+                combinedOutputLogEvents.add(event);
+                continue;
+            }
+
+            List<Map<Integer, OutputLogEvent>> groups = groupedOutputLogEvents.computeIfAbsent(part.getKey(event), t -> new ArrayList<>(1));
+            Map<Integer, OutputLogEvent> parts = groups.isEmpty() ? null : groups.get(groups.size() - 1);
+            if (parts == null || parts.containsKey(part.index))
+            {
+                // same part index twice - parts belong to different log events
+                parts = new HashMap<>();
+                groups.add(parts);
+            }
+            parts.put(part.index, event);
+        }
+
+        log(Level.DEBUG, "groupedOutputLogEvents: %d", groupedOutputLogEvents.size());
+
+        for (List<Map<Integer, OutputLogEvent>> groups : groupedOutputLogEvents.values())
+        {
+            for (Map<Integer, OutputLogEvent> parts : groups)
+            {
+                OutputLogEvent newEntry = combinePartialOutputLogEvents(parts);
+
+                if (newEntry != null)
+                {
+                    combinedOutputLogEvents.add(newEntry);
+                }
+                else
+                {
+                    combinedOutputLogEvents.addAll(parts.values());
+                }
+            }
         }
 
         // sort reversed by timestamp
-        combinedOutputLogEvents.sort(Comparator.comparing(c -> (c.timestamp() * -1)));
+        combinedOutputLogEvents.sort(Comparator.comparingLong(OutputLogEvent::timestamp).reversed());
         return combinedOutputLogEvents;
     }
 
-    private static void replace(StringBuilder text, String originalText, String replacementText)
+    /**
+     * combine partial messages of one split log event into one log event<br/>
+     * JSON attribute {@value AwsCloudWatchLogsWriter#JSON_MESSAGE_ATTRIBUTE} is concatenated from all parts and
+     * context <code>[1/n]</code> is replaced by <code>[1]</code>, attribute
+     * {@value AwsCloudWatchLogsWriter#CONTEXT_KEY_MESSAGE_PART} by the message id<br/>
+     * the escaped attribute values are copied into one presized buffer (see {@link JsonFieldExtractor}), messages are
+     * not parsed into JSON objects. Parts are split before JSON escaping, so escaped parts can be concatenated.
+     *
+     * @param messagePartIndexList partial log events with message part index as key
+     * @return combined log event or <code>null</code> if parts are incomplete or not in JSON format
+     */
+    static OutputLogEvent combinePartialOutputLogEvents(Map<Integer, OutputLogEvent> messagePartIndexList)
     {
-        int posStart = text.indexOf(originalText);
-        text.replace(posStart, posStart + originalText.length(), replacementText);
-    }
+        OutputLogEvent firstEntry = messagePartIndexList.get(1);
 
-    private static String getJsonMessageAttributeValue(final String message)
-    {
-        String[] jsonAttributeValues = getJsonAttributeValues(message, JSON_ATTRIBUTE_NAMES_MESSAGE);
-        if (jsonAttributeValues != null)
+        if (firstEntry == null)
         {
-            return jsonAttributeValues[0];
+            return null;
         }
 
-        return null;
+        final String firstMessage = firstEntry.message();
+        MessagePart firstPart = MessagePart.of(firstMessage);
+        int totalParts = firstPart != null ? firstPart.total : -1;
+        if (totalParts <= 0 || totalParts != messagePartIndexList.size())
+        {
+            return null;
+        }
+        int[] firstPositions = JsonFieldExtractor.findStringValues(firstMessage, JSON_ATTRIBUTE_NAMES_MESSAGE_CONTEXT);
+        if (firstPositions == null || firstPositions[0] < 0)
+        {
+            // parts are not in JSON format
+            return null;
+        }
+
+        // positions of escaped message attribute value of all parts
+        String[] messages = new String[totalParts];
+        int[] positions = new int[totalParts * 2];
+        int length = firstMessage.length() - (firstPositions[1] - firstPositions[0]);
+        for (int i = 0; i < totalParts; i++)
+        {
+            OutputLogEvent part = messagePartIndexList.get(i + 1);
+            if (part == null)
+            {
+                return null;
+            }
+
+            messages[i] = part.message();
+            int[] partPositions = i == 0 ? firstPositions : JsonFieldExtractor.findStringValues(messages[i], JSON_ATTRIBUTE_NAMES_MESSAGE);
+            if (partPositions == null || partPositions[0] < 0)
+            {
+                return null;
+            }
+
+            positions[2 * i] = partPositions[0];
+            positions[2 * i + 1] = partPositions[1];
+            length += partPositions[1] - partPositions[0];
+        }
+
+        log(Level.TRACE, "create full message");
+
+        // replacements in first message, in order of position: message id, context and message
+        List<int[]> replacements = new ArrayList<>(3);
+        int[] frameValue = firstPart.id != null ? MessagePart.findFrameValue(firstMessage) : null;
+        if (frameValue != null)
+        {
+            replacements.add(new int[] { frameValue[0], frameValue[1], REPLACE_MESSAGE_PART });
+        }
+
+        // context [1/2] is replaced by [1]
+        int contextStart = firstPositions[2];
+        if (contextStart >= 0)
+        {
+            int posEndPart = firstMessage.indexOf(CONTEXT_PART_END, contextStart);
+            if (posEndPart > contextStart && posEndPart < firstPositions[3])
+            {
+                replacements.add(new int[] { contextStart, posEndPart, REPLACE_CONTEXT });
+            }
+        }
+        replacements.add(new int[] { firstPositions[0], firstPositions[1], REPLACE_MESSAGE });
+        replacements.sort(Comparator.comparingInt(r -> r[0]));
+
+        StringBuilder jsonMessage = new StringBuilder(length);
+        int pos = 0;
+        for (int[] replacement : replacements)
+        {
+            jsonMessage.append(firstMessage, pos, replacement[0]);
+            switch (replacement[2])
+            {
+                case REPLACE_MESSAGE_PART:
+                    jsonMessage.append(firstPart.id);
+                    break;
+                case REPLACE_CONTEXT:
+                    jsonMessage.append(AwsCloudWatchLogsWriter.CONTEXT_PART_FORMAT.charAt(0)).append('1');
+                    break;
+                default:
+                    for (int i = 0; i < totalParts; i++)
+                    {
+                        jsonMessage.append(messages[i], positions[2 * i], positions[2 * i + 1]);
+                    }
+            }
+            pos = replacement[1];
+        }
+        jsonMessage.append(firstMessage, pos, firstMessage.length());
+
+        log(Level.TRACE, "full message created");
+
+        return firstEntry.toBuilder().message(jsonMessage.toString()).build();
     }
 
     /**
-     * get json attributes values from JSON object for specified attribute names
+     * check if message is a part of a split log event
      *
-     * @param message complete JSON message
-     * @param jsonAttributeNames list of JSON attribute names
-     * @return values from JSON attributes
+     * @param message log event message
+     * @return <code>true</code> if message contains a message id or a part marker <code>[n/m]</code>
      */
-    private static String[] getJsonAttributeValues(final String message, final String[] jsonAttributeNames)
+    static boolean isPartialMessage(String message)
     {
-        JsonReader reader = Json.createReader(new StringReader(message));
-        if (reader != null)
+        return MessagePart.of(message) != null;
+    }
+
+    /**
+     * find first part marker <code>[n/m]</code> in message, same as {@code \[(\d+)/(\d+)\]} without regular
+     * expression
+     *
+     * @param message log event message
+     * @return part index and total number of parts (-1 if too large) or <code>null</code> if message contains no
+     * part marker
+     */
+    static int[] findMessagePart(String message)
+    {
+        return findMessagePart(message, 0, message.length());
+    }
+
+    /**
+     * find first part marker <code>[n/m]</code> between start (inclusive) and end (exclusive) of message
+     *
+     * @see #findMessagePart(String)
+     */
+    static int[] findMessagePart(String message, int start, int end)
+    {
+        int pos = message.indexOf('[', start);
+        while (pos >= 0 && pos < end)
         {
-            JsonObject jsonObject = reader.readObject();
-            if (jsonObject != null)
+            int posSlash = skipDigits(message, pos + 1, end);
+            if (posSlash > pos + 1 && posSlash < end && message.charAt(posSlash) == '/')
             {
-                String[] jsonValues = new String[jsonAttributeNames.length];
-                for (int i = 0; i < jsonAttributeNames.length; i++)
+                int posEnd = skipDigits(message, posSlash + 1, end);
+                if (posEnd > posSlash + 1 && posEnd < end && message.charAt(posEnd) == ']')
                 {
-                    JsonString jsonString = jsonObject.getJsonString(jsonAttributeNames[i]);
-                    if (jsonString != null)
-                    {
-                        jsonValues[i] = jsonString.getString();
-                    }
+                    return new int[] { parsePart(message, pos + 1, posSlash), parsePart(message, posSlash + 1, posEnd) };
                 }
-
-                return jsonValues;
             }
+
+            pos = message.indexOf('[', pos + 1);
         }
 
         return null;
     }
 
-    private static int getMessagePart(String message, int group)
+    private static int skipDigits(String message, int pos, int end)
     {
-        Matcher matcher = PARTIAL_MESSAGE_PATTERN.matcher(message);
-        if (matcher.find() && group <= matcher.groupCount())
+        while (pos < end && message.charAt(pos) >= '0' && message.charAt(pos) <= '9')
         {
-            String part = matcher.group(group);
-            try
-            {
-                return Integer.parseInt(part);
-            }
-            catch (NumberFormatException ignored)
-            {
-            }
+            pos++;
         }
-        return -1;
+
+        return pos;
+    }
+
+    private static int parsePart(String message, int start, int end)
+    {
+        if (end - start > 9)
+        {
+            return -1;
+        }
+
+        int value = 0;
+        for (int i = start; i < end; i++)
+        {
+            value = value * 10 + (message.charAt(i) - '0');
+        }
+
+        return value;
     }
 
     static int getMessagePartIndex(OutputLogEvent event)
@@ -276,12 +369,14 @@ public class Util
 
     static int getMessagePartIndex(String message)
     {
-        return getMessagePart(message, 1);
+        MessagePart part = MessagePart.of(message);
+        return part != null ? part.index : -1;
     }
 
     static int getMessagePartTotal(String message)
     {
-        return getMessagePart(message, 2);
+        MessagePart part = MessagePart.of(message);
+        return part != null ? part.total : -1;
     }
 
     public static int lastIndexOfUperCaseCharacter(StringBuilder str)
@@ -296,38 +391,65 @@ public class Util
         return -1;
     }
 
+    /**
+     * @return <code>true</code> if internal diagnostics of this level are logged<br/>
+     * minimum level is set by tinylog property {@value #PROPERTY_INTERNAL_LEVEL} (default <code>warn</code>)
+     */
+    public static boolean isEnabled(Level level)
+    {
+        Level minimumLevel = internalLevel;
+        if (minimumLevel == null)
+        {
+            minimumLevel = Level.WARN;
+            String configuredLevel = Configuration.get(PROPERTY_INTERNAL_LEVEL);
+            if (configuredLevel != null)
+            {
+                try
+                {
+                    minimumLevel = Level.valueOf(configuredLevel.trim().toUpperCase(Locale.ROOT));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    System.err.println("invalid " + PROPERTY_INTERNAL_LEVEL + ": " + configuredLevel);
+                }
+            }
+            internalLevel = minimumLevel;
+        }
+
+        return level.ordinal() >= minimumLevel.ordinal();
+    }
+
+    /**
+     * log internal diagnostic message with time since last message of current thread<br/>
+     * message is only formatted if level is enabled, see {@link #isEnabled(Level)}
+     */
     public static void log(Level level, String message, Object... args)
     {
+        if (!isEnabled(level))
+        {
+            return;
+        }
+
         if (args != null && args.length > 0)
         {
             message = String.format(message, args);
         }
 
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime last = lastLogMessage.get();
+        lastLogMessage.set(now);
+
         StringBuilder difference = new StringBuilder();
-        if (lastLogMessage != null)
+        if (last != null)
         {
-            LocalDateTime now = LocalDateTime.now();
-            long diff = ChronoUnit.MILLIS.between(lastLogMessage, now);
-            difference = new StringBuilder(String.format(" (%dms)", diff));
+            difference.append(String.format(" (%dms)", ChronoUnit.MILLIS.between(last, now)));
             while (difference.length() < 9)
             {
                 difference.insert(0, " ");
             }
-            lastLogMessage = now;
         }
-        else
-        {
-            lastLogMessage = LocalDateTime.now();
-        }
-
-        StringBuilder sTimestamp = new StringBuilder();
-        while (sTimestamp.length() < 23)
-        {
-            sTimestamp.append(" ");
-        }
-
-        InternalLogger.log(level, getFormattedTimestamp(lastLogMessage) + difference + " " + message);
 
+        InternalLogger.log(level, getFormattedTimestamp(now) + difference + " " + message);
     }
 
     public static String getFormattedTimestamp(long millis)
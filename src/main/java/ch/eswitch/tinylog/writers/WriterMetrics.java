@@ -0,0 +1,96 @@
+package ch.eswitch.tinylog.writers;
+
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * counters of a writer, e.g. sent and dropped log events and transitions of {@link CircuitBreaker}<br/>
+ * metrics of all writers of the process are returned by {@link #getAll()}, e.g. for AWS Log Viewer
+ * (<code>outputType={@value #OUTPUT_TYPE}</code>)
+ */
+class WriterMetrics
+{
+    /**
+     * value of request parameter <code>outputType</code> for metrics of all writers (JSON)
+     */
+    static final String OUTPUT_TYPE = "writerMetrics";
+
+    /**
+     * metrics with log group and stream name of writer configuration as key
+     */
+    private static final Map<String, WriterMetrics> ALL = new ConcurrentHashMap<>();
+
+    /**
+     * log events put to AWS CloudWatch
+     */
+    final AtomicLong sentEvents = new AtomicLong();
+    /**
+     * {@code PutLogEvents} requests
+     */
+    final AtomicLong sentRequests = new AtomicLong();
+    /**
+     * requests failed because of an outage, see {@link CircuitBreaker#isOutage}
+     */
+    final AtomicLong failedRequests = new AtomicLong();
+    /**
+     * log events kept for retry while circuit is open, counted once per log event
+     */
+    final AtomicLong bufferedEvents = new AtomicLong();
+    /**
+     * log events dropped while circuit is open or buffer is full
+     */
+    final AtomicLong droppedEvents = new AtomicLong();
+    /**
+     * transitions to state of {@link CircuitBreaker}, index is state
+     */
+    private final AtomicLong[] transitions = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+    private volatile int circuitState = CircuitBreaker.CLOSED;
+
+    /**
+     * @return metrics of writer, created on first call
+     */
+    static WriterMetrics of(String logGroupName, String streamName)
+    {
+        return ALL.computeIfAbsent(logGroupName + '/' + streamName, k -> new WriterMetrics());
+    }
+
+    void circuitTransition(int state)
+    {
+        circuitState = state;
+        transitions[state].incrementAndGet();
+    }
+
+    JsonObject toJson()
+    {
+        JsonObject json = new JsonObject();
+        json.addProperty("sentEvents", sentEvents.get());
+        json.addProperty("sentRequests", sentRequests.get());
+        json.addProperty("failedRequests", failedRequests.get());
+        json.addProperty("bufferedEvents", bufferedEvents.get());
+        json.addProperty("droppedEvents", droppedEvents.get());
+
+        JsonObject circuit = new JsonObject();
+        circuit.addProperty("state", CircuitBreaker.STATES[circuitState]);
+        for (int i = 0; i < transitions.length; i++)
+        {
+            circuit.addProperty(CircuitBreaker.STATES[i], transitions[i].get());
+        }
+        json.add("circuitBreaker", circuit);
+
+        return json;
+    }
+
+    /**
+     * @return metrics of all writers with log group and stream name as key
+     */
+    static JsonObject getAll()
+    {
+        JsonObject json = new JsonObject();
+        ALL.forEach((key, metrics) -> json.add(key, metrics.toJson()));
+
+        return json;
+    }
+}
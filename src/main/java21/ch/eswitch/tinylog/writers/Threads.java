@@ -0,0 +1,57 @@
+package ch.eswitch.tinylog.writers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * threads of writer (senders) and viewer (concurrent reads of log events)<br/>
+ * Java 21 version of multi-release jar: daemon threads are virtual threads, so many AWS SDK calls can block
+ * concurrently without a platform thread each. Concurrency is still limited by the callers, e.g.
+ * {@link SlicedLogEventsFetcher}.<br/>
+ * Virtual threads are always daemon threads, non-daemon threads (e.g. the sender of the writer, whose queued log
+ * events must be put before the JVM exits) are platform threads as in the version for older Java versions.
+ */
+final class Threads
+{
+    private Threads()
+    {
+    }
+
+    /**
+     * @param name thread name prefix, followed by a number
+     * @param daemon <code>true</code> for virtual threads, <code>false</code> for non-daemon platform threads
+     * @return factory of virtual or platform threads
+     */
+    static ThreadFactory factory(String name, boolean daemon)
+    {
+        if (daemon)
+        {
+            return Thread.ofVirtual().name(name + "-", 1).factory();
+        }
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        };
+    }
+
+    /**
+     * @param name thread name prefix, followed by a number
+     * @param daemon <code>true</code> for virtual threads, <code>false</code> for non-daemon platform threads
+     * @return executor which starts a new virtual thread for each task, or reuses idle platform threads
+     */
+    static ExecutorService newTaskExecutor(String name, boolean daemon)
+    {
+        if (daemon)
+        {
+            return Executors.newThreadPerTaskExecutor(factory(name, true));
+        }
+
+        return Executors.newCachedThreadPool(factory(name, false));
+    }
+}
@@ -1,18 +1,24 @@
 <%@ page import="ch.eswitch.tinylog.writers.AwsCloudWatchLogsJsonWriter" %>
+<%@ page import="ch.eswitch.tinylog.writers.LogEventsResult" %>
+<%@ page import="ch.eswitch.tinylog.writers.LogsInsightsQuery" %>
+<%@ page import="ch.eswitch.tinylog.writers.MergedLogEventsTimeline" %>
+<%@ page import="ch.eswitch.tinylog.writers.Util" %>
 <%@ page import="com.google.gson.JsonElement" %>
 <%@ page import="com.google.gson.JsonObject" %>
 <%@ page import="com.google.gson.JsonParseException" %>
 <%@ page import="com.google.gson.JsonParser" %>
 <%@ page import="org.apache.commons.lang3.StringEscapeUtils" %>
+<%@ page import="org.tinylog.Level" %>
 <%@ page import="software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent" %>
 <%@ page import="java.io.IOException" %>
+<%@ page import="java.io.UncheckedIOException" %>
 <%@ page import="java.time.Instant" %>
 <%@ page import="java.time.ZoneId" %>
 <%@ page import="java.time.format.DateTimeFormatter" %>
-<%@ page import="java.util.Iterator" %>
 <%@ page import="java.util.List" %>
 <%@ page import="java.util.Map" %>
 <%@ page import="java.util.Set" %>
+<%@ page import="java.util.function.BiConsumer" %>
 <%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
 <%@ taglib uri="http://java.sun.com/jsp/jstl/functions" prefix="fn" %>
 
@@ -20,6 +26,7 @@
     public static final String CSS_STYLE_WHITE_SPACE_NOWRAP = "white-space: nowrap;";
     private int collapseCell = 0;
     private static final int MAX_TEXT_LENGTH = 300;
+    private static final int FLUSH_ROWS = 100;
 
     private void printFunctions(JspWriter out, String ref, boolean rowspan)
     {
@@ -92,11 +99,213 @@
         }
         catch (IOException e)
         {
-            e.printStackTrace();
+            Util.log(Level.DEBUG, "log events page: client disconnected: %s", e);
         }
 
     }
 
+    /**
+     * print log event as table row, table header is printed before first row
+     *
+     * @param source writer names of merged timeline, <code>null</code> if source column is not printed
+     * @return <code>false</code> (table header printed)
+     */
+    private boolean printLogEvent(JspWriter out, OutputLogEvent e, String source, String ref, boolean printHeader) throws IOException
+    {
+        boolean isJson = false;
+        try
+        {
+            JsonElement ele = JsonParser.parseString(e.message());
+            if (ele.isJsonObject())
+            {
+                JsonObject obj = ele.getAsJsonObject();
+                Set<Map.Entry<String, JsonElement>> entries = obj.entrySet();
+                isJson = true;
+
+                if (printHeader)
+                {
+                    printHeader = false;
+
+                    out.println("<table class=\"table table-striped\">\n"
+                                        + "                    <thead>\n"
+                                        + "                    <tr>\n"
+                                        + "                        <th>Timestamp</th>\n");
+                    if (source != null)
+                    {
+                        out.println("                        <th>Source</th>");
+                    }
+                    for (Map.Entry<String, JsonElement> entry : entries)
+                    {
+                        if (entry.getKey()
+                                 .equalsIgnoreCase(JSON_TAG_MESSAGE))
+                        {
+                            continue;
+                        }
+
+                        out.println("                        <th>" + entry.getKey() + "</th>");
+                    }
+                    out.println("                        <th></th>\n"
+                                        + "                    </tr>\n"
+                                        + "                    </thead>");
+                }
+
+                out.println("<tr>");
+                printColumn(out, e.timestamp(), true);
+                if (source != null)
+                {
+                    printColumn(out, StringEscapeUtils.escapeHtml4(source), CSS_STYLE_WHITE_SPACE_NOWRAP, null, true, -1);
+                }
+                for (Map.Entry<String, JsonElement> entry : entries)
+                {
+                    boolean isMessage = entry.getKey()
+                                             .equalsIgnoreCase(JSON_TAG_MESSAGE);
+
+                    if (isMessage)
+                    {
+                        printFunctions(out, ref, true);
+                        out.println("</tr>");
+                        out.println("<tr>");
+                    }
+
+                    printColumn(out,
+                                StringEscapeUtils.escapeHtml4(entry.getValue()
+                                                                   .getAsString()),
+                                null,
+                                isMessage ? ref : null,
+                                false,
+                                isMessage ? entries.size() - 1 : -1);
+                }
+            }
+        }
+        catch (JsonParseException ex)
+        {
+        }
+
+        if (!isJson)
+        {
+            if (printHeader)
+            {
+                printHeader = false;
+
+                out.println("<table class=\"table table-striped\">\n"
+                                    + "                    <thead>\n"
+                                    + "                    <tr>\n"
+                                    + "                        <th>Timestamp</th>\n"
+                                    + (source != null ? "                        <th>Source</th>\n" : "")
+                                    + "                        <th>Message</th>\n"
+                                    + "                        <th></th>\n"
+                                    + "                    </tr>\n"
+                                    + "                    </thead>");
+            }
+
+            out.println("<tr>");
+            printColumn(out, e.timestamp(), false);
+            if (source != null)
+            {
+                printColumn(out, StringEscapeUtils.escapeHtml4(source), CSS_STYLE_WHITE_SPACE_NOWRAP, null, false, -1);
+            }
+            printColumn(out, StringEscapeUtils.escapeHtml4(e.message()), null, ref, false, -1);
+
+            printFunctions(out, ref, false);
+        }
+
+        out.println("</tr>");
+
+        return printHeader;
+    }
+
+    /**
+     * print one page of log events of a writer as table, followed by "load more" button if more log events are
+     * available
+     *
+     * @param writerName tinylog writer name or {@link MergedLogEventsTimeline#TIMELINE} for merged timeline of all
+     * selected writers
+     * @return <code>false</code> if output failed, e.g. client disconnected
+     */
+    private boolean printLogEvents(JspWriter out, HttpServletRequest request, String writerName) throws IOException
+    {
+        out.println("<div>");
+        out.flush();
+
+        // unique references for all pages
+        final String refPrefix = writerName + "-" + System.currentTimeMillis() + "-";
+        final long[] refId = { 0 };
+        final boolean[] printHeader = { true };
+        final BiConsumer<String, OutputLogEvent> printer = (source, e) -> {
+            try
+            {
+                printHeader[0] = printLogEvent(out, e, source, refPrefix + refId[0]++, printHeader[0]);
+
+                if (refId[0] % FLUSH_ROWS == 0)
+                {
+                    out.flush();
+                }
+            }
+            catch (IOException ex)
+            {
+                // stop reading log events, e.g. client disconnected
+                throw new UncheckedIOException(ex);
+            }
+        };
+
+        LogEventsResult result;
+        try
+        {
+            if (MergedLogEventsTimeline.TIMELINE.equals(writerName))
+            {
+                result = MergedLogEventsTimeline.read((List<String>) request.getAttribute("selectedWriters"), request, printer);
+            }
+            else
+            {
+                result = AwsCloudWatchLogsJsonWriter.processCombinedOutputLogEvents(writerName, request, e -> printer.accept(null, e));
+            }
+        }
+        catch (UncheckedIOException e)
+        {
+            Util.log(Level.DEBUG, "log events page: client disconnected: %s", e.getCause());
+            return false;
+        }
+
+        if (result != null && result.count > 0)
+        {
+            out.println("</table>");
+            out.println(result.count + " Log Events found");
+        }
+        else if (result == null || result.nextCursor == null)
+        {
+            out.println("<div class=\"alert alert-warning\" role=\"alert\">"
+                                + "No Log Events found"
+                                + "</div>");
+        }
+        else
+        {
+            out.println("<div class=\"alert alert-info\" role=\"alert\">"
+                                + "No Log Events found in searched part of time period"
+                                + "</div>");
+        }
+
+        if (result != null && result.budgetExceeded)
+        {
+            out.println("<div class=\"alert alert-warning\" role=\"alert\">"
+                                + "Partial results, budget exceeded"
+                                + "</div>");
+        }
+
+        if (result != null && result.nextCursor != null)
+        {
+            out.print("<p class=\"mt-2\"><button type=\"button\" class=\"btn btn-outline-primary\" onClick=\"loadMore(this, '");
+            out.print(writerName);
+            out.print("', '");
+            out.print(result.nextCursor);
+            out.println("')\">Load more</button></p>");
+        }
+
+        out.println("</div>");
+        out.flush();
+
+        return true;
+    }
+
     private void printText(JspWriter out, String text, String ref) throws IOException
     {
         if (ref != null)
@@ -112,7 +321,15 @@
         }
     }
 %>
-
+<%
+    // next page of one writer ("load more"), only log events are rendered
+    String fragmentWriter = (String) request.getAttribute("fragmentWriter");
+    if (fragmentWriter != null)
+    {
+        printLogEvents(out, request, fragmentWriter);
+        return;
+    }
+%>
 <html>
 <head>
     <title>AWS CloudWatch tinylog Viewer</title>
@@ -120,27 +337,83 @@
     <script src="bootstrap/js/bootstrap.bundle.min.js"></script>
     <link rel="stylesheet" href="bootstrap/font/bootstrap-icons.css">
 
+    <style>
+        #virtualViewport {
+            position: relative;
+            height: 70vh;
+            overflow-y: auto;
+            border: 1px solid var(--bs-border-color);
+        }
+
+        #virtualRows {
+            position: absolute;
+            top: 0;
+            left: 0;
+            right: 0;
+        }
+
+        .virtual-row {
+            display: flex;
+            height: 28px;
+            line-height: 28px;
+            cursor: pointer;
+            border-bottom: 1px solid var(--bs-border-color);
+        }
+
+        .virtual-row:nth-child(odd) {
+            background-color: var(--bs-tertiary-bg);
+        }
+
+        .virtual-row.virtual-header {
+            font-weight: bold;
+            cursor: default;
+        }
+
+        .virtual-row > div {
+            padding: 0 0.5rem;
+            white-space: nowrap;
+            overflow: hidden;
+            text-overflow: ellipsis;
+        }
+
+        .virtual-time {
+            flex: 0 0 13rem;
+        }
+
+        .virtual-source {
+            flex: 0 0 10rem;
+        }
+
+        .virtual-message {
+            flex: 1 1 auto;
+        }
+
+        #virtualDetail {
+            white-space: pre-wrap;
+            word-break: break-all;
+        }
+    </style>
+
     <script type="text/javascript">
 
         function timeRadiosChanged(element) {
             var disableAbsolute = true;
             var disableRelative = true;
+            var disableLatest = true;
             if (element == null) {
                 if (document.getElementById('absoluteRadio').checked)
                     element = document.getElementById('absoluteRadio');
                 else if (document.getElementById('relativeRadio').checked)
                     element = document.getElementById('relativeRadio');
+                else if (document.getElementById('latestRadio').checked)
+                    element = document.getElementById('latestRadio');
             }
 
-            if (element != null) {
+            if (element != null && element.checked) {
                 window.console.log(element.id + ": " + element.checked);
-                if (element.id == 'absoluteRadio') {
-                    disableAbsolute = !element.checked;
-                    disableRelative = !disableAbsolute;
-                } else if (element.id == 'relativeRadio') {
-                    disableRelative = !element.checked;
-                    disableAbsolute = !disableRelative;
-                }
+                disableAbsolute = element.id != 'absoluteRadio';
+                disableRelative = element.id != 'relativeRadio';
+                disableLatest = element.id != 'latestRadio';
             }
 
             document.getElementById('startDateTime').disabled = disableAbsolute;
@@ -148,6 +421,8 @@
 
             document.getElementById('relativeTime').disabled = disableRelative;
             document.getElementById('relativeUnit').disabled = disableRelative;
+
+            document.getElementById('latestCount').disabled = disableLatest;
         }
 
         document.addEventListener('readystatechange', event => {
@@ -182,6 +457,297 @@
             a.click();
         }
 
+        function loadMore(button, writerName, cursor) {
+            var formData = new FormData(document.getElementById('writerForm'));
+            formData.set('cursor_' + writerName, cursor);
+            formData.set('fragment', writerName);
+            formData.set('outputType', 'html');
+
+            button.disabled = true;
+            fetch('awslogviewer', {method: 'POST', body: new URLSearchParams(formData)})
+                .then(response => response.text())
+                .then(html => button.parentElement.outerHTML = html)
+                .catch(error => {
+                    window.console.log(error);
+                    button.disabled = false;
+                });
+        }
+
+        // virtualized table: only visible rows are rendered
+        var ROW_HEIGHT = 28;
+        var OVERSCAN_ROWS = 20;
+        var MAX_CELL_TEXT = 300;
+        var virtualRows = [];
+        var virtualResults = {};
+        var renderPending = false;
+
+        function loadLogEvents(writerName, cursor, button) {
+            var formData = new FormData(document.getElementById('writerForm'));
+            formData.set('outputType', 'ndjson');
+            formData.delete('submitButton');
+            if (writerName != null) {
+                formData.set('cursor_' + writerName, cursor);
+                formData.set('fragment', writerName);
+            }
+            if (button != null) {
+                button.disabled = true;
+            }
+
+            // GET, so browser revalidates closed time ranges with ETag
+            fetch('awslogviewer?' + new URLSearchParams(formData))
+                .then(async response => {
+                    var reader = response.body.getReader();
+                    var decoder = new TextDecoder();
+                    var buffer = '';
+                    while (true) {
+                        var chunk = await reader.read();
+                        if (chunk.done) {
+                            break;
+                        }
+                        buffer += decoder.decode(chunk.value, {stream: true});
+                        var lines = buffer.split('\n');
+                        buffer = lines.pop();
+                        lines.forEach(readLine);
+                        scheduleRender();
+                    }
+                    readLine(buffer + decoder.decode());
+                    scheduleRender();
+                    renderStatus();
+                })
+                .catch(error => {
+                    window.console.log(error);
+                    if (button != null) {
+                        button.disabled = false;
+                    }
+                });
+        }
+
+        function readLine(line) {
+            if (line.length == 0) {
+                return;
+            }
+
+            var value = JSON.parse(line);
+            if (value.result != null) {
+                var previous = virtualResults[value.result.writer];
+                if (previous != null) {
+                    value.result.count += previous.count;
+                }
+                virtualResults[value.result.writer] = value.result;
+            } else {
+                virtualRows.push(value);
+            }
+        }
+
+        function renderStatus() {
+            var status = document.getElementById('virtualStatus');
+            status.replaceChildren();
+
+            for (var writerName in virtualResults) {
+                var result = virtualResults[writerName];
+                var p = document.createElement('p');
+                p.textContent = writerName.substring(writerName.indexOf('_') + 1) + ': ' + result.count + ' Log Events found ';
+                if (result.partial != null) {
+                    p.textContent += '(' + result.partial + ') ';
+                }
+                if (result.nextCursor != null) {
+                    var button = document.createElement('button');
+                    button.type = 'button';
+                    button.className = 'btn btn-sm btn-outline-primary';
+                    button.textContent = 'Load more';
+                    button.onclick = loadLogEvents.bind(null, writerName, result.nextCursor, button);
+                    p.appendChild(button);
+                }
+                status.appendChild(p);
+            }
+        }
+
+        function scheduleRender() {
+            if (!renderPending) {
+                renderPending = true;
+                window.requestAnimationFrame(renderVirtualRows);
+            }
+        }
+
+        function formatTimestamp(millis) {
+            var date = new Date(millis);
+            return new Date(millis - date.getTimezoneOffset() * 60000).toISOString().substring(0, 23);
+        }
+
+        function renderVirtualRows() {
+            renderPending = false;
+            var viewport = document.getElementById('virtualViewport');
+            var container = document.getElementById('virtualRows');
+            document.getElementById('virtualSpacer').style.height = (virtualRows.length * ROW_HEIGHT) + 'px';
+
+            var first = Math.max(0, Math.floor(viewport.scrollTop / ROW_HEIGHT) - OVERSCAN_ROWS);
+            var last = Math.min(virtualRows.length, Math.ceil((viewport.scrollTop + viewport.clientHeight) / ROW_HEIGHT) + OVERSCAN_ROWS);
+            container.style.transform = 'translateY(' + (first * ROW_HEIGHT) + 'px)';
+
+            var fragment = document.createDocumentFragment();
+            for (var i = first; i < last; i++) {
+                var logEvent = virtualRows[i];
+                var row = document.createElement('div');
+                row.className = 'virtual-row';
+                row.onclick = showLogEvent.bind(null, i);
+                appendCell(row, 'virtual-time', formatTimestamp(logEvent.timestamp));
+                appendCell(row, 'virtual-source', logEvent.source);
+                appendCell(row, 'virtual-message', logEvent.message.substring(0, MAX_CELL_TEXT));
+                fragment.appendChild(row);
+            }
+            container.replaceChildren(fragment);
+        }
+
+        function appendCell(row, className, text) {
+            var cell = document.createElement('div');
+            cell.className = className;
+            cell.textContent = text;
+            row.appendChild(cell);
+        }
+
+        function showLogEvent(index) {
+            var logEvent = virtualRows[index];
+            var message = logEvent.message;
+            try {
+                message = JSON.stringify(JSON.parse(message), null, 2);
+            } catch (e) {
+            }
+
+            document.getElementById('virtualDetailTitle').textContent = formatTimestamp(logEvent.timestamp) + ' ' + logEvent.source;
+            document.getElementById('virtualDetail').textContent = message;
+            document.getElementById('virtualDetailContainer').classList.remove('d-none');
+        }
+
+        document.addEventListener('DOMContentLoaded', () => {
+            var viewport = document.getElementById('virtualViewport');
+            if (viewport != null) {
+                viewport.addEventListener('scroll', scheduleRender);
+            }
+        });
+
+        // CloudWatch Logs Insights: query runs in AWS CloudWatch, results are polled
+        var INSIGHTS_POLL_MILLIS = 1000;
+        var insightsQueryId = null;
+        var insightsTimer = null;
+
+        function insightsTemplateChanged() {
+            document.getElementById('insightsQuery').value = document.getElementById('insightsTemplate').value;
+        }
+
+        function insightsRequest(outputType, parameters) {
+            var formData = new FormData(document.getElementById('writerForm'));
+            formData.set('outputType', outputType);
+            for (var name in parameters) {
+                formData.set(name, parameters[name]);
+            }
+
+            return fetch('awslogviewer', {method: 'POST', body: new URLSearchParams(formData)})
+                .then(response => response.json());
+        }
+
+        function runInsightsQuery() {
+            stopInsightsQuery();
+            document.getElementById('insightsStatus').textContent = 'starting query';
+
+            insightsRequest('insightsStart', {insightsQuery: document.getElementById('insightsQuery').value})
+                .then(json => {
+                    if (json.error != null) {
+                        document.getElementById('insightsStatus').textContent = json.error;
+                        return;
+                    }
+                    insightsQueryId = json.queryId;
+                    pollInsightsResults();
+                })
+                .catch(error => window.console.log(error));
+        }
+
+        function pollInsightsResults() {
+            var queryId = insightsQueryId;
+            insightsRequest('insightsResults', {queryId: queryId})
+                .then(json => {
+                    if (queryId != insightsQueryId) {
+                        return;
+                    }
+                    if (json.error != null) {
+                        document.getElementById('insightsStatus').textContent = json.error;
+                        insightsQueryId = null;
+                        return;
+                    }
+
+                    renderInsightsResults(json);
+                    if (json.status == 'Scheduled' || json.status == 'Running') {
+                        insightsTimer = window.setTimeout(pollInsightsResults, INSIGHTS_POLL_MILLIS);
+                    } else {
+                        insightsQueryId = null;
+                    }
+                })
+                .catch(error => window.console.log(error));
+        }
+
+        function stopInsightsQuery() {
+            window.clearTimeout(insightsTimer);
+            if (insightsQueryId != null) {
+                insightsRequest('insightsStop', {queryId: insightsQueryId});
+                document.getElementById('insightsStatus').textContent = 'Cancelled';
+                insightsQueryId = null;
+            }
+        }
+
+        function renderInsightsResults(json) {
+            var status = json.status + ': ' + json.rows.length + ' rows';
+            if (json.statistics != null) {
+                status += ', ' + json.statistics.recordsMatched + ' of ' + json.statistics.recordsScanned + ' records matched';
+            }
+            document.getElementById('insightsStatus').textContent = status;
+
+            var head = document.getElementById('insightsHead');
+            head.replaceChildren();
+            var headRow = head.insertRow(-1);
+            json.fields.forEach(field => {
+                var th = document.createElement('th');
+                th.textContent = field;
+                headRow.appendChild(th);
+            });
+
+            var tbody = document.getElementById('insightsRows');
+            tbody.replaceChildren();
+            json.rows.forEach(row => {
+                var tr = tbody.insertRow(-1);
+                json.fields.forEach(field => tr.insertCell(-1).textContent = row[field] != null ? row[field] : '');
+            });
+        }
+
+        var tailSource = null;
+        var MAX_TAIL_ROWS = 1000;
+
+        function toggleTail(button) {
+            if (tailSource != null) {
+                tailSource.close();
+                tailSource = null;
+                button.textContent = 'Live Tail';
+                return;
+            }
+
+            var params = new URLSearchParams(new FormData(document.getElementById('writerForm')));
+            var tbody = document.getElementById('tailRows');
+            document.getElementById('tailContainer').classList.remove('d-none');
+
+            tailSource = new EventSource('awslogviewer/tail?' + params);
+            tailSource.onmessage = event => {
+                var logEvent = JSON.parse(event.data);
+                var row = tbody.insertRow(-1);
+                row.insertCell(-1).textContent = logEvent.time;
+                row.insertCell(-1).textContent = logEvent.source;
+                row.insertCell(-1).textContent = logEvent.message;
+
+                while (tbody.rows.length > MAX_TAIL_ROWS) {
+                    tbody.deleteRow(0);
+                }
+            };
+            tailSource.onerror = error => window.console.log(error);
+            button.textContent = 'Stop Live Tail';
+        }
+
         function copyData(ref) {
             var content = document.getElementById(ref).innerText;
 
@@ -288,6 +854,29 @@
                     </div>
                 </div>
 
+                <br>
+
+                <div class="form-check">
+                    <input class="form-check-input" type="radio" name="timeRadios" id="latestRadio"
+                           value="latestRadio"
+                           <c:if test="${param.timeRadios.equals('latestRadio')}">checked="true"</c:if> required
+                           onchange="timeRadiosChanged(this)">
+                    <label class="form-check-label h6" for="latestRadio">
+                        Latest Log Events
+                    </label>
+                </div>
+
+                <div class="row">
+                    <div class="col-8">
+                        <label class="visually-hidden" for="latestCount">Count</label>
+                        <input type="number" class="form-control" width="auto" id="latestCount" name="latestCount"
+                               aria-describedby="latestCountHelp" placeholder="Count" min="1" max="10000"
+                               value="${empty param.latestCount ? 100 : param.latestCount}" required/>
+                        <small id="latestCountHelp" class="form-text text-muted">most recent log events of each
+                            writer, read backwards from now</small>
+                    </div>
+                </div>
+
                 <div class="mt-3">
                     <label for="searchTerm" class="h5">Search Term</label>
                     <input type="text" class="form-control" id="searchTerm" name="searchTerm"
@@ -302,16 +891,78 @@
                            value="true" <c:if test="${param.useRegExp.equals('true')}">checked="true"</c:if>/>
                     <label for="useRegExp" class="form-check-label">use RegExp</label>
                 </div>
+                <div class="form-check">
+                    <input type="checkbox" class="form-check-input" id="useQuery" name="useQuery"
+                           value="true" aria-describedby="useQueryHelp"
+                           <c:if test="${param.useQuery.equals('true')}">checked="true"</c:if>/>
+                    <label for="useQuery" class="form-check-label">use query</label>
+                    <small id="useQueryHelp" class="form-text text-muted d-block">field predicates of JSON Log Events,
+                        e.g. <code>level:ERROR AND source:*Dao* AND message~"time(d )?out"</code>; <code>:</code>
+                        compares the value (<code>*</code> as wildcard), <code>~</code> searches a RegExp, text without
+                        field is searched in the whole Log Event; combined with <code>AND</code>, <code>OR</code>,
+                        <code>NOT</code> and parentheses</small>
+                </div>
+                <div class="mt-3">
+                    <label for="searchMode" class="h5">Search Mode</label>
+                    <select class="form-select" id="searchMode" name="searchMode" aria-describedby="searchModeHelp">
+                        <option value="server" <c:if test="${empty param.searchMode or param.searchMode.equals('server')}">selected="true"</c:if>>
+                            AWS CloudWatch filter pattern
+                        </option>
+                        <option value="local" <c:if test="${param.searchMode.equals('local')}">selected="true"</c:if>>
+                            local
+                        </option>
+                    </select>
+                    <small id="searchModeHelp" class="form-text text-muted">with AWS CloudWatch filter pattern only
+                        matching Log Events are read (oldest first), RegExp patterns which are not supported by AWS
+                        CloudWatch are searched locally (newest first)</small>
+                </div>
                 <div class="mt-3">
                     <label for="outputType" class="h5">Output Type</label>
-                    <select class="form-select" id="outputType" name="outputType">
+                    <select class="form-select" id="outputType" name="outputType" aria-describedby="outputTypeHelp">
+                        <option value="table" <c:if test="${empty param.outputType or param.outputType.equals('table')}">selected="true"</c:if>>
+                            HTML (virtualized table)
+                        </option>
                         <option value="html" <c:if test="${param.outputType.equals('html')}">selected="true"</c:if>>
                             HTML
                         </option>
                         <option value="file" <c:if test="${param.outputType.equals('file')}">selected="true"</c:if>>
                             Text file (raw)
                         </option>
+                        <option value="fileGzip" <c:if test="${param.outputType.equals('fileGzip')}">selected="true"</c:if>>
+                            Text file (gzip)
+                        </option>
+                        <option value="ndjsonGzip" <c:if test="${param.outputType.equals('ndjsonGzip')}">selected="true"</c:if>>
+                            NDJSON file (gzip)
+                        </option>
+                        <option value="zip" <c:if test="${param.outputType.equals('zip')}">selected="true"</c:if>>
+                            Zip file (one text file per writer)
+                        </option>
+                        <option value="insights" <c:if test="${param.outputType.equals('insights')}">selected="true"</c:if>>
+                            CloudWatch Logs Insights (aggregation)
+                        </option>
+                    </select>
+                    <small id="outputTypeHelp" class="form-text text-muted">the virtualized table only renders visible
+                        rows, click a row to show the whole Log Event. Files contain all Log Events of the time
+                        period and are compressed while reading</small>
+                </div>
+                <div class="mt-3">
+                    <label for="pageSize" class="h5">Page Size</label>
+                    <select class="form-select" id="pageSize" name="pageSize" aria-describedby="pageSizeHelp">
+                        <option value="100" <c:if test="${param.pageSize.equals('100')}">selected="true"</c:if>>
+                            100
+                        </option>
+                        <option value="500" <c:if test="${empty param.pageSize or param.pageSize.equals('500')}">selected="true"</c:if>>
+                            500
+                        </option>
+                        <option value="1000" <c:if test="${param.pageSize.equals('1000')}">selected="true"</c:if>>
+                            1000
+                        </option>
+                        <option value="0" <c:if test="${param.pageSize.equals('0')}">selected="true"</c:if>>
+                            all
+                        </option>
                     </select>
+                    <small id="pageSizeHelp" class="form-text text-muted">Log Events per page in HTML output, more
+                        Log Events are loaded on demand</small>
                 </div>
 
                 <h3 class="mt-3">tinylog Writers</h3>
@@ -334,10 +985,22 @@
                                 </tr>
                             </c:forEach>
                         </table>
+                        <div class="form-check mb-3">
+                            <input type="checkbox" class="form-check-input" id="timeline" name="timeline"
+                                   value="merged" aria-describedby="timelineHelp"
+                                   <c:if test="${param.timeline.equals('merged')}">checked="true"</c:if>/>
+                            <label for="timeline" class="form-check-label">merged timeline</label>
+                            <small id="timelineHelp" class="form-text text-muted d-block">Log Events of all selected
+                                writers in one table (oldest first) with source column</small>
+                        </div>
                         <button type="submit" class="btn btn-primary" id="submitButton" name="submitButton"
                                 value="true">
                             Search Log Events
                         </button>
+                        <button type="button" class="btn btn-outline-primary" id="tailButton"
+                                onClick="toggleTail(this)">
+                            Live Tail
+                        </button>
 
                         <!-- TODO generate raw log output file -->
                     </c:when>
@@ -351,139 +1014,108 @@
             </div>
         </div>
     </form>
+    <div id="tailContainer" class="d-none">
+        <h3 class="mt-5">Live Tail</h3>
+        <table class="table table-striped">
+            <thead>
+            <tr>
+                <th>Timestamp</th>
+                <th>Source</th>
+                <th>Message</th>
+            </tr>
+            </thead>
+            <tbody id="tailRows"></tbody>
+        </table>
+    </div>
     <%
         List<String> selectedWriters = (List<String>) request.getAttribute("selectedWriters");
-        if (selectedWriters != null && selectedWriters.size() > 0)
+        String outputType = request.getParameter("outputType");
+        if (selectedWriters != null && selectedWriters.size() > 0 && LogsInsightsQuery.OUTPUT_TYPE.equals(outputType))
+        {
+    %>
+    <h3 class="mt-5">CloudWatch Logs Insights</h3>
+    <div class="mt-3">
+        <label for="insightsTemplate" class="form-label">Query Template</label>
+        <select class="form-select" id="insightsTemplate" onchange="insightsTemplateChanged()">
+            <%
+                for (Map.Entry<String, String> template : LogsInsightsQuery.getTemplates(selectedWriters.get(0)).entrySet())
+                {
+                    out.print("<option value=\"");
+                    out.print(StringEscapeUtils.escapeHtml4(template.getValue()));
+                    out.print("\">");
+                    out.print(StringEscapeUtils.escapeHtml4(template.getKey()));
+                    out.println("</option>");
+                }
+            %>
+        </select>
+    </div>
+    <div class="mt-3">
+        <label for="insightsQuery" class="form-label">Query</label>
+        <textarea class="form-control font-monospace" id="insightsQuery" rows="6"></textarea>
+        <small class="form-text text-muted">time period of search criteria, only log streams of selected writers</small>
+    </div>
+    <p class="mt-3">
+        <button type="button" class="btn btn-primary" onClick="runInsightsQuery()">Run Query</button>
+        <button type="button" class="btn btn-outline-secondary" onClick="stopInsightsQuery()">Stop</button>
+    </p>
+    <div id="insightsStatus"></div>
+    <table class="table table-striped">
+        <thead id="insightsHead"></thead>
+        <tbody id="insightsRows"></tbody>
+    </table>
+    <script type="text/javascript">
+        insightsTemplateChanged();
+    </script>
+    <%
+        }
+        else if (selectedWriters != null && selectedWriters.size() > 0 && (outputType == null || outputType.equals("table")))
+        {
+    %>
+    <h3 class="mt-5">Log Events</h3>
+    <div id="virtualStatus"></div>
+    <div class="virtual-row virtual-header">
+        <div class="virtual-time">Timestamp</div>
+        <div class="virtual-source">Source</div>
+        <div class="virtual-message">Message</div>
+    </div>
+    <div id="virtualViewport">
+        <div id="virtualSpacer"></div>
+        <div id="virtualRows"></div>
+    </div>
+    <div id="virtualDetailContainer" class="card card-body mt-3 d-none">
+        <div class="d-flex gap-3 mb-2">
+            <strong id="virtualDetailTitle"></strong>
+            <i class="bi bi-clipboard" onClick="copyData('virtualDetail')"></i>
+            <i class="bi bi-download" onClick="downloadData('virtualDetail')"></i>
+        </div>
+        <pre id="virtualDetail" class="mb-0"></pre>
+    </div>
+    <script type="text/javascript">
+        loadLogEvents(null, null, null);
+    </script>
+    <%
+        }
+        else if (selectedWriters != null && selectedWriters.size() > 0)
         {
             out.println("<h3 class=\"mt-5\">Log Events</h3>");
 
-            final JspWriter outFinal = out;
-            selectedWriters.forEach(writerName -> {
-                try
+            if (MergedLogEventsTimeline.isMergedTimeline(request))
+            {
+                out.println("<h4>Merged Timeline</h4>");
+                printLogEvents(out, request, MergedLogEventsTimeline.TIMELINE);
+            }
+            else
+            {
+                for (String writerName : selectedWriters)
                 {
-                    outFinal.println("<h4>" + writerName.substring(writerName.indexOf('_') + 1) + "</h4>");
-
-                    List<OutputLogEvent> combinedOutputLogEvents = AwsCloudWatchLogsJsonWriter.getCombinedOutputLogEvents(
-                            writerName,
-                            request
-                    );
+                    out.println("<h4>" + writerName.substring(writerName.indexOf('_') + 1) + "</h4>");
 
-                    if (combinedOutputLogEvents != null && combinedOutputLogEvents.size() > 0)
+                    if (!printLogEvents(out, request, writerName))
                     {
-                        outFinal.println(combinedOutputLogEvents.size() + " Log Events found");
-
-                        Iterator<OutputLogEvent> itEvents = combinedOutputLogEvents.iterator();
-                        long refId = 0;
-                        boolean isJson = false;
-                        boolean printHeader = true;
-                        while (itEvents.hasNext())
-                        {
-                            OutputLogEvent e = itEvents.next();
-                            String ref = writerName + refId++;
-                            try
-                            {
-                                JsonElement ele = JsonParser.parseString(e.message());
-                                if (ele.isJsonObject())
-                                {
-                                    JsonObject obj = ele.getAsJsonObject();
-                                    Set<Map.Entry<String, JsonElement>> entries = obj.entrySet();
-                                    isJson = true;
-
-                                    if (printHeader)
-                                    {
-                                        printHeader = false;
-
-                                        outFinal.println("<table class=\"table table-striped\">\n"
-                                                                 + "                    <thead>\n"
-                                                                 + "                    <tr>\n"
-                                                                 + "                        <th>Timestamp</th>\n");
-                                        for (Map.Entry<String, JsonElement> entry : entries)
-                                        {
-                                            if (entry.getKey()
-                                                     .equalsIgnoreCase(JSON_TAG_MESSAGE))
-                                            {
-                                                continue;
-                                            }
-
-                                            outFinal.println("                        <th>" + entry.getKey() + "</th>");
-                                        }
-                                        outFinal.println("                        <th></th>\n"
-                                                                 + "                    </tr>\n"
-                                                                 + "                    </thead>");
-
-                                        outFinal.println("<tr>");
-                                    }
-
-                                    printColumn(outFinal, e.timestamp(), true);
-                                    for (Map.Entry<String, JsonElement> entry : entries)
-                                    {
-                                        boolean isMessage = entry.getKey()
-                                                                 .equalsIgnoreCase(JSON_TAG_MESSAGE);
-
-                                        if (isMessage)
-                                        {
-                                            printFunctions(outFinal, ref, true);
-                                            outFinal.println("</tr>");
-                                            outFinal.println("<tr>");
-                                        }
-
-                                        printColumn(outFinal,
-                                                    StringEscapeUtils.escapeHtml4(entry.getValue()
-                                                                                       .getAsString()),
-                                                    null,
-                                                    isMessage ? ref : null,
-                                                    false,
-                                                    isMessage ? entries.size() - 1 : -1);
-                                    }
-
-                                }
-                            }
-                            catch (JsonParseException ex)
-                            {
-                            }
-
-                            if (!isJson)
-                            {
-                                if (printHeader)
-                                {
-                                    printHeader = false;
-
-                                    outFinal.println("<table class=\"table table-striped\">\n"
-                                                             + "                    <thead>\n"
-                                                             + "                    <tr>\n"
-                                                             + "                        <th>Timestamp</th>\n"
-                                                             + "                        <th>Message</th>\n"
-                                                             + "                        <th></th>\n"
-                                                             + "                    </tr>\n"
-                                                             + "                    </thead>");
-
-                                    outFinal.println("<tr>");
-                                }
-
-                                printColumn(outFinal, e.timestamp(), false);
-                                printColumn(outFinal, StringEscapeUtils.escapeHtml4(e.message()), null, ref, false, -1);
-
-                                printFunctions(outFinal, ref, false);
-                            }
-
-                            outFinal.println("</tr>");
-                        }
-
-                        outFinal.println("</table>");
-
-                    }
-                    else
-                    {
-                        outFinal.println("<div class=\"alert alert-warning\" role=\"alert\">"
-                                                 + "No Log Events found"
-                                                 + "</div>");
+                        break;
                     }
                 }
-                catch (IOException e)
-                {
-                    e.printStackTrace();
-                }
-            });
+            }
         }
     %>
 
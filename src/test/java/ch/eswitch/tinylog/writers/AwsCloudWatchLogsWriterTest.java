@@ -0,0 +1,297 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.RuntimeProvider;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.CreateLogGroupRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.CreateLogGroupResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.CreateLogStreamRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.CreateLogStreamResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.DescribeLogGroupsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.DescribeLogGroupsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.DescribeLogStreamsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.DescribeLogStreamsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.InputLogEvent;
+import software.amazon.awssdk.services.cloudwatchlogs.model.InvalidParameterException;
+import software.amazon.awssdk.services.cloudwatchlogs.model.PutLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.PutLogEventsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.ResourceNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public class AwsCloudWatchLogsWriterTest
+{
+    private static final int LARGE_MESSAGE_SIZE = 210 * 1024;
+
+    /**
+     * client which keeps put log events, requests fail as defined by the test
+     */
+    private static class FakeLogsClient implements CloudWatchLogsClient
+    {
+        private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+        private final List<Integer> requestSizes = Collections.synchronizedList(new ArrayList<>());
+        private final Function<PutLogEventsRequest, RuntimeException> failure;
+
+        FakeLogsClient(Function<PutLogEventsRequest, RuntimeException> failure)
+        {
+            this.failure = failure;
+        }
+
+        @Override
+        public PutLogEventsResponse putLogEvents(PutLogEventsRequest putLogEventsRequest)
+        {
+            requestSizes.add(putLogEventsRequest.logEvents().size());
+            RuntimeException e = failure.apply(putLogEventsRequest);
+            if (e != null)
+            {
+                throw e;
+            }
+            putLogEventsRequest.logEvents().forEach(event -> messages.add(event.message()));
+
+            return PutLogEventsResponse.builder().build();
+        }
+
+        List<String> awaitMessages(int count) throws InterruptedException
+        {
+            long end = System.currentTimeMillis() + 10000;
+            while (messages.size() < count && System.currentTimeMillis() < end)
+            {
+                Thread.sleep(20);
+            }
+            // no further messages
+            Thread.sleep(100);
+
+            return new ArrayList<>(messages);
+        }
+
+        @Override
+        public String serviceName()
+        {
+            return "logs";
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    private static AwsCloudWatchLogsWriter createWriter(CloudWatchLogsClient logsClient, boolean splitLargeMessages) throws Exception
+    {
+        return createWriter(logsClient, splitLargeMessages, new HashMap<>());
+    }
+
+    private static AwsCloudWatchLogsWriter createWriter(CloudWatchLogsClient logsClient, boolean splitLargeMessages, Map<String, String> properties) throws Exception
+    {
+        properties.put(AwsCloudWatchLogsWriter.PROPERTY_LOG_GROUP_NAME, "test");
+        properties.put(AwsCloudWatchLogsWriter.PROPERTY_STREAM_NAME, "writer-" + System.nanoTime());
+        properties.put(AwsCloudWatchLogsWriter.PROPERTY_OPTIMISTIC_STARTUP, "true");
+        properties.put(AwsCloudWatchLogsWriter.PROPERTY_WRITING_THREAD, "true");
+        properties.put("splitLargeMessages", String.valueOf(splitLargeMessages));
+        properties.put("format", "{context: part}{message}");
+
+        return new AwsCloudWatchLogsWriter(properties, logsClient);
+    }
+
+    private static LogEntry logEntry(String message)
+    {
+        return new LogEntry(RuntimeProvider.createTimestamp(), Thread.currentThread(), new HashMap<>(), null, null, null, -1, null, Level.INFO, message, null);
+    }
+
+    private static String largeMessage(char c, int size)
+    {
+        char[] chars = new char[size];
+        Arrays.fill(chars, c);
+
+        return new String(chars);
+    }
+
+    @Test
+    void rejectedLaterRequest() throws Exception
+    {
+        CountDownLatch firstRequestStarted = new CountDownLatch(1);
+        CountDownLatch firstRequest = new CountDownLatch(1);
+        FakeLogsClient logsClient = new FakeLogsClient(request -> {
+            firstRequestStarted.countDown();
+            try
+            {
+                // log entries are queued while first request is running
+                firstRequest.await(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            boolean invalid = request.logEvents().stream().map(InputLogEvent::message).anyMatch(m -> m.startsWith("invalid"));
+            return invalid ? InvalidParameterException.builder().awsErrorDetails(AwsErrorDetails.builder().errorMessage("invalid").build()).build() : null;
+        });
+        AwsCloudWatchLogsWriter writer = createWriter(logsClient, false);
+
+        writer.write(logEntry("first"));
+        writer.flush();
+        Assertions.assertTrue(firstRequestStarted.await(10, TimeUnit.SECONDS));
+        for (char c = 'a'; c <= 'e'; c++)
+        {
+            writer.write(logEntry(largeMessage(c, LARGE_MESSAGE_SIZE)));
+        }
+        // second request of the batch
+        writer.write(logEntry("invalid"));
+        writer.write(logEntry("last"));
+        writer.flush();
+        firstRequest.countDown();
+
+        List<String> messages = logsClient.awaitMessages(7);
+        writer.close();
+
+        // 5 large log events do not fit into one request, only the log entries of the rejected second request are put one by one
+        Assertions.assertEquals(7, messages.size(), "no log event is put twice");
+        Assertions.assertEquals(7, new HashSet<>(messages).size());
+        Assertions.assertFalse(messages.stream().anyMatch(m -> m.startsWith("invalid")));
+        Assertions.assertTrue(messages.get(6).startsWith("last"));
+        Assertions.assertEquals(Arrays.asList(1, 4, 3, 1, 1, 1), logsClient.requestSizes);
+    }
+
+    @Test
+    void outageAfterFirstRequest() throws Exception
+    {
+        int[] requests = { 0 };
+        FakeLogsClient logsClient = new FakeLogsClient(request -> ++requests[0] == 2 ? SdkClientException.create("connection reset") : null);
+        AwsCloudWatchLogsWriter writer = createWriter(logsClient, true);
+
+        // split into 6 parts, which need 2 requests
+        int totalParts = 6;
+        writer.write(logEntry(largeMessage('x', (totalParts - 1) * AwsCloudWatchLogsWriter.MAX_MESSAGE_SIZE + 1)));
+        writer.flush();
+
+        // remaining parts are buffered and put by the retry
+        List<String> messages = logsClient.awaitMessages(totalParts);
+        writer.close();
+
+        Assertions.assertEquals(totalParts, messages.size(), "no part is lost or put twice");
+        Assertions.assertEquals(totalParts, new HashSet<>(messages).size());
+        Assertions.assertEquals(3, logsClient.requestSizes.size());
+    }
+
+    @Test
+    void sentOnFlush() throws Exception
+    {
+        FakeLogsClient logsClient = new FakeLogsClient(request -> null);
+        AwsCloudWatchLogsWriter writer = createWriter(logsClient, false);
+
+        writer.write(logEntry("first"));
+        writer.write(logEntry("second"));
+        Thread.sleep(AwsCloudWatchLogsWriter.FLUSH_FALLBACK_MILLIS / 4);
+
+        // queued until flush of writing thread
+        Assertions.assertTrue(logsClient.messages.isEmpty());
+
+        writer.flush();
+        Assertions.assertEquals(2, logsClient.awaitMessages(2).size());
+        Assertions.assertEquals(Collections.singletonList(2), logsClient.requestSizes);
+
+        // without flush, e.g. tinylog's writing thread is disabled
+        writer.write(logEntry("third"));
+        Assertions.assertEquals(3, logsClient.awaitMessages(3).size());
+        writer.close();
+    }
+
+    @Test
+    void bufferedOnClose() throws Exception
+    {
+        FakeLogsClient logsClient = new FakeLogsClient(request -> SdkClientException.create("connection refused"));
+        Map<String, String> properties = new HashMap<>();
+        properties.put(AwsCloudWatchLogsWriter.PROPERTY_CIRCUIT_BREAKER_FAILURES, "1");
+        properties.put(AwsCloudWatchLogsWriter.PROPERTY_CIRCUIT_BREAKER_SECONDS, "60");
+        properties.put(AwsCloudWatchLogsWriter.PROPERTY_OFF_HEAP_BUFFER_MB, "1");
+        AwsCloudWatchLogsWriter writer = createWriter(logsClient, false, properties);
+        WriterMetrics metrics = WriterMetrics.of(writer.logGroupName, writer.streamName);
+
+        writer.write(logEntry("first"));
+        writer.flush();
+        long end = System.currentTimeMillis() + 10000;
+        while (metrics.bufferedEvents.get() == 0 && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(20);
+        }
+        writer.write(logEntry("second"));
+
+        // circuit is open, buffered log entries are dropped and counted on close
+        writer.close();
+
+        Assertions.assertEquals(1, logsClient.requestSizes.size());
+        Assertions.assertEquals(2, metrics.bufferedEvents.get());
+        Assertions.assertEquals(2, metrics.droppedEvents.get());
+    }
+
+    @Test
+    void optimisticStartup() throws Exception
+    {
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        boolean[] logStreamExists = { false };
+        boolean[] logGroupExists = { false };
+        FakeLogsClient logsClient = new FakeLogsClient(request -> {
+            calls.add("putLogEvents:" + request.sequenceToken());
+            return logStreamExists[0] ? null : ResourceNotFoundException.builder().message("log stream does not exist").build();
+        })
+        {
+            @Override
+            public CreateLogGroupResponse createLogGroup(CreateLogGroupRequest request)
+            {
+                calls.add("createLogGroup");
+                logGroupExists[0] = true;
+                return CreateLogGroupResponse.builder().build();
+            }
+
+            @Override
+            public CreateLogStreamResponse createLogStream(CreateLogStreamRequest request)
+            {
+                calls.add("createLogStream");
+                if (!logGroupExists[0])
+                {
+                    throw ResourceNotFoundException.builder().message("log group does not exist").build();
+                }
+                logStreamExists[0] = true;
+                return CreateLogStreamResponse.builder().build();
+            }
+
+            @Override
+            public DescribeLogGroupsResponse describeLogGroups(DescribeLogGroupsRequest request)
+            {
+                calls.add("describeLogGroups");
+                return DescribeLogGroupsResponse.builder().build();
+            }
+
+            @Override
+            public DescribeLogStreamsResponse describeLogStreams(DescribeLogStreamsRequest request)
+            {
+                calls.add("describeLogStreams");
+                return DescribeLogStreamsResponse.builder().build();
+            }
+        };
+        AwsCloudWatchLogsWriter writer = createWriter(logsClient, false);
+
+        writer.write(logEntry("first"));
+        writer.flush();
+        List<String> messages = logsClient.awaitMessages(1);
+        writer.close();
+
+        // no describe calls, log group and stream are created on first PutLogEvents, which is retried without token
+        Assertions.assertEquals(1, messages.size());
+        Assertions.assertEquals(Arrays.asList("putLogEvents:null", "createLogStream", "createLogGroup", "createLogStream", "putLogEvents:null"), calls);
+    }
+}
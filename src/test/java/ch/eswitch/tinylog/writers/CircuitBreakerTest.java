@@ -0,0 +1,80 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.cloudwatchlogs.model.InvalidParameterException;
+import software.amazon.awssdk.services.cloudwatchlogs.model.ServiceUnavailableException;
+
+public class CircuitBreakerTest
+{
+    private static final long OPEN_MILLIS = 50;
+
+    private static void waitForProbe() throws InterruptedException
+    {
+        Thread.sleep(OPEN_MILLIS * 2);
+    }
+
+    @Test
+    void openAndRecover() throws InterruptedException
+    {
+        WriterMetrics metrics = new WriterMetrics();
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, OPEN_MILLIS, metrics);
+
+        Assertions.assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.onFailure();
+        Assertions.assertTrue(circuitBreaker.allowRequest());
+        Assertions.assertFalse(circuitBreaker.isOpen());
+
+        circuitBreaker.onFailure();
+        Assertions.assertTrue(circuitBreaker.isOpen());
+        Assertions.assertFalse(circuitBreaker.allowRequest());
+        Assertions.assertTrue(circuitBreaker.getRetryDelayMillis() >= CircuitBreaker.MIN_RETRY_MILLIS);
+
+        waitForProbe();
+        Assertions.assertFalse(circuitBreaker.isOpen());
+        // first request is the probe, no other requests while it is running
+        Assertions.assertTrue(circuitBreaker.allowRequest());
+        Assertions.assertFalse(circuitBreaker.allowRequest());
+        Assertions.assertTrue(circuitBreaker.isOpen());
+
+        circuitBreaker.onSuccess();
+        Assertions.assertFalse(circuitBreaker.isOpen());
+        Assertions.assertTrue(circuitBreaker.allowRequest());
+
+        Assertions.assertEquals("closed", metrics.toJson().getAsJsonObject("circuitBreaker").get("state").getAsString());
+        Assertions.assertEquals(1, metrics.toJson().getAsJsonObject("circuitBreaker").get("half-open").getAsLong());
+    }
+
+    @Test
+    void failedProbe() throws InterruptedException
+    {
+        WriterMetrics metrics = new WriterMetrics();
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, OPEN_MILLIS, metrics);
+
+        circuitBreaker.onFailure();
+        waitForProbe();
+        Assertions.assertTrue(circuitBreaker.allowRequest());
+
+        circuitBreaker.onFailure();
+        Assertions.assertTrue(circuitBreaker.isOpen());
+        Assertions.assertFalse(circuitBreaker.allowRequest());
+        Assertions.assertEquals(2, metrics.toJson().getAsJsonObject("circuitBreaker").get("open").getAsLong());
+
+        // a success in between resets the consecutive failures
+        waitForProbe();
+        Assertions.assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.onSuccess();
+        Assertions.assertEquals("closed", metrics.toJson().getAsJsonObject("circuitBreaker").get("state").getAsString());
+    }
+
+    @Test
+    void isOutage()
+    {
+        Assertions.assertTrue(CircuitBreaker.isOutage(SdkClientException.create("connection refused")));
+        Assertions.assertTrue(CircuitBreaker.isOutage(ServiceUnavailableException.builder().statusCode(503).build()));
+        Assertions.assertTrue(CircuitBreaker.isOutage(AwsServiceException.builder().statusCode(500).build()));
+        Assertions.assertFalse(CircuitBreaker.isOutage(InvalidParameterException.builder().statusCode(400).build()));
+    }
+}
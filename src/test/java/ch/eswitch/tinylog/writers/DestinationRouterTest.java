@@ -0,0 +1,60 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.RuntimeProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class DestinationRouterTest
+{
+    private static LogEntry logEntry(String tag, Level level, Map<String, String> context)
+    {
+        return new LogEntry(RuntimeProvider.createTimestamp(), null, context, null, null, null, -1, tag, level, "message", null);
+    }
+
+    @Test
+    void resolve()
+    {
+        DestinationRouter router = new DestinationRouter("app-{context:tenant}", "{tag}/{level}");
+        Map<String, String> context = new HashMap<>();
+        context.put("tenant", "acme");
+
+        LogGroupAndStreamName resolved = router.resolve(logEntry("orders", Level.WARN, context));
+
+        Assertions.assertEquals("app-acme", resolved.logGroupName);
+        Assertions.assertEquals("orders/warn", resolved.streamName);
+    }
+
+    @Test
+    void missingAndInvalidValues()
+    {
+        DestinationRouter router = new DestinationRouter("app-{context:tenant}", "{tag}-{context: user}");
+        Map<String, String> context = new HashMap<>();
+        context.put("user", "a b:c*ä");
+
+        LogGroupAndStreamName resolved = router.resolve(logEntry(null, Level.INFO, context));
+
+        Assertions.assertEquals("app-" + DestinationRouter.DEFAULT_VALUE, resolved.logGroupName);
+        Assertions.assertEquals(DestinationRouter.DEFAULT_VALUE + "-a_b_c__", resolved.streamName);
+
+        context.put("tenant", "");
+        Assertions.assertEquals("app-" + DestinationRouter.DEFAULT_VALUE, router.resolve(logEntry("", Level.INFO, context)).logGroupName);
+    }
+
+    @Test
+    void otherPlaceholders()
+    {
+        DestinationRouter router = new DestinationRouter("app", "{level}-{date:yyyy-MM-dd}-{count}");
+
+        Assertions.assertEquals("error-{date:yyyy-MM-dd}-{count}", router.resolve(logEntry(null, Level.ERROR, new HashMap<>())).streamName);
+        Assertions.assertTrue(DestinationRouter.isRouted("{context:tenant}"));
+        Assertions.assertFalse(DestinationRouter.isRouted("app-{date}"));
+        Assertions.assertFalse(DestinationRouter.isRouted("app-{tag"));
+        Assertions.assertTrue(DestinationRouter.isRoutingPlaceholder("context:tenant"));
+        Assertions.assertFalse(DestinationRouter.isRoutingPlaceholder("hostname"));
+    }
+}
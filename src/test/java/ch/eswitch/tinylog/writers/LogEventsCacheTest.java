@@ -0,0 +1,106 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class LogEventsCacheTest
+{
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final String END_TOKEN = "end";
+
+    /**
+     * log stream with a few log events, all log events of a time range are returned in one page
+     */
+    private static class FakeLogsClient implements CloudWatchLogsClient
+    {
+        private final List<OutputLogEvent> events = new ArrayList<>();
+        private int requests;
+
+        @Override
+        public GetLogEventsResponse getLogEvents(GetLogEventsRequest request)
+        {
+            requests++;
+            if (END_TOKEN.equals(request.nextToken()))
+            {
+                return GetLogEventsResponse.builder().events(Collections.emptyList()).nextForwardToken(END_TOKEN).nextBackwardToken(END_TOKEN).build();
+            }
+
+            List<OutputLogEvent> page = events.stream()
+                    .filter(e -> e.timestamp() >= request.startTime() && e.timestamp() < request.endTime())
+                    .collect(Collectors.toList());
+            if (page.size() > request.limit())
+            {
+                page = Boolean.TRUE.equals(request.startFromHead()) ? page.subList(0, request.limit()) : page.subList(page.size() - request.limit(), page.size());
+            }
+
+            return GetLogEventsResponse.builder().events(page).nextForwardToken(END_TOKEN).nextBackwardToken(END_TOKEN).build();
+        }
+
+        @Override
+        public String serviceName()
+        {
+            return "logs";
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    @Test
+    void emptyRange()
+    {
+        final long now = System.currentTimeMillis();
+        final long weekAgo = now - 7 * 24 * HOUR;
+        FakeLogsClient logsClient = new FakeLogsClient();
+        logsClient.events.add(OutputLogEvent.builder().timestamp(weekAgo + HOUR).message("old").build());
+        logsClient.events.add(OutputLogEvent.builder().timestamp(now - HOUR).message("new").build());
+
+        LogGroupAndStreamName logGroupAndStreamName = new LogGroupAndStreamName("test", "quiet-" + System.nanoTime());
+        LogEventsQuery query = new LogEventsQuery("test", logGroupAndStreamName, weekAgo, now, null, false, false);
+        query.pageSize = 100;
+
+        List<String> messages = new ArrayList<>();
+        LogEventsResult result = LogEventsReader.readCached(logsClient, query, e -> messages.add(e.message()));
+
+        // one backward read per run of empty buckets instead of one read per bucket
+        Assertions.assertEquals(2, result.count);
+        Assertions.assertEquals("new", messages.get(0));
+        Assertions.assertEquals("old", messages.get(1));
+        Assertions.assertNull(result.nextCursor);
+        Assertions.assertTrue(logsClient.requests <= 8, "requests: " + logsClient.requests);
+
+        // empty buckets are cached
+        logsClient.requests = 0;
+        messages.clear();
+        LogEventsReader.readCached(logsClient, query, e -> messages.add(e.message()));
+
+        Assertions.assertEquals(2, messages.size());
+        Assertions.assertEquals(0, logsClient.requests);
+    }
+
+    @Test
+    void noLogEvents()
+    {
+        FakeLogsClient logsClient = new FakeLogsClient();
+        LogGroupAndStreamName logGroupAndStreamName = new LogGroupAndStreamName("test", "empty-" + System.nanoTime());
+        LogEventsQuery query = new LogEventsQuery("test", logGroupAndStreamName, 0, System.currentTimeMillis(), null, false, false);
+        query.pageSize = 100;
+
+        LogEventsResult result = LogEventsReader.readCached(logsClient, query, e -> Assertions.fail());
+
+        Assertions.assertEquals(0, result.count);
+        Assertions.assertNull(result.nextCursor);
+        Assertions.assertEquals(2, logsClient.requests);
+    }
+}
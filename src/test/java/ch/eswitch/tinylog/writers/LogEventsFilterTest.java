@@ -0,0 +1,109 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LogEventsFilterTest
+{
+    private static final String ERROR = "{\"level\":\"ERROR\",\"source\":\"ch.eswitch.UserDao.find()\",\"message\":\"read timeout \\\"users\\\"\"}";
+    private static final String INFO = "{\"level\":\"INFO\",\"source\":\"ch.eswitch.Main.run()\",\"message\":\"level=ERROR\"}";
+
+    @Test
+    void fieldPredicates()
+    {
+        LogEventsFilter filter = LogEventsFilter.compile("level:ERROR AND source:*Dao* AND message~\"timeout \\\"users\"");
+
+        Assertions.assertTrue(filter.matches(ERROR));
+        Assertions.assertFalse(filter.matches(INFO));
+        Assertions.assertFalse(LogEventsFilter.compile("level:error").matches(ERROR));
+        Assertions.assertFalse(LogEventsFilter.compile("level:ERR").matches(ERROR));
+        Assertions.assertFalse(LogEventsFilter.compile("thread:*").matches(ERROR));
+    }
+
+    @Test
+    void operators()
+    {
+        LogEventsFilter filter = LogEventsFilter.compile("NOT level:INFO (source:*Main* OR \"READ TIMEOUT\")");
+
+        Assertions.assertTrue(filter.matches(ERROR));
+        Assertions.assertFalse(filter.matches(INFO));
+        Assertions.assertTrue(LogEventsFilter.compile("level:INFO OR level:ERROR").matches(INFO));
+        Assertions.assertTrue(LogEventsFilter.compile("level=error").matches(INFO));
+        Assertions.assertNull(LogEventsFilter.compile("  "));
+    }
+
+    @Test
+    void textMessage()
+    {
+        Assertions.assertTrue(LogEventsFilter.compile("message:*timeout*").matches("plain timeout text"));
+        Assertions.assertFalse(LogEventsFilter.compile("level:ERROR").matches("plain timeout text"));
+    }
+
+    @Test
+    void filterPattern()
+    {
+        Assertions.assertEquals("{ ($.level = \"ERROR\" && $.source = \"*Dao*\") }",
+                                LogEventsFilter.compile("level:ERROR source:*Dao* message~timeout NOT x").getFilterPattern());
+        Assertions.assertEquals("{ ($.level = \"WARN\" || $.level = \"ERROR\") }",
+                                LogEventsFilter.compile("level:WARN OR level:ERROR").getFilterPattern());
+        Assertions.assertNull(LogEventsFilter.compile("level:WARN OR timeout").getFilterPattern());
+    }
+
+    @Test
+    void indexCandidates()
+    {
+        List<OutputLogEvent> events = new ArrayList<>();
+        events.add(OutputLogEvent.builder().timestamp(1L).message(ERROR).build());
+        events.add(OutputLogEvent.builder().timestamp(2L).message(INFO).build());
+        events.add(OutputLogEvent.builder().timestamp(3L).message("plain Timeout text").build());
+
+        LogEventsIndex index = new LogEventsIndex();
+        index.addAll(events.subList(0, 2), 0);
+        // refreshed bucket
+        index = index.copy(1);
+        index.addAll(events, 1);
+
+        Assertions.assertArrayEquals(new int[] { 0, 2 }, index.findText("TIMEOUT"));
+        Assertions.assertArrayEquals(new int[] { 0, 2 }, index.findText("IMEO"));
+        // first token of text may end a token, last token may start a token, inner tokens are exact
+        Assertions.assertArrayEquals(new int[] { 2 }, index.findText("AIN TIMEOUT TE"));
+        Assertions.assertArrayEquals(new int[0], index.findText("PLAIN IMEOUT TEXT"));
+        // field value is whole value except at wildcards
+        Assertions.assertArrayEquals(new int[0], index.findField("level", "ERR"));
+        Assertions.assertArrayEquals(new int[] { 0 }, index.findField("level", "ERR*"));
+        Assertions.assertArrayEquals(new int[] { 0 }, LogEventsFilter.compile("level:ERROR source:*Dao*").findCandidates(index));
+        Assertions.assertArrayEquals(new int[] { 1, 2 }, LogEventsFilter.compile("level:INFO OR message:plain*").findCandidates(index));
+        Assertions.assertNull(LogEventsFilter.compile("level:INFO OR message~x").findCandidates(index));
+    }
+
+    @Test
+    void boundedRegExp()
+    {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 40; i++)
+        {
+            message.append('a');
+        }
+        message.append('!');
+
+        // catastrophic backtracking is aborted
+        Assertions.assertFalse(LogEventsFilter.compile("message~\"^(a+)+$\"").matches(message.toString()));
+        Assertions.assertTrue(LogEventsFilter.compile("message~\"^(a+)+!$\"").matches(message.toString()));
+
+        QueryBudget budget = new QueryBudget(0);
+        budget.cancel();
+        Assertions.assertTrue(budget.isExceeded());
+    }
+
+    @Test
+    void invalidQuery()
+    {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LogEventsFilter.compile("(level:ERROR"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LogEventsFilter.compile("level:"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LogEventsFilter.compile("message:\"open"));
+    }
+}
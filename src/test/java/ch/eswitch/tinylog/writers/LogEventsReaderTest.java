@@ -0,0 +1,93 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilterLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilterLogEventsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.FilteredLogEvent;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.GetLogEventsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LogEventsReaderTest
+{
+    private static final long TIMESTAMP = 100;
+    private static final String PART_1 = jsonPart("[1/2]", "first ");
+    private static final String PART_2 = jsonPart("[2/2]", "error");
+
+    private static String jsonPart(String context, String message)
+    {
+        return "{\"level\":\"ERROR\",\"context\":\"" + context + "\",\"message\":\"" + message + "\"}";
+    }
+
+    /**
+     * split log event whose second part is returned on the second page of {@code FilterLogEvents}
+     */
+    private static class FakeLogsClient implements CloudWatchLogsClient
+    {
+        @Override
+        public FilterLogEventsResponse filterLogEvents(FilterLogEventsRequest request)
+        {
+            if (request.nextToken() == null)
+            {
+                // first part matches the filter pattern
+                return FilterLogEventsResponse.builder().events(FilteredLogEvent.builder().timestamp(TIMESTAMP).message(PART_1).build())
+                                              .nextToken("page2").build();
+            }
+
+            return FilterLogEventsResponse.builder().events(FilteredLogEvent.builder().timestamp(TIMESTAMP).message(PART_2).build())
+                                          .build();
+        }
+
+        @Override
+        public GetLogEventsResponse getLogEvents(GetLogEventsRequest request)
+        {
+            if (request.nextToken() != null)
+            {
+                return GetLogEventsResponse.builder().nextForwardToken(request.nextToken()).build();
+            }
+
+            return GetLogEventsResponse.builder().events(Arrays.asList(OutputLogEvent.builder().timestamp(TIMESTAMP).message(PART_1).build(),
+                                                                       OutputLogEvent.builder().timestamp(TIMESTAMP).message(PART_2).build()))
+                                       .nextForwardToken("end").build();
+        }
+
+        @Override
+        public String serviceName()
+        {
+            return "logs";
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    @Test
+    void splitLogEventOnTwoPages()
+    {
+        FakeLogsClient logsClient = new FakeLogsClient();
+        LogEventsQuery query = new LogEventsQuery("test", new LogGroupAndStreamName("test", "filtered"), 0, 1000L, null, false, false);
+        query.pageSize = 1;
+
+        List<String> messages = new ArrayList<>();
+        LogEventsResult result = LogEventsReader.readFiltered(logsClient, query, "error", e -> messages.add(e.message()));
+
+        Assertions.assertEquals(1, messages.size());
+        Assertions.assertTrue(messages.get(0).contains("first error"));
+        Assertions.assertNotNull(result.nextCursor);
+
+        query.cursor = LogEventsCursor.decode(result.nextCursor);
+        result = LogEventsReader.readFiltered(logsClient, query, "error", e -> messages.add(e.message()));
+
+        // split log event is not returned again
+        Assertions.assertEquals(1, messages.size());
+        Assertions.assertEquals(0, result.count);
+    }
+}
@@ -0,0 +1,69 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+public class OffHeapArenaTest
+{
+    private static final int KB = 1024;
+
+    private static String message(char c, int size)
+    {
+        char[] chars = new char[size];
+        Arrays.fill(chars, c);
+
+        return new String(chars);
+    }
+
+    @Test
+    void segmentReuse()
+    {
+        OffHeapArena arena = new OffHeapArena(2L * OffHeapArena.SEGMENT_SIZE);
+
+        OffHeapArena.Slice a = arena.allocate(1, message('a', 400 * KB));
+        OffHeapArena.Slice b = arena.allocate(2, message('b', 400 * KB));
+        // second segment
+        OffHeapArena.Slice c = arena.allocate(3, message('c', 400 * KB));
+        OffHeapArena.Slice d = arena.allocate(4, message('d', 400 * KB));
+
+        Assertions.assertNotNull(c);
+        Assertions.assertNotNull(d);
+        Assertions.assertEquals(2L * OffHeapArena.SEGMENT_SIZE, arena.getAllocatedBytes());
+        Assertions.assertNull(arena.allocate(5, message('e', 400 * KB)), "byte budget exhausted");
+
+        // first segment is free when all its messages are released
+        arena.release(a);
+        Assertions.assertNull(arena.allocate(5, message('e', 400 * KB)));
+        arena.release(b);
+        OffHeapArena.Slice e = arena.allocate(5, message('e', 400 * KB));
+
+        Assertions.assertNotNull(e);
+        Assertions.assertEquals(2L * OffHeapArena.SEGMENT_SIZE, arena.getAllocatedBytes());
+        Assertions.assertEquals(message('c', 400 * KB), arena.read(c));
+        Assertions.assertEquals(message('e', 400 * KB), arena.read(e));
+        Assertions.assertEquals(5, e.timestamp);
+    }
+
+    @Test
+    void releaseAfterPartialFill()
+    {
+        OffHeapArena arena = new OffHeapArena(1);
+
+        OffHeapArena.Slice a = arena.allocate(1, "äöü");
+        Assertions.assertEquals(6, a.getLength());
+        OffHeapArena.Slice b = arena.allocate(2, message('b', 600 * KB));
+        Assertions.assertNull(arena.allocate(3, message('c', 600 * KB)));
+
+        // current segment is reset when it is released completely
+        arena.release(a);
+        arena.release(b);
+        OffHeapArena.Slice c = arena.allocate(3, message('c', 600 * KB));
+
+        Assertions.assertNotNull(c);
+        Assertions.assertEquals(message('c', 600 * KB), arena.read(c));
+        Assertions.assertEquals(OffHeapArena.SEGMENT_SIZE, arena.getAllocatedBytes());
+        Assertions.assertNull(arena.allocate(4, message('d', OffHeapArena.SEGMENT_SIZE + 1)), "larger than a segment");
+    }
+}
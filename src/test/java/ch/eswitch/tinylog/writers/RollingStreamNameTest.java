@@ -0,0 +1,142 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.services.cloudwatchlogs.CloudWatchLogsClient;
+import software.amazon.awssdk.services.cloudwatchlogs.model.DescribeLogStreamsRequest;
+import software.amazon.awssdk.services.cloudwatchlogs.model.DescribeLogStreamsResponse;
+import software.amazon.awssdk.services.cloudwatchlogs.model.LogStream;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OrderBy;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RollingStreamNameTest
+{
+    private static long time(int day, int hour, int minute)
+    {
+        return LocalDateTime.of(2024, 3, day, hour, minute).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    @Test
+    void hourly()
+    {
+        RollingStreamName rollingStreamName = new RollingStreamName("app-{date:yyyy-MM-dd-HH}-{count}", "hourly");
+
+        Assertions.assertEquals("app-2024-03-05-10-0", rollingStreamName.getStreamName(time(5, 10, 15), 100, 1));
+        Assertions.assertEquals("app-2024-03-05-10-0", rollingStreamName.getStreamName(time(5, 10, 59), 100, 1));
+        Assertions.assertEquals("app-2024-03-05-11-1", rollingStreamName.getStreamName(time(5, 11, 0), 100, 1));
+        Assertions.assertEquals("app-2024-03-06-00-2", rollingStreamName.getStreamName(time(6, 0, 0), 100, 1));
+    }
+
+    @Test
+    void daily()
+    {
+        RollingStreamName rollingStreamName = new RollingStreamName("app-{date}", "daily");
+
+        Assertions.assertEquals("app-2024-03-05", rollingStreamName.getStreamName(time(5, 0, 0), 100, 1));
+        Assertions.assertEquals("app-2024-03-05", rollingStreamName.getStreamName(time(5, 23, 59), 100, 1));
+        Assertions.assertEquals("app-2024-03-06", rollingStreamName.getStreamName(time(6, 0, 0), 100, 1));
+    }
+
+    @Test
+    void sizeAndEvents()
+    {
+        RollingStreamName bySize = new RollingStreamName("app-{count}", "size: 1kb");
+
+        Assertions.assertEquals("app-0", bySize.getStreamName(time(5, 10, 0), 600, 1));
+        Assertions.assertNull(bySize.getStreamNameAhead());
+        Assertions.assertEquals("app-0", bySize.getStreamName(time(5, 10, 0), 300, 1));
+        // 80% of size reached
+        Assertions.assertEquals("app-1", bySize.getStreamNameAhead());
+        Assertions.assertEquals("app-1", bySize.getStreamName(time(5, 10, 0), 300, 1));
+        // a log entry larger than the size is not split
+        Assertions.assertEquals("app-2", bySize.getStreamName(time(5, 10, 0), 2000, 1));
+
+        RollingStreamName byEvents = new RollingStreamName("app-{count}", "events: 2, size: 1mb");
+
+        Assertions.assertEquals("app-0", byEvents.getStreamName(time(5, 10, 0), 10, 1));
+        Assertions.assertEquals("app-0", byEvents.getStreamName(time(5, 10, 0), 10, 1));
+        Assertions.assertEquals("app-1", byEvents.getStreamName(time(5, 10, 0), 10, 1));
+    }
+
+    @Test
+    void namePattern()
+    {
+        RollingStreamName rollingStreamName = new RollingStreamName("app/{hostname}-{pid}-{count}", null);
+
+        Assertions.assertEquals("app/", rollingStreamName.getPrefix());
+        Assertions.assertTrue(rollingStreamName.getNamePattern().matcher(rollingStreamName.getStreamName(time(5, 10, 0), 1, 1)).matches());
+        Assertions.assertFalse(rollingStreamName.getNamePattern().matcher("app/host-x-0").matches());
+        Assertions.assertTrue(RollingStreamName.isPattern("app-{date}"));
+        Assertions.assertFalse(RollingStreamName.isPattern("app"));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RollingStreamName("app-{unknown}", null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RollingStreamName("app-{count}", "weekly"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RollingStreamName("app-{count", null));
+    }
+
+    private static LogStream logStream(String name, long lastEventTimestamp)
+    {
+        return LogStream.builder().logStreamName(name).creationTime(lastEventTimestamp - 1000).lastEventTimestamp(lastEventTimestamp).build();
+    }
+
+    @Test
+    void findStreamNamesWithoutPrefix()
+    {
+        long startTime = time(5, 10, 0);
+        List<DescribeLogStreamsRequest> requests = new ArrayList<>();
+        CloudWatchLogsClient logsClient = new CloudWatchLogsClient()
+        {
+            @Override
+            public DescribeLogStreamsResponse describeLogStreams(DescribeLogStreamsRequest request)
+            {
+                requests.add(request);
+                if (request.nextToken() == null)
+                {
+                    return DescribeLogStreamsResponse.builder()
+                            .logStreams(logStream("host-2", startTime + 1000), logStream("other", startTime))
+                            .nextToken("page2")
+                            .build();
+                }
+
+                return DescribeLogStreamsResponse.builder()
+                        .logStreams(logStream("host-1", startTime - 1000),
+                                    logStream("host-0", startTime - RollingStreamName.METADATA_LAG_MILLIS - 10000))
+                        .nextToken("page3")
+                        .build();
+            }
+
+            @Override
+            public String serviceName()
+            {
+                return SERVICE_NAME;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+        LogGroupAndStreamName logGroupAndStreamName = new LogGroupAndStreamName("withoutPrefix", "{hostname}-{count}");
+
+        List<String> streamNames = RollingStreamName.findStreamNames(logsClient, logGroupAndStreamName, startTime, null);
+
+        // describing stops at first log stream ended before start time
+        Assertions.assertEquals(Arrays.asList("host-1", "host-2"), streamNames);
+        Assertions.assertEquals(2, requests.size());
+        Assertions.assertEquals(OrderBy.LAST_EVENT_TIME, requests.get(0).orderBy());
+        Assertions.assertTrue(requests.get(0).descending());
+        Assertions.assertEquals(RollingStreamName.DESCRIBE_LIMIT, requests.get(0).limit());
+
+        // cached log streams are reused for same start time, but not for an earlier start time
+        RollingStreamName.findStreamNames(logsClient, logGroupAndStreamName, startTime, null);
+        Assertions.assertEquals(2, requests.size());
+        RollingStreamName.findStreamNames(logsClient, logGroupAndStreamName, startTime - 1000, null);
+        Assertions.assertEquals(4, requests.size());
+    }
+}
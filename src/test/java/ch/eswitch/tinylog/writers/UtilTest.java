@@ -0,0 +1,113 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudwatchlogs.model.OutputLogEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class UtilTest
+{
+    private static OutputLogEvent event(long timestamp, String message)
+    {
+        return OutputLogEvent.builder().timestamp(timestamp).message(message).build();
+    }
+
+    private static String jsonPart(String context, String message)
+    {
+        return "{\"level\":\"INFO\",\"context\":\"" + context + "\",\"message\":\"" + message + "\",\"thread\":{\"name\":\"main\"}}";
+    }
+
+    @Test
+    void findMessagePart()
+    {
+        Assertions.assertArrayEquals(new int[] { 2, 13 }, Util.findMessagePart("abc [x] [2/13] [3/4]"));
+        Assertions.assertNull(Util.findMessagePart("[/5] [1/] [/]"));
+        Assertions.assertNull(Util.findMessagePart("[1/2 [a/b] ["));
+        Assertions.assertNull(Util.findMessagePart("abc [2/13]", 0, 9));
+        Assertions.assertFalse(Util.isPartialMessage("no part"));
+        Assertions.assertFalse(Util.isPartialMessage(jsonPart("", "array [1/2] in message")));
+        Assertions.assertEquals(2, Util.getMessagePartIndex(jsonPart("[2/3]", "x")));
+    }
+
+    @Test
+    void findStringValues()
+    {
+        String json = "{ \"a\" : [1, {\"message\": \"x\"}], \"mess\\u0061ge\":\"v\\\"1\\\\\" , \"n\":null}";
+        int[] positions = JsonFieldExtractor.findStringValues(json, "message", "context");
+
+        Assertions.assertNotNull(positions);
+        Assertions.assertEquals("v\\\"1\\\\", json.substring(positions[0], positions[1]));
+        Assertions.assertEquals("v\"1\\", JsonFieldExtractor.unescape(json, positions[0], positions[1]));
+        Assertions.assertEquals(-1, positions[2]);
+
+        Assertions.assertNull(JsonFieldExtractor.findStringValues("plain text", "message"));
+        Assertions.assertNull(JsonFieldExtractor.findStringValues("{\"message\":\"open", "message"));
+
+        // malformed unicode escapes are copied literally
+        String malformed = "a\\u00zz\\u41\\u0042";
+        Assertions.assertEquals("a\\u00zz\\u41B", JsonFieldExtractor.unescape(malformed, 0, malformed.length()));
+    }
+
+    @Test
+    void combineOutputLogEvents()
+    {
+        List<OutputLogEvent> events = new ArrayList<>();
+        events.add(event(100, jsonPart("[1/3]", "first \\\"quoted\\\" ")));
+        events.add(event(100, jsonPart("[2/3]", "line\\nbreak ")));
+        events.add(event(100, jsonPart("[3/3]", "end")));
+        events.add(event(200, "not split"));
+        events.add(event(300, "text [1/2]"));
+        events.add(event(300, "text [2/2]"));
+        events.add(event(50, jsonPart("[1/2]", "incomplete")));
+
+        Collections.shuffle(events, new Random(4711));
+        List<OutputLogEvent> combined = Util.combineOutputLogEvents(events);
+
+        Assertions.assertEquals(5, combined.size());
+        Assertions.assertEquals(300, combined.get(0).timestamp());
+        Assertions.assertEquals(300, combined.get(1).timestamp());
+        Assertions.assertEquals("not split", combined.get(2).message());
+        Assertions.assertEquals(jsonPart("[1]", "first \\\"quoted\\\" line\\nbreak end"), combined.get(3).message());
+        Assertions.assertEquals(jsonPart("[1/2]", "incomplete"), combined.get(4).message());
+    }
+
+    @Test
+    void combineOutputLogEventsWithMessageId()
+    {
+        // two split log events with same timestamp, e.g. written by two processes
+        List<OutputLogEvent> events = new ArrayList<>();
+        events.add(event(100, "{\"messagePart\": \"a-1:1/2\", \"message\": \"a1 [2/3] \", \"context\": \"[1/2]\"}"));
+        events.add(event(100, "{\"messagePart\": \"b-1:2/2\", \"message\": \"b2\", \"context\": \"[2/2]\"}"));
+        events.add(event(100, "{\"messagePart\": \"a-1:2/2\", \"message\": \"a2\", \"context\": \"[2/2]\"}"));
+        events.add(event(100, "{\"messagePart\": \"b-1:1/2\", \"message\": \"b1 \", \"context\": \"[1/2]\"}"));
+
+        List<OutputLogEvent> combined = Util.combineOutputLogEvents(events);
+
+        Assertions.assertEquals(2, combined.size());
+        Assertions.assertEquals("{\"messagePart\": \"a-1\", \"message\": \"a1 [2/3] a2\", \"context\": \"[1]\"}", combined.get(0).message());
+        Assertions.assertEquals("{\"messagePart\": \"b-1\", \"message\": \"b1 b2\", \"context\": \"[1]\"}", combined.get(1).message());
+    }
+
+    @Test
+    void combineOutputLogEventsOfPages()
+    {
+        List<OutputLogEvent> combined = new ArrayList<>();
+        OutputLogEventCombiner combiner = new OutputLogEventCombiner(false, combined::add);
+
+        // newest first, split log event spread over two pages
+        combiner.accept(event(300, "newest"));
+        combiner.accept(event(200, "{\"message\":\"b\",\"context\":\"[2/2]\"}"));
+        Assertions.assertTrue(combiner.hasPendingParts());
+        combiner.accept(event(200, "{\"message\":\"a\",\"context\":\"[1/2]\"}"));
+        combiner.accept(event(100, "oldest"));
+        combiner.flush();
+
+        Assertions.assertEquals(3, combined.size());
+        Assertions.assertEquals("{\"message\":\"ab\",\"context\":\"[1]\"}", combined.get(1).message());
+        Assertions.assertEquals("oldest", combined.get(2).message());
+    }
+}
@@ -1,11 +1,14 @@
 package ch.eswitch.tomcat;
 
+import ch.eswitch.tinylog.writers.AwsCloudWatchLogsTailServlet;
 import ch.eswitch.tinylog.writers.AwsCloudWatchLogsViewerServlet;
 import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
 import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.startup.Tomcat;
 
 import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
 import java.util.Arrays;
 import java.util.Optional;
 
@@ -26,13 +29,9 @@ public class TomcatServerMain
         tomcat.getHost().setAppBase(appBase);
         StandardContext ctx = (StandardContext) tomcat.addWebapp(contextPath, appBase);
 
-        // add servlet
-        final String servletName = AwsCloudWatchLogsViewerServlet.class.getSimpleName();
-        tomcat.addServlet(ctx, servletName, new AwsCloudWatchLogsViewerServlet());
-        WebServlet webServletAnnotation = AwsCloudWatchLogsViewerServlet.class.getAnnotation(WebServlet.class);
-        Arrays.stream(webServletAnnotation.urlPatterns())
-                .forEach(u -> ctx.addServletMappingDecoded(u, servletName)
-                );
+        // add servlets
+        addServlet(tomcat, ctx, new AwsCloudWatchLogsViewerServlet());
+        addServlet(tomcat, ctx, new AwsCloudWatchLogsTailServlet());
 
         System.out.println("start Tomcat");
         tomcat.start();
@@ -40,4 +39,15 @@ public class TomcatServerMain
         tomcat.getServer().await();
         System.out.println("Tomcat stopped");
     }
+
+    private static void addServlet(Tomcat tomcat, StandardContext ctx, HttpServlet servlet)
+    {
+        final String servletName = servlet.getClass().getSimpleName();
+        WebServlet webServletAnnotation = servlet.getClass().getAnnotation(WebServlet.class);
+        Wrapper wrapper = tomcat.addServlet(ctx, servletName, servlet);
+        wrapper.setAsyncSupported(webServletAnnotation.asyncSupported());
+        Arrays.stream(webServletAnnotation.urlPatterns())
+                .forEach(u -> ctx.addServletMappingDecoded(u, servletName)
+                );
+    }
 }
\ No newline at end of file